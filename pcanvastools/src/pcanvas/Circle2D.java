@@ -3,9 +3,7 @@ package pcanvas;
 import java.util.ArrayList;
 import java.util.List;
 
-import static pcanvas.Point.translatePoint;
-import static pcanvas.geom.GeomUtils.PointRotate;
-import static processing.core.PConstants.PI;
+import pcanvas.geom.UnitCircle;
 
 /**
  * Basic 2D circle. Uses a radius and/or precision (number of points on the circle) to generate circle points.
@@ -45,16 +43,17 @@ public class Circle2D {
     }    
 
     /**
-     * Basic circle point computation. Uses a radius and a precision.
+     * Basic circle point computation. Uses a radius and a precision. Points are laid out from a shared
+     * {@link UnitCircle} template, at the center's z-coordinate.
      * @param radius the radius of the circle.
-     * @param precision the number of points on the circle.
+     * @param precision half the number of points on the circle.
      * @return the generated circle points.
      */
     private List<Point> computePointsWithPrecision(final float radius, final int precision) {
-        List<Point> points = new ArrayList<Point>();
-        Point start = translatePoint(center, new Vector(radius, 0, 0));
-        for (float angle = 0; angle < 2 * PI; angle += PI / precision) {
-            points.add(PointRotate(this.center, start, angle));
+        UnitCircle template = UnitCircle.of(2 * precision);
+        List<Point> points = new ArrayList<Point>(template.samples);
+        for (int i = 0; i < template.samples; i++) {
+            points.add(new Point(center.x + radius * template.cos(i), center.y + radius * template.sin(i), center.z));
         }
         return points;
     }
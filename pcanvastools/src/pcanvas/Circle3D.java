@@ -3,8 +3,8 @@ package pcanvas;
 import java.util.ArrayList;
 import java.util.List;
 
-import static pcanvas.Point.translatePoint;
-import static pcanvas.geom.GeomUtils.PointRotate3D;
+import pcanvas.geom.UnitCircle;
+
 import static pcanvas.geom.GeomUtils.VectorRotate2D;
 import static processing.core.PConstants.PI;
 
@@ -56,17 +56,20 @@ public class Circle3D {
     }
 
     /**
-     * Basic circle point computation. Uses a radius and a precision.
+     * Basic circle point computation. Uses a radius and a precision. Points are laid out from a shared
+     * {@link UnitCircle} template in the plane perpendicular to the axis, so no point is rotated individually.
      * @param radius the radius of the circle.
-     * @param precision the number of points on the circle.
+     * @param precision half the number of points on the circle.
      * @return the generated circle points.
      */
     private List<Point> computePointsWithPrecision(final float radius, final int precision) {
-        List<Point> points = new ArrayList<Point>();
-        Vector translator = VectorRotate2D(this.axis, -PI / 2).normal().scale(radius);
-        Point start = translatePoint(center, translator);
-        for (float angle = 0; angle < 2 * PI; angle += PI / precision) {
-            points.add(PointRotate3D(this.center, start, this.axis, angle));
+        UnitCircle template = UnitCircle.of(2 * precision);
+        Vector u = new Vector(0, 0, 0), v = new Vector(0, 0, 0);
+        UnitCircle.frame(this.axis, VectorRotate2D(this.axis, -PI / 2), u, v);
+        float[] xyz = template.ring(this.center, radius, u, v, new float[3 * template.samples], 0);
+        List<Point> points = new ArrayList<Point>(template.samples);
+        for (int i = 0; i < xyz.length; i += 3) {
+            points.add(new Point(xyz[i], xyz[i + 1], xyz[i + 2]));
         }
         return points;
     }
@@ -272,7 +272,10 @@ public class Point {
      * @return this Point after it has been displaced.
      */
     public Point scaledTranslate(final float s, final Vector vector) {
-        return this.translate(Vector.scaleVector(vector, s));
+        this.x += s * vector.x;
+        this.y += s * vector.y;
+        this.z += s * vector.z;
+        return this;
     }
 
     /**
@@ -596,6 +599,106 @@ public class Point {
         return new Point((point.x + other.x) * 0.5F, (point.y + other.y) * 0.5F, (point.z + other.z) * 0.5F);
     }
 
+    /*
+     * Static functions which write into an out-parameter instead of allocating. Each returns out, which may be one of
+     * the operands.
+     */
+
+    /**
+     * Same as {@link #addPoints(Point, Point)}, written into out.
+     * @param point some point.
+     * @param other some other point.
+     * @param out the point to hold point + other.
+     * @return out, updated.
+     */
+    public static Point addPointsInto(final Point point, final Point other, final Point out) {
+        return out.set(point.x + other.x, point.y + other.y, point.z + other.z);
+    }
+
+    /**
+     * Same as {@link #subtractFromPoint(Point, Point)}, written into out.
+     * @param point some point.
+     * @param other the point to subtract.
+     * @param out the point to hold point - other.
+     * @return out, updated.
+     */
+    public static Point subtractFromPointInto(final Point point, final Point other, final Point out) {
+        return out.set(point.x - other.x, point.y - other.y, point.z - other.z);
+    }
+
+    /**
+     * Same as {@link #scalePoint(Point, float)}, written into out.
+     * @param point the point to scale.
+     * @param scalar the value to scale point's x, y and z coordinates by.
+     * @param out the point to hold point * scalar.
+     * @return out, updated.
+     */
+    public static Point scalePointInto(final Point point, final float scalar, final Point out) {
+        return out.set(point.x * scalar, point.y * scalar, point.z * scalar);
+    }
+
+    /**
+     * Same as {@link #dividePoint(Point, float)}, written into out.
+     * @param point the point to divide.
+     * @param divisor what to divide the point by.
+     * @param out the point to hold point / divisor.
+     * @return out, updated.
+     */
+    public static Point dividePointInto(final Point point, final float divisor, final Point out) {
+        return out.set(point.x / divisor, point.y / divisor, point.z / divisor);
+    }
+
+    /**
+     * Same as {@link #interpolate(Point, Point, float)}, written into out.
+     * @param point the point to interpolate.
+     * @param other the point to interpolate towards.
+     * @param scale the ratio of interpolation.
+     * @param out the point to hold the interpolation.
+     * @return out, updated.
+     */
+    public static Point interpolateInto(final Point point, final Point other, final float scale, final Point out) {
+        return out.set(point.x + scale * (other.x - point.x),
+                       point.y + scale * (other.y - point.y),
+                       point.z + scale * (other.z - point.z));
+    }
+
+    /**
+     * Same as {@link #translatePoint(Point, Vector)}, written into out.
+     * @param point the point to translate.
+     * @param translator the {@link Vector} to translate by.
+     * @param out the point to hold the translated point.
+     * @return out, updated.
+     */
+    public static Point translatePointInto(final Point point, final Vector translator, final Point out) {
+        return out.set(point.x + translator.x, point.y + translator.y, point.z + translator.z);
+    }
+
+    /**
+     * Same as {@link #scaledTranslate(Point, Vector, float)}, written into out.
+     * @param point the point to translate.
+     * @param translator the {@link Vector} to translate by.
+     * @param scalar the scalar to scale the translator by before translating.
+     * @param out the point to hold the translated point.
+     * @return out, updated.
+     */
+    public static Point scaledTranslateInto(final Point point, final Vector translator, final float scalar,
+                                            final Point out) {
+        return out.set(point.x + (translator.x * scalar),
+                       point.y + (translator.y * scalar),
+                       point.z + (translator.z * scalar));
+    }
+
+    /**
+     * Same as {@link #midPoint(Point, Point)}, written into out.
+     * @param point first point.
+     * @param other second point.
+     * @param out the point to hold the mid-point.
+     * @return out, updated.
+     */
+    public static Point midPointInto(final Point point, final Point other, final Point out) {
+        return out.set((point.x + other.x) * 0.5F, (point.y + other.y) * 0.5F, (point.z + other.z) * 0.5F);
+    }
+
     /* Basic overrides functinonality. */
 
     /**
@@ -63,6 +63,20 @@ public class Vector {
         return this;
     }
 
+    /**
+     * Arithmetic vector addition. Adds the provided displacements to this vector's components.
+     * @param x the x displacement to add.
+     * @param y the y displacement to add.
+     * @param z the z displacement to add.
+     * @return this updated Vector instance.
+     */
+    public Vector add(final float x, final float y, final float z) {
+        this.x += x;
+        this.y += y;
+        this.z += z;
+        return this;
+    }
+
     /**
      * Arithmetic vector subtraction. Subtracts another vector's componenets to this vector's components.
      * @param other the vector to subtract.
@@ -75,6 +89,33 @@ public class Vector {
         return this;
     }
 
+    /**
+     * Arithmetic vector subtraction. Subtracts the provided displacements from this vector's components.
+     * @param x the x displacement to subtract.
+     * @param y the y displacement to subtract.
+     * @param z the z displacement to subtract.
+     * @return this updated Vector instance.
+     */
+    public Vector subtract(final float x, final float y, final float z) {
+        this.x -= x;
+        this.y -= y;
+        this.z -= z;
+        return this;
+    }
+
+    /**
+     * Adds another vector, scaled by s, to this vector. Saves building the scaled vector first.
+     * @param s the amount to scale the other vector by.
+     * @param other the vector to scale and add.
+     * @return this updated Vector instance.
+     */
+    public Vector scaledAdd(final float s, final Vector other) {
+        this.x += s * other.x;
+        this.y += s * other.y;
+        this.z += s * other.z;
+        return this;
+    }
+
     /**
      * Basic vector scale. Scales this vector's components by some value.
      * @param scalar the float to scale this vector by.
@@ -122,7 +163,7 @@ public class Vector {
     public Vector divide(final float dx, final float dy, final float dz) {
         this.x /= dx;
         this.y /= dy;
-        this.z /= z;
+        this.z /= dz;
         return this;
     }
 
@@ -144,10 +185,20 @@ public class Vector {
      * @return this updated Vector instance.
      */
     public Vector cross(final Vector other) {
-        this.x = (this.y * other.z) - (this.z * other.y);
-        this.y = (this.z * other.x) - (this.x * other.z);
-        this.z = (this.x * other.y) - (this.y * other.z);
-        return this; 
+        return this.cross(other.x, other.y, other.z);
+    }
+
+    /**
+     * Crosses this {@link Vector} with the vector (x, y, z). Sets itself as the result.
+     * @param x the other vector's x displacement.
+     * @param y the other vector's y displacement.
+     * @param z the other vector's z displacement.
+     * @return this updated Vector instance.
+     */
+    public Vector cross(final float x, final float y, final float z) {
+        return this.set((this.y * z) - (this.z * y),
+                        (this.z * x) - (this.x * z),
+                        (this.x * y) - (this.y * x));
     }
 
     /**
@@ -188,14 +239,34 @@ public class Vector {
         return (this.x * other.x) + (this.y * other.y) + (this.z * other.z);
     }
 
+    /**
+     * Performs a dot product on the vector (x, y, z).
+     * @param x the other vector's x displacement.
+     * @param y the other vector's y displacement.
+     * @param z the other vector's z displacement.
+     * @return the result of a vector dot product.
+     */
+    public float dot(final float x, final float y, final float z) {
+        return (this.x * x) + (this.y * y) + (this.z * z);
+    }
+
     /**
      * Returns the norm (or unit-length V/|V|) of this vector.
      * @return this vector's norm.
      */
     public Vector normal() {
+        return this.normalInto(new Vector(0, 0, 0));
+    }
+
+    /**
+     * Same as {@link #normal()}, except the result is written into out instead of a new vector.
+     * @param out the vector to hold the result; may be this vector.
+     * @return out, updated.
+     */
+    public Vector normalInto(final Vector out) {
         float n = sqrt(sq(this.x) + sq(this.y) + sq(this.z));
         if (n < 0.000001) n = 1;
-        return new Vector(this.x / n, this.y / n, this.z / n);
+        return out.set(this.x / n, this.y / n, this.z / n);
     }
 
     /**
@@ -224,6 +295,19 @@ public class Vector {
         return this;
     }
 
+    /**
+     * Sets this vector to the displacement from start to end, as {@link #Vector(Point, Point)} does.
+     * @param start the starting {@link Point}.
+     * @param end the ending {@link Point}.
+     * @return this updated Vector instance.
+     */
+    public Vector set(final Point start, final Point end) {
+        this.x = end.x - start.x;
+        this.y = end.y - start.y;
+        this.z = end.z - start.z;
+        return this;
+    }
+
     /**
      * Sets this vector to another vector. Copy cat...
      * @param vector the vector to set this vector to.
@@ -262,14 +346,14 @@ public class Vector {
         return new Vector(vector.x / dx, vector.y / dy, vector.z / dz);
     }
 
-    public Vector divideVector(final Vector vector, final Vector other) {
+    public static Vector divideVector(final Vector vector, final Vector other) {
         return new Vector(vector.x / other.x, vector.y / other.y, vector.z / other.z);
     }
 
     public static Vector crossProduct(final Vector vector, final Vector other) {
         return new Vector((vector.y * other.z) - (vector.z * other.y),
                           (vector.z * other.x) - (vector.x * other.z),
-                          (vector.x * other.y) - (vector.y * other.z));
+                          (vector.x * other.y) - (vector.y * other.x));
     }
 
     public static float normal(final Vector vector) {
@@ -284,6 +368,68 @@ public class Vector {
         return (vector.x * other.x) + (vector.y * other.y) + (vector.z * other.z);
     }
 
+    /*
+     * Static functions which write into an out-parameter instead of allocating. Each returns out, which may be one of
+     * the operands.
+     */
+
+    /**
+     * Same as {@link #addVectors(Vector, Vector)}, written into out.
+     * @param vector some vector.
+     * @param other some other vector.
+     * @param out the vector to hold vector + other.
+     * @return out, updated.
+     */
+    public static Vector addVectorsInto(final Vector vector, final Vector other, final Vector out) {
+        return out.set(vector.x + other.x, vector.y + other.y, vector.z + other.z);
+    }
+
+    /**
+     * Same as {@link #subtractVectors(Vector, Vector)}, written into out.
+     * @param vector some vector.
+     * @param other the vector to subtract.
+     * @param out the vector to hold vector - other.
+     * @return out, updated.
+     */
+    public static Vector subtractVectorsInto(final Vector vector, final Vector other, final Vector out) {
+        return out.set(vector.x - other.x, vector.y - other.y, vector.z - other.z);
+    }
+
+    /**
+     * Same as {@link #scaleVector(Vector, float)}, written into out.
+     * @param vector the vector to scale.
+     * @param scalar the amount to scale by.
+     * @param out the vector to hold vector * scalar.
+     * @return out, updated.
+     */
+    public static Vector scaleVectorInto(final Vector vector, final float scalar, final Vector out) {
+        return out.set(vector.x * scalar, vector.y * scalar, vector.z * scalar);
+    }
+
+    /**
+     * Same as {@link #divideVector(Vector, float)}, written into out.
+     * @param vector the vector to divide.
+     * @param divisor the amount to divide by.
+     * @param out the vector to hold vector / divisor.
+     * @return out, updated.
+     */
+    public static Vector divideVectorInto(final Vector vector, final float divisor, final Vector out) {
+        return out.set(vector.x / divisor, vector.y / divisor, vector.z / divisor);
+    }
+
+    /**
+     * Same as {@link #crossProduct(Vector, Vector)}, written into out.
+     * @param vector some vector.
+     * @param other some other vector.
+     * @param out the vector to hold vector x other.
+     * @return out, updated.
+     */
+    public static Vector crossProductInto(final Vector vector, final Vector other, final Vector out) {
+        return out.set((vector.y * other.z) - (vector.z * other.y),
+                       (vector.z * other.x) - (vector.x * other.z),
+                       (vector.x * other.y) - (vector.y * other.x));
+    }
+
     /* Basic overrides functinonality. */
 
     @Override
@@ -9,11 +9,12 @@ import pcanvas.Point;
 import pcanvas.Vector;
 import pcanvas.applet.OpenGLApplet;
 import pcanvas.draw.CanvasPen3D;
+import pcanvas.geom.Frustum;
+import pcanvas.geom.Rotation3D;
 import processing.core.PApplet;
 
 import static pcanvas.Point.interpolate;
 import static pcanvas.geom.GeomUtils.PointDistance;
-import static pcanvas.geom.GeomUtils.PointRotate3D;
 import static processing.core.PApplet.tan;
 import static processing.core.PConstants.PI;
 
@@ -43,6 +44,14 @@ public class Camera {
     /** The vector which represents which direction is 'up' in 3-space. */
     private final Vector upVector = new Vector(0, 1, 0);
 
+    /** Scratch state for pitch and yaw updates, reused so camera drags allocate nothing. */
+    private final Rotation3D rotation = new Rotation3D(upVector, 0);
+    private final Point pitchBase = new Point(0, 0, 0);
+    private final Vector pitchAxis = new Vector(0, 0, 0);
+
+    /** The perspective projection: vertical field of view (radians) and near and far clipping distances. */
+    private float fieldOfView, nearClip, farClip;
+
     /** A {@link CanvasPen3D} for debugging purposes. */
     private CanvasPen3D pen;
 
@@ -177,15 +186,42 @@ public class Camera {
                            upVector.x, upVector.y, upVector.z);
     }
 
+    /**
+     * Changes the perspective projection through {@link PApplet#perspective(float, float, float, float)}, and
+     * remembers it for {@link #frustum(Frustum)}. Until this is called the camera assumes Processing's default
+     * projection: a 60 degree field of view with clipping planes at a tenth of and ten times the default eye distance.
+     * @param fieldOfView the vertical field of view, in radians.
+     * @param near the distance to the near clipping plane.
+     * @param far the distance to the far clipping plane.
+     */
+    public void setPerspective(final float fieldOfView, final float near, final float far) {
+        this.fieldOfView = fieldOfView;
+        this.nearClip = near;
+        this.farClip = far;
+        this.applet.perspective(fieldOfView, this.applet.width / (float) this.applet.height, near, far);
+    }
+
+    /**
+     * Computes the part of space this camera sees, for culling geometry before it is drawn. The frustum is in the
+     * coordinates the camera's position and target are in, so it only fits geometry drawn without further
+     * transforms after {@link #update()}.
+     * @param out the frustum to set.
+     * @return out, updated.
+     */
+    public Frustum frustum(final Frustum out) {
+        return out.set(position, target, upVector, fieldOfView,
+                       this.applet.width / (float) this.applet.height, nearClip, farClip);
+    }
+
     /**
      * Updates the pitch rotation of the camera about the {@link #target}.
      * @param pitch a new pitch angle, in radians.
      */
     public void updatePitch(final float pitch) {
         if (enabled) {
-            Point axisBase = PointRotate3D(target, position, upVector, PI / 2);
-            Vector zRotVec = new Vector(target, axisBase);
-            position = PointRotate3D(target, position, zRotVec, pitch);
+            rotation.set(upVector, PI / 2).rotate(target, position, pitchBase);
+            pitchAxis.set(target, pitchBase);
+            rotation.set(pitchAxis, pitch).rotate(target, position, position);
         }
     }
 
@@ -195,7 +231,7 @@ public class Camera {
      * @param yaw a new yaw angle, in radians.
      */
     public void updateYaw(final float yaw) {
-        if (enabled) position = PointRotate3D(target, position, upVector, -yaw);
+        if (enabled) rotation.set(upVector, -yaw).rotate(target, position, position);
     }
 
     /**
@@ -232,6 +268,9 @@ public class Camera {
             this.position = interpolate(target, cDefault, distanceToTarget / baseDist);
         }
         this.targetPrev = new Point(target.x, target.y, target.z);
+        this.fieldOfView = PI / 3.0F;
+        this.nearClip = cDefault.z / 10.0F;
+        this.farClip = cDefault.z * 10.0F;
         this.setupWheelListener();
         this.setupRotationListeners();
     }
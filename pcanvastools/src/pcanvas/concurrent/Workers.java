@@ -0,0 +1,145 @@
+package pcanvas.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Process-wide pool of daemon worker threads used to split large array loops (mesh tables, point buffers, etc.)
+ * across the available cores.
+ * <br />
+ * <br />
+ * Loops that are started from inside a worker thread run sequentially on that thread, so nested parallel loops
+ * can never dead-lock the pool by waiting on work queued behind themselves.
+ */
+public final class Workers {
+
+    /**
+     * A piece of work over the half-open index range [start, end).
+     */
+    public interface RangeTask {
+        /**
+         * Processes indices start (inclusive) through end (exclusive).
+         * @param start first index to process.
+         * @param end one past the last index to process.
+         */
+        void run(int start, int end);
+    }
+
+    /** Number of worker threads, one per available core. */
+    private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    /** Chunks handed out per worker, so uneven chunks still balance out. */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    /** Lazily created shared pool. */
+    private static ExecutorService pool;
+
+    private Workers() {}
+
+    /**
+     * Returns the number of threads loops are split across.
+     * @return the pool's parallelism.
+     */
+    public static int parallelism() {
+        return PARALLELISM;
+    }
+
+    /**
+     * Returns the shared executor, creating it on first use. Its threads are daemons, so an idle pool never keeps a
+     * sketch from exiting.
+     * @return the shared {@link ExecutorService}.
+     */
+    public static synchronized ExecutorService executor() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(PARALLELISM, new ThreadFactory() {
+                private int count = 0;
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new WorkerThread(runnable, "pcanvas-worker-" + (count++));
+                }
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Tells whether the calling thread is one of the pool's workers.
+     * @return true when called from inside the shared pool.
+     */
+    public static boolean isWorkerThread() {
+        return Thread.currentThread() instanceof WorkerThread;
+    }
+
+    /**
+     * Runs a task over [0, size), splitting the range into chunks of at least minChunk indices that run on the shared
+     * pool. Small ranges, single-core machines and calls made from a worker thread run the task inline instead. The
+     * caller's thread processes one of the chunks itself and returns once every chunk is finished.
+     * @param size the number of indices to process.
+     * @param minChunk the smallest range worth handing to another thread.
+     * @param task the work to run on each chunk.
+     */
+    public static void forRange(final int size, final int minChunk, final RangeTask task) {
+        if (size <= 0) return;
+        final int chunks = Math.min(PARALLELISM * CHUNKS_PER_WORKER, size / Math.max(1, minChunk));
+        if (chunks < 2 || PARALLELISM == 1 || isWorkerThread()) {
+            task.run(0, size);
+            return;
+        }
+
+        final int chunkSize = (size + chunks - 1) / chunks;
+        final List<Future<?>> pending = new ArrayList<Future<?>>(chunks);
+        final ExecutorService executor = executor();
+        for (int start = chunkSize; start < size; start += chunkSize) {
+            final int from = start, to = Math.min(size, start + chunkSize);
+            pending.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    task.run(from, to);
+                }
+            }));
+        }
+        task.run(0, Math.min(size, chunkSize));
+        awaitAll(pending);
+    }
+
+    /**
+     * Waits for every future to finish, re-throwing the first failure on the calling thread.
+     * @param pending the futures to wait for.
+     */
+    public static void awaitAll(final List<? extends Future<?>> pending) {
+        RuntimeException failure = null;
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                if (failure == null) failure = new IllegalStateException("Interrupted while waiting on workers.", ex);
+            } catch (final ExecutionException ex) {
+                if (failure == null) failure = asRuntimeException(ex.getCause());
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    private static RuntimeException asRuntimeException(final Throwable cause) {
+        if (cause instanceof RuntimeException) return (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        return new IllegalStateException(cause);
+    }
+
+    /**
+     * Marker thread type for the shared pool's threads.
+     */
+    private static final class WorkerThread extends Thread {
+        WorkerThread(final Runnable runnable, final String name) {
+            super(runnable, name);
+            this.setDaemon(true);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import pcanvas.Circle2D;
 import pcanvas.Point;
 import pcanvas.Vector;
 import processing.core.PApplet;
+import processing.core.PGraphics;
 import processing.core.PImage;
 
 import static pcanvas.Point.rotatePointByDegrees;
@@ -25,6 +26,12 @@ public class CanvasPen {
     protected final PApplet applet;
 
     protected Float strokeWeight = 1.0F;
+
+    /** Whether draws are being queued, see {@link #beginBatch()}. */
+    boolean batching = false;
+
+    /** The queued draws; kept between batches so its buffers are reused. */
+    final DrawQueue queue = new DrawQueue();
     
     /**
      * Basic constructor. Requires a {@link PApplet} in order to invoke its graphics methods.
@@ -50,6 +57,78 @@ public class CanvasPen {
         point.set(this.applet.mouseX, this.applet.mouseY);
     }
 
+    /* Batching */
+
+    /**
+     * Starts deferring draws until {@link #endBatch()}. Meanwhile points, lines, filled shapes and outlines (and
+     * {@link CanvasPen3D}'s spheres) are queued instead of drawn, grouped by their style, and {@link #endBatch()}
+     * draws each group with one set of fill, stroke and weight calls, all the line segments of a group in a single
+     * shape. Use it around overlays of many small annotations, whose cost is in switching styles rather than in
+     * geometry.
+     * <br />
+     * <br />
+     * Draws of different styles are no longer layered in call order, only draws of the same style are. Queued points
+     * and shapes keep the stroke the applet had when they were queued; other drawing calls, like labels, are not
+     * deferred.
+     * <br />
+     * <br />
+     * Only coordinates are queued, not the transform they were drawn under: all queued draws are replayed under the
+     * matrix that is current at {@link #endBatch()}. A batch must therefore not span {@code pushMatrix()},
+     * {@code translate()} or any other matrix change; end it before the change and begin a new one after.
+     */
+    public void beginBatch() {
+        this.batching = true;
+    }
+
+    /**
+     * Draws everything queued since {@link #beginBatch()} and goes back to drawing immediately. The applet's fill,
+     * stroke and stroke weight are left as they were before the queued draws.
+     */
+    public void endBatch() {
+        if (!this.batching) return;
+        this.batching = false;
+        this.queue.flush(this.applet);
+    }
+
+    /**
+     * Tells whether draws are currently being queued.
+     * @return true between {@link #beginBatch()} and {@link #endBatch()}.
+     */
+    public boolean isBatching() {
+        return this.batching;
+    }
+
+    /** Whether this pen draws in 3D, so that queued lines and shapes keep their z-coordinates. */
+    boolean is3D() {
+        return false;
+    }
+
+    /** Queues a point drawn as a circle, with the stroke the applet has now. */
+    private void queuePoint(final Point point, final float diameter, final int color) {
+        final PGraphics g = this.applet.g;
+        this.queue.group(DrawQueue.ELLIPSES, true, color, g.stroke, g.strokeColor, g.strokeWeight)
+                  .add(point.x).add(point.y).add(diameter);
+    }
+
+    /** Queues a line-segment in the given color and weight. */
+    void queueLine(final Point start, final Point end, final int color, final float weight) {
+        if (this.is3D()) {
+            this.queue.group(DrawQueue.LINES_3D, false, 0, true, color, weight)
+                      .add(start.x).add(start.y).add(start.z).add(end.x).add(end.y).add(end.z);
+        } else {
+            this.queue.group(DrawQueue.LINES_2D, false, 0, true, color, weight)
+                      .add(start.x).add(start.y).add(end.x).add(end.y);
+        }
+    }
+
+    /** Queues the closed outline of a shape, as {@link #drawShapeNoFill(Colors, boolean, Point...)} draws it. */
+    private void queueOutline(final Colors color, final boolean drawPoints, final Point ... points) {
+        for (int i = 0; i < points.length; i++) {
+            this.queueLine(points[(i == 0) ? points.length - 1 : i - 1], points[i], color.getRgb(), this.strokeWeight);
+        }
+        if (drawPoints) this.drawPoints(color, points);
+    }
+
     /* Point draws */
     /**
      * Draws a single {@link Point} onto the screen at the current mouse location.
@@ -73,12 +152,20 @@ public class CanvasPen {
      * @param fillColor the color of the given point.
      */
     public void drawPoint(final Point point, final Colors fillColor) {
+        if (this.batching) {
+            this.queuePoint(point, 4.0F, fillColor.getRgb());
+            return;
+        }
         this.applet.fill(this.applet.color(fillColor.getRgb()));
         this.applet.ellipse(point.x, point.y, 4.0F, 4.0F);
 
     }
 
     public void drawPoint(final Point point, final int color) {
+        if (this.batching) {
+            this.queuePoint(point, 4.0F, color);
+            return;
+        }
         this.applet.fill(color);
         this.applet.ellipse(point.x, point.y, 4.0F, 4.0F);
     }
@@ -98,11 +185,19 @@ public class CanvasPen {
      * @param fillColor the fill color of the point.
      */
     public void drawPoint(final Point point, final float radius, final Colors fillColor) {
+        if (this.batching) {
+            this.queuePoint(point, 2*radius, fillColor.getRgb());
+            return;
+        }
         this.applet.fill(this.applet.color(fillColor.getRgb()));
         this.applet.ellipse(point.x, point.y, 2*radius, 2*radius);
     }
 
     public void drawPoint(final Point point, final float radius, final int color) {
+        if (this.batching) {
+            this.queuePoint(point, 2*radius, color);
+            return;
+        }
         this.applet.fill(color);
         this.applet.ellipse(point.x, point.y, 2*radius, 2*radius);
     }
@@ -191,6 +286,10 @@ public class CanvasPen {
      * @param color the color to make the line-segment.
      */
     public void drawLine(final Point start, final Point end, final Colors color) {
+        if (this.batching) {
+            this.queueLine(start, end, color.getRgb(), this.strokeWeight);
+            return;
+        }
         this.setStrokeColorAndWeight(color, this.strokeWeight);
         this.applet.line(start.x, start.y, end.x, end.y);
     }
@@ -204,6 +303,11 @@ public class CanvasPen {
      * @param strokeWeight the desired weight of the line to be drawn.
      */
     public void drawLine(final Point start, final Point end, final Colors color, float strokeWeight) {
+        if (this.batching) {
+            this.strokeWeight = strokeWeight;
+            this.queueLine(start, end, color.getRgb(), strokeWeight);
+            return;
+        }
         this.setStrokeColorAndWeight(color, strokeWeight);
         this.applet.line(start.x, start.y, end.x, end.y);       
         this.applet.noStroke();
@@ -264,6 +368,18 @@ public class CanvasPen {
      * @param points the points which should make up some shape.
      */
     public void drawShape(final Colors fillColor, final boolean drawPoints, final Point ... points) {
+        if (this.batching) {
+            final PGraphics g = this.applet.g;
+            final boolean flat = !this.is3D();
+            final DrawQueue.Group group = this.queue.group(flat ? DrawQueue.POLYGONS_2D : DrawQueue.POLYGONS_3D,
+                    true, fillColor.getRgb(), g.stroke, g.strokeColor, g.strokeWeight).add(points.length);
+            for (Point point : points) {
+                group.add(point.x).add(point.y);
+                if (!flat) group.add(point.z);
+            }
+            if (drawPoints) this.drawPoints(Colors.BLACK, points);
+            return;
+        }
         this.applet.fill(this.applet.color(fillColor.getRgb()));
         this.applet.beginShape();
 
@@ -283,6 +399,10 @@ public class CanvasPen {
      * @param points the points which should make up some shape.
      */
     public void drawShapeNoFill(final Colors shapeColor, final boolean drawPoints, final Point ... points) {
+        if (this.batching) {
+            this.queueOutline(shapeColor, drawPoints, points);
+            return;
+        }
         this.applet.noFill();
         this.applet.beginShape();
 
@@ -312,6 +432,10 @@ public class CanvasPen {
      * @param points the points which should make up some shape.
      */
     public void drawShapeNoFill(final boolean drawPoints, final Point ... points) {
+        if (this.batching) {
+            this.queueOutline(Colors.BLACK, drawPoints, points);
+            return;
+        }
         this.applet.noFill();
         this.applet.beginShape();
 
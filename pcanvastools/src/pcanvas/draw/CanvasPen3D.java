@@ -7,8 +7,7 @@ import pcanvas.Point;
 import pcanvas.Vector;
 import processing.core.PApplet;
 
-import static processing.core.PApplet.CLOSE;
-import static processing.core.PApplet.QUADS;
+import static processing.core.PApplet.TRIANGLES;
 
 
 /**
@@ -28,6 +27,9 @@ public class CanvasPen3D extends CanvasPen {
     /** Default color for the wireframe draws. */
     protected Colors wireframeColor;
 
+    /** Scratch unit normals for {@link #drawSmoothShading(List, int)}, one per circle point, grown as needed. */
+    private float[] smoothShadingNormals = new float[0];
+
     /**
      * Constructor which accepts a {@link PApplet} needed to make the calls we are abstracting from the user for
      * simplicity in drawing objects to the canvas.
@@ -46,6 +48,19 @@ public class CanvasPen3D extends CanvasPen {
         this.applet.vertex(point.x, point.y, point.z);
     }
 
+    @Override
+    boolean is3D() {
+        return true;
+    }
+
+    /** Queues a point drawn as a sphere, with the stroke its immediate draw would use. */
+    private void queueSphere(final Point point, final float radius, final int color) {
+        final boolean stroke = wireMode;
+        this.queue.group(DrawQueue.SPHERES, true, color, stroke, stroke ? wireframeColor.getRgb() : 0,
+                         this.applet.g.strokeWeight)
+                  .add(point.x).add(point.y).add(point.z).add(radius);
+    }
+
     /**
      * Draws a 3-dimensional line from one point to another using the provided color. Resets the stroke weight and color
      * after drawing.
@@ -55,6 +70,10 @@ public class CanvasPen3D extends CanvasPen {
      */
     @Override
     public void drawLine(final Point start, final Point end, final Colors color) {
+        if (this.batching) {
+            this.queueLine(start, end, color.getRgb(), this.strokeWeight);
+            return;
+        }
         this.setStrokeColorAndWeight(color, this.strokeWeight);
         this.applet.line(start.x, start.y, start.z, end.x, end.y, end.z);
         if (!wireMode) this.applet.noStroke();
@@ -71,6 +90,11 @@ public class CanvasPen3D extends CanvasPen {
      */
     @Override
     public void drawLine(final Point start, final Point end, final Colors color, float strokeWeight) {
+        if (this.batching) {
+            this.strokeWeight = strokeWeight;
+            this.queueLine(start, end, color.getRgb(), strokeWeight);
+            return;
+        }
         this.setStrokeColorAndWeight(color, strokeWeight);
         this.applet.line(start.x, start.y, start.z, end.x, end.y, end.z);
         if (!wireMode) this.applet.noStroke();
@@ -102,12 +126,17 @@ public class CanvasPen3D extends CanvasPen {
     }
 
     /**
-     * Draws a 3-Dimensional {@link Point} onto the canvas with a given radius and color.
+     * Draws a 3-Dimensional {@link Point} onto the canvas with a given radius and color. While batching (see
+     * {@link #beginBatch()}), spheres are queued like the other draws and drawn with the current sphere detail.
      * @param point the {@link Point} to draw.
      * @param radius a radius, as an integer.
      * @param color the {@link Colors} value for the object to be drawn.
      */
     public void drawPoint3D(final Point point, final int radius, final Colors color) {
+        if (this.batching) {
+            this.queueSphere(point, radius, color.getRgb());
+            return;
+        }
         if (wireMode) this.applet.stroke(wireframeColor.getRgb()); else this.applet.noStroke();
         this.applet.fill(color.getRgb());
         this.applet.pushMatrix();
@@ -124,6 +153,10 @@ public class CanvasPen3D extends CanvasPen {
      * @param color the {@link Colors} value for the object to be drawn.
      */
     public void drawPoint3D(final Point point, final float radius, final Colors color) {
+        if (this.batching) {
+            this.queueSphere(point, radius, color.getRgb());
+            return;
+        }
         if (wireMode) this.applet.stroke(wireframeColor.getRgb()); else this.applet.noStroke();
         this.applet.fill(color.getRgb());
         this.applet.pushMatrix();
@@ -139,6 +172,10 @@ public class CanvasPen3D extends CanvasPen {
      * @param radius a radius, as an integer.
      */
     public void drawPoint3D(final Point point, final int radius) {
+        if (this.batching) {
+            this.queueSphere(point, radius, Colors.BLACK.getRgb());
+            return;
+        }
         if (wireMode) this.applet.stroke(wireframeColor.getRgb()); else this.applet.noStroke();
         this.applet.pushMatrix();
         this.applet.fill(Colors.BLACK.getRgb());
@@ -154,6 +191,10 @@ public class CanvasPen3D extends CanvasPen {
      * @param radius a radius, as a float.
      */
     public void drawPoint3D(final Point point, final float radius) {
+        if (this.batching) {
+            this.queueSphere(point, radius, Colors.BLACK.getRgb());
+            return;
+        }
         if (wireMode) this.applet.stroke(wireframeColor.getRgb()); else this.applet.noStroke();
         this.applet.pushMatrix();
         this.applet.fill(Colors.BLACK.getRgb());
@@ -243,6 +284,28 @@ public class CanvasPen3D extends CanvasPen {
                                point.z + labelDisplacement.z);
     }
 
+    /**
+     * Estimates the radius in pixels of a sphere drawn under the current transform, e.g. to pick how finely to
+     * tessellate it. The radius is projected along the three coordinate axes and the longest projection is taken, so
+     * the estimate is within a factor of about 1.2 of the true size for spheres in front of the camera.
+     * @param center the sphere's center, in model coordinates.
+     * @param radius the sphere's radius.
+     * @return the estimated screen radius, in pixels.
+     */
+    public float screenRadius(final Point center, final float radius) {
+        final float x = center.x, y = center.y, z = center.z;
+        final float sx = this.applet.screenX(x, y, z), sy = this.applet.screenY(x, y, z);
+        float dx = this.applet.screenX(x + radius, y, z) - sx, dy = this.applet.screenY(x + radius, y, z) - sy;
+        float max = dx * dx + dy * dy;
+        dx = this.applet.screenX(x, y + radius, z) - sx;
+        dy = this.applet.screenY(x, y + radius, z) - sy;
+        max = Math.max(max, dx * dx + dy * dy);
+        dx = this.applet.screenX(x, y, z + radius) - sx;
+        dy = this.applet.screenY(x, y, z + radius) - sy;
+        max = Math.max(max, dx * dx + dy * dy);
+        return (float) Math.sqrt(max);
+    }
+
     /**
      * Calls {@link #drawSmoothShading(List, Colors)} defaulting the color to {@link Colors#WHITE}.
      * @param circles the circles to draw smooth shading around.
@@ -257,79 +320,139 @@ public class CanvasPen3D extends CanvasPen {
      * @param color the color for shading.
      */
     public void drawSmoothShading(final List<Circle3D> circles, final Colors color) {
-        for (int i = 0; i < circles.size() - 1; i++) {
-            Circle3D circle = circles.get(i);
-            Point center = circle.center;
-            List<Point> points = circle.points;
-            Circle3D nextCircle = circles.get(i + 1);
-            Point nextCenter = nextCircle.center;
-            List<Point> nextPoints = nextCircle.points;
-            this.applet.fill(color.getRgb());
-            this.applet.beginShape(QUADS);
-            for (int j = 0; j < points.size(); j++) {
-                int index = (j == points.size() - 1 ?  points.size() - j : j + 1);
-                Point topLeft = points.get(j), topRight = nextPoints.get(j);
-                Point bottomLeft = points.get(index), bottomRight = nextPoints.get(index);
-                Vector tlNormal = new Vector(center, topLeft).normal();
-                Vector trNormal = new Vector(nextCenter, topRight).normal();
-                Vector blNormal = new Vector(center, bottomLeft).normal();
-                Vector brNormal = new Vector(nextCenter, bottomRight).normal();
-
-
-                this.applet.normal(tlNormal.x, tlNormal.y, tlNormal.z);
-                this.applet.vertex(topLeft.x, topLeft.y, topLeft.z);
-
-                this.applet.normal(trNormal.x, trNormal.y, trNormal.z);
-                this.applet.vertex(topRight.x, topRight.y, topRight.z);
-
-                this.applet.normal(brNormal.x, brNormal.y, brNormal.z);
-                this.applet.vertex(bottomRight.x, bottomRight.y, bottomRight.z);
-
-                this.applet.normal(blNormal.x, blNormal.y, blNormal.z);
-                this.applet.vertex(bottomLeft.x, bottomLeft.y, bottomLeft.z);
+        this.drawSmoothShading(circles, color.getRgb());
+    }
+
+    /**
+     * Creates a 3D smooth object whose 'skeleton' is represented by the provided {@link Circle3D} objects. The tube
+     * is drawn from the circles' current points on every call, computing each point's normal once; to replay a tube
+     * whose skeleton rarely changes, keep a {@link TubeMesh} for it and use {@link #drawTube(TubeMesh, int)}.
+     * @param circles the 'skeleton' circles, all with the same number of points.
+     * @param color the color for shading.
+     */
+    public void drawSmoothShading(final List<Circle3D> circles, final int color) {
+        final int rings = circles.size();
+        if (rings < 2) return;
+        final int ringSize = circles.get(0).points.size();
+        if (smoothShadingNormals.length < 3 * rings * ringSize) smoothShadingNormals = new float[3 * rings * ringSize];
+        final float[] normals = smoothShadingNormals;
+        for (int i = 0, k = 0; i < rings; i++) {
+            final Circle3D circle = circles.get(i);
+            if (circle.points.size() != ringSize) {
+                throw new IllegalArgumentException("Cannot build a tube through circles with different numbers of points!");
+            }
+            final Point center = circle.center;
+            for (int j = 0; j < ringSize; j++, k += 3) {
+                final Point point = circle.points.get(j);
+                final float nx = point.x - center.x, ny = point.y - center.y, nz = point.z - center.z;
+                float n = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+                if (n < 0.000001) n = 1;
+                normals[k] = nx / n;
+                normals[k + 1] = ny / n;
+                normals[k + 2] = nz / n;
             }
-            this.applet.endShape(CLOSE);
         }
+
+        // two triangles per quad, wound and closed at the seam as TubeMesh builds them
+        this.applet.fill(color);
+        this.applet.beginShape(TRIANGLES);
+        for (int i = 0; i < rings - 1; i++) {
+            final List<Point> points = circles.get(i).points, nextPoints = circles.get(i + 1).points;
+            for (int j = 0; j < ringSize; j++) {
+                final int next = (j + 1 == ringSize) ? 0 : j + 1;
+                final int topLeft = i * ringSize + j, topRight = topLeft + ringSize;
+                final int bottomLeft = i * ringSize + next, bottomRight = bottomLeft + ringSize;
+                this.smoothVertex(points.get(j), topLeft);
+                this.smoothVertex(nextPoints.get(j), topRight);
+                this.smoothVertex(nextPoints.get(next), bottomRight);
+                this.smoothVertex(points.get(j), topLeft);
+                this.smoothVertex(nextPoints.get(next), bottomRight);
+                this.smoothVertex(points.get(next), bottomLeft);
+            }
+        }
+        this.applet.endShape();
+    }
+
+    private void smoothVertex(final Point point, final int index) {
+        final float[] normals = smoothShadingNormals;
+        this.applet.normal(normals[3*index], normals[3*index+1], normals[3*index+2]);
+        this.applet.vertex(point.x, point.y, point.z);
     }
 
     /**
-     * Creates a 3D smooth object whose 'skeleton' is represented by the provided {@link Circle3D} objects.
-     * @param circles the 'skeleton' circles.
+     * Draws a {@link TubeMesh} with the given color.
+     * @param tube the tube to draw.
      * @param color the color for shading.
      */
-    public void drawSmoothShading(final List<Circle3D> circles, final int color) {
-        for (int i = 0; i < circles.size() - 1; i++) {
-            Circle3D circle = circles.get(i);
-            Point center = circle.center;
-            List<Point> points = circle.points;
-            Circle3D nextCircle = circles.get(i + 1);
-            Point nextCenter = nextCircle.center;
-            List<Point> nextPoints = nextCircle.points;
-            this.applet.fill(color);
-            this.applet.beginShape(QUADS);
-            for (int j = 0; j < points.size(); j++) {
-                int index = (j == points.size() - 1 ?  points.size() - j : j + 1);
-                Point topLeft = points.get(j), topRight = nextPoints.get(j);
-                Point bottomLeft = points.get(index), bottomRight = nextPoints.get(index);
-                Vector tlNormal = new Vector(center, topLeft).normal();
-                Vector trNormal = new Vector(nextCenter, topRight).normal();
-                Vector blNormal = new Vector(center, bottomLeft).normal();
-                Vector brNormal = new Vector(nextCenter, bottomRight).normal();
-
-
-                this.applet.normal(tlNormal.x, tlNormal.y, tlNormal.z);
-                this.applet.vertex(topLeft.x, topLeft.y, topLeft.z);
-
-                this.applet.normal(trNormal.x, trNormal.y, trNormal.z);
-                this.applet.vertex(topRight.x, topRight.y, topRight.z);
-
-                this.applet.normal(brNormal.x, brNormal.y, brNormal.z);
-                this.applet.vertex(bottomRight.x, bottomRight.y, bottomRight.z);
-
-                this.applet.normal(blNormal.x, blNormal.y, blNormal.z);
-                this.applet.vertex(bottomLeft.x, bottomLeft.y, bottomLeft.z);
+    public void drawTube(final TubeMesh tube, final Colors color) {
+        this.drawTube(tube, color.getRgb());
+    }
+
+    /**
+     * Draws a {@link TubeMesh} with the given color. Under the OpenGL renderer, with strokes off, a tube drawn again
+     * unchanged is replayed from a display list; otherwise its triangles are sent through {@link PApplet#vertex}.
+     * @param tube the tube to draw.
+     * @param color the color for shading.
+     */
+    public void drawTube(final TubeMesh tube, final int color) {
+        this.applet.fill(color);
+        if (DisplayLists.AVAILABLE && DisplayLists.draw(this.applet, tube, color)) return;
+
+        final float[] positions = tube.positions(), normals = tube.normals();
+        this.applet.beginShape(TRIANGLES);
+        for (int v : tube.triangles()) {
+            this.applet.normal(normals[3*v], normals[3*v+1], normals[3*v+2]);
+            this.applet.vertex(positions[3*v], positions[3*v+1], positions[3*v+2]);
+        }
+        this.applet.endShape();
+    }
+
+    /**
+     * Frees the display list a {@link TubeMesh} holds, if any. Tubes that are simply dropped keep theirs until the
+     * OpenGL context goes away.
+     * @param tube a tube that will not be drawn again.
+     */
+    public void releaseTube(final TubeMesh tube) {
+        if (DisplayLists.AVAILABLE) DisplayLists.release(this.applet, tube.displayList);
+    }
+
+    /**
+     * Draws the triangles, line segments or points of a {@link ShapeBuffer}, each vertex in its own color. Triangles
+     * are drawn without outlines, and lines and points with the current stroke weight, whatever the fill and stroke
+     * settings. Under the OpenGL renderer a buffer drawn again unchanged is replayed from a display list; otherwise it
+     * is sent through {@link PApplet#vertex} in a single shape.
+     * @param buffer the buffer to draw.
+     */
+    public void drawBuffer(final ShapeBuffer buffer) {
+        final int count = buffer.vertexCount();
+        if (count == 0) return;
+        if (DisplayLists.AVAILABLE && DisplayLists.draw(this.applet, buffer)) return;
+
+        final float[] positions = buffer.positions(), normals = buffer.normals();
+        final int[] colors = buffer.colors();
+        final boolean triangles = buffer.kind() == TRIANGLES;
+        this.applet.pushStyle();
+        if (triangles) this.applet.noStroke(); else this.applet.noFill();
+        this.applet.beginShape(buffer.kind());
+        for (int i = 0; i < count; i++) {
+            if (triangles) {
+                this.applet.fill(colors[i]);
+                this.applet.normal(normals[3*i], normals[3*i+1], normals[3*i+2]);
+            } else {
+                this.applet.stroke(colors[i]);
             }
-            this.applet.endShape(CLOSE);
+            this.applet.vertex(positions[3*i], positions[3*i+1], positions[3*i+2]);
         }
+        this.applet.endShape();
+        this.applet.popStyle();
+    }
+
+    /**
+     * Frees the display list a {@link ShapeBuffer} holds, if any. Buffers that are simply dropped keep theirs until
+     * the OpenGL context goes away.
+     * @param buffer a buffer that will not be drawn again.
+     */
+    public void releaseBuffer(final ShapeBuffer buffer) {
+        if (DisplayLists.AVAILABLE) DisplayLists.release(this.applet, buffer.displayList);
     }
 }
@@ -92,7 +92,7 @@ public enum Colors {
     public static int ramp(int c, int m) {
         float f = (90.0F * c) / m;
 
-        return new Color((f/3), 30+f, 30+f).getRGB();
+        return new Color((int) (f/3), (int) (30+f), (int) (30+f)).getRGB();
     }
 
     /**
@@ -0,0 +1,45 @@
+package pcanvas.draw;
+
+/**
+ * The OpenGL display list of one piece of cached geometry, such as a {@link TubeMesh} or a {@link ShapeBuffer}. It
+ * only records which list holds which version of the geometry; {@link DisplayLists} does the OpenGL work, so geometry
+ * can own one of these without loading the OpenGL classes.
+ */
+final class DisplayList {
+
+    /** The list's name, or 0 if it has none. */
+    int name = 0;
+
+    /** The OpenGL context the list was created in. */
+    Object context;
+
+    /** The geometry version compiled into the list, and the last version drawn. */
+    int compiledVersion = -1, seenVersion = -1;
+
+    /**
+     * @param context the current OpenGL context.
+     * @param version the geometry's current version.
+     * @return true if the list holds this version of the geometry and can be called in this context.
+     */
+    boolean isCurrent(final Object context, final int version) {
+        return name != 0 && this.context == context && compiledVersion == version;
+    }
+
+    /**
+     * Records that a version of the geometry is being drawn.
+     * @param version the geometry's current version.
+     * @return true if this version was drawn before, so it is worth compiling.
+     */
+    boolean seenBefore(final int version) {
+        if (seenVersion == version) return true;
+        seenVersion = version;
+        return false;
+    }
+
+    /** Forgets the list, after it was deleted or its context went away. */
+    void reset() {
+        name = 0;
+        context = null;
+        compiledVersion = -1;
+    }
+}
@@ -0,0 +1,168 @@
+package pcanvas.draw;
+
+import javax.media.opengl.GL;
+
+import processing.core.PApplet;
+import processing.opengl.PGraphicsOpenGL;
+
+/**
+ * Draws {@link TubeMesh}es and {@link ShapeBuffer}s through OpenGL display lists. Kept apart from {@link CanvasPen3D}
+ * so that sketches using the software renderers never load the OpenGL classes; {@link #AVAILABLE} tells whether they
+ * are on the classpath.
+ * <br />
+ * <br />
+ * A version of some geometry is compiled into a list the second time it is drawn, so geometry rebuilt every frame
+ * never pays for compiling. Tube lists hold only normals and vertices: the fill color is set around each call. Shape
+ * buffer lists carry their own colors. Processing's lights are switched on around the call for triangles.
+ */
+final class DisplayLists {
+
+    /** Whether the OpenGL renderer classes can be loaded. */
+    static final boolean AVAILABLE = isAvailable();
+
+    private DisplayLists() {}
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("processing.opengl.PGraphicsOpenGL");
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * Draws the tube from its display list, compiling the list first if needed.
+     * @param applet the applet to draw on.
+     * @param tube the tube.
+     * @param color the fill color.
+     * @return false if the tube should be drawn in immediate mode instead: the renderer is not OpenGL, strokes are
+     * on, or this version of the tube has not been drawn before.
+     */
+    static boolean draw(final PApplet applet, final TubeMesh tube, final int color) {
+        if (!(applet.g instanceof PGraphicsOpenGL) || applet.g.stroke) return false;
+        final PGraphicsOpenGL pgl = (PGraphicsOpenGL) applet.g;
+        final DisplayList list = tube.displayList;
+        final Object context = pgl.getContext();
+        final boolean current = list.isCurrent(context, tube.version());
+        if (!current && !list.seenBefore(tube.version())) return false;
+
+        final GL gl = pgl.beginGL();
+        try {
+            if (!current && !compile(gl, context, tube)) return false;
+            gl.glColor4f(((color >> 16) & 0xFF) / 255F, ((color >> 8) & 0xFF) / 255F, (color & 0xFF) / 255F,
+                         ((color >>> 24) & 0xFF) / 255F);
+            callLit(gl, pgl, list);
+        } finally {
+            pgl.endGL();
+        }
+        return true;
+    }
+
+    /**
+     * Draws the shape buffer from its display list, compiling the list first if needed.
+     * @param applet the applet to draw on.
+     * @param buffer the shape buffer.
+     * @return false if the buffer should be drawn in immediate mode instead: the renderer is not OpenGL, or this
+     * version of the buffer has not been drawn before.
+     */
+    static boolean draw(final PApplet applet, final ShapeBuffer buffer) {
+        if (!(applet.g instanceof PGraphicsOpenGL)) return false;
+        final PGraphicsOpenGL pgl = (PGraphicsOpenGL) applet.g;
+        final DisplayList list = buffer.displayList;
+        final Object context = pgl.getContext();
+        final boolean current = list.isCurrent(context, buffer.version());
+        if (!current && !list.seenBefore(buffer.version())) return false;
+
+        final GL gl = pgl.beginGL();
+        try {
+            if (!current && !compile(gl, context, buffer)) return false;
+            if (buffer.kind() == PApplet.TRIANGLES) {
+                callLit(gl, pgl, list);
+            } else if (buffer.kind() == PApplet.LINES) {
+                gl.glLineWidth(pgl.strokeWeight);
+                gl.glCallList(list.name);
+            } else {
+                gl.glPointSize(pgl.strokeWeight);
+                gl.glCallList(list.name);
+            }
+        } finally {
+            pgl.endGL();
+        }
+        return true;
+    }
+
+    /**
+     * Frees a display list, if it has one in the applet's current context.
+     * @param applet the applet the list was drawn on.
+     * @param list the list.
+     */
+    static void release(final PApplet applet, final DisplayList list) {
+        if (list.name == 0 || !(applet.g instanceof PGraphicsOpenGL)) return;
+        final PGraphicsOpenGL pgl = (PGraphicsOpenGL) applet.g;
+        if (list.context == pgl.getContext()) {
+            pgl.beginGL().glDeleteLists(list.name, 1);
+            pgl.endGL();
+        }
+        list.reset();
+    }
+
+    private static void callLit(final GL gl, final PGraphicsOpenGL pgl, final DisplayList list) {
+        final boolean lit = pgl.lightCount > 0;
+        if (lit) {
+            gl.glEnable(GL.GL_LIGHTING);
+            gl.glEnable(GL.GL_NORMALIZE);
+        }
+        gl.glCallList(list.name);
+        if (lit) {
+            gl.glDisable(GL.GL_NORMALIZE);
+            gl.glDisable(GL.GL_LIGHTING);
+        }
+    }
+
+    /** Starts compiling a fresh list in place of the old one; false if OpenGL had no list to give. */
+    private static boolean begin(final GL gl, final Object context, final DisplayList list) {
+        if (list.name != 0 && list.context == context) gl.glDeleteLists(list.name, 1);
+        list.reset();
+        list.name = gl.glGenLists(1);
+        list.context = context;
+        if (list.name == 0) return false;
+        gl.glNewList(list.name, GL.GL_COMPILE);
+        return true;
+    }
+
+    private static boolean compile(final GL gl, final Object context, final TubeMesh tube) {
+        final DisplayList list = tube.displayList;
+        if (!begin(gl, context, list)) return false;
+        final float[] positions = tube.positions(), normals = tube.normals();
+        gl.glBegin(GL.GL_TRIANGLES);
+        for (int v : tube.triangles()) {
+            gl.glNormal3f(normals[3*v], normals[3*v+1], normals[3*v+2]);
+            gl.glVertex3f(positions[3*v], positions[3*v+1], positions[3*v+2]);
+        }
+        gl.glEnd();
+        gl.glEndList();
+        list.compiledVersion = tube.version();
+        return true;
+    }
+
+    private static boolean compile(final GL gl, final Object context, final ShapeBuffer buffer) {
+        final DisplayList list = buffer.displayList;
+        if (!begin(gl, context, list)) return false;
+        final float[] positions = buffer.positions(), normals = buffer.normals();
+        final int[] colors = buffer.colors();
+        final int kind = buffer.kind();
+        gl.glBegin(kind == PApplet.TRIANGLES ? GL.GL_TRIANGLES : (kind == PApplet.LINES) ? GL.GL_LINES : GL.GL_POINTS);
+        for (int i = 0, n = buffer.vertexCount(); i < n; i++) {
+            final int color = colors[i];
+            gl.glColor4f(((color >> 16) & 0xFF) / 255F, ((color >> 8) & 0xFF) / 255F, (color & 0xFF) / 255F,
+                         ((color >>> 24) & 0xFF) / 255F);
+            if (normals != null) gl.glNormal3f(normals[3*i], normals[3*i+1], normals[3*i+2]);
+            gl.glVertex3f(positions[3*i], positions[3*i+1], positions[3*i+2]);
+        }
+        gl.glEnd();
+        gl.glEndList();
+        list.compiledVersion = buffer.version();
+        return true;
+    }
+}
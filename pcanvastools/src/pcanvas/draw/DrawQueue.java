@@ -0,0 +1,191 @@
+package pcanvas.draw;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import processing.core.PApplet;
+
+import static processing.core.PApplet.CLOSE;
+import static processing.core.PApplet.LINES;
+
+/**
+ * The draw commands a {@link CanvasPen} defers between {@link CanvasPen#beginBatch()} and
+ * {@link CanvasPen#endBatch()}. Commands are grouped by primitive and style (fill, stroke and stroke weight) as they
+ * arrive, and each group is drawn with a single set of style calls; line segments of one group go into a single
+ * shape. Groups are drawn in the order their first command of the batch arrived, each in the order its commands
+ * arrived.
+ * <br />
+ * <br />
+ * Groups are looked up by their style in a hash map, and a group that stays empty for a whole batch is dropped at the
+ * next flush, so per-item or animated colors cost neither a growing scan nor a growing map.
+ */
+final class DrawQueue {
+
+    /** The primitives a group can hold. A polygon is queued as its vertex count followed by its vertices. */
+    static final int ELLIPSES = 0, SPHERES = 1, LINES_2D = 2, LINES_3D = 3, POLYGONS_2D = 4, POLYGONS_3D = 5;
+
+    private final Map<Style, Group> groups = new HashMap<Style, Group>();
+
+    /** The groups this batch has used, in the order of their first command; the map's order means nothing. */
+    private final List<Group> batch = new ArrayList<Group>();
+
+    /** The group the last command went to; consecutive commands nearly always share it. */
+    private Group last;
+
+    /** Reused to look groups up without allocating a key per command. */
+    private final Style probe = new Style();
+
+    /**
+     * Finds or creates the group for a primitive and style.
+     * @param kind one of the primitive constants.
+     * @param fill whether shapes are filled.
+     * @param fillColor the fill color, if filled.
+     * @param stroke whether outlines are stroked.
+     * @param strokeColor the stroke color, if stroked.
+     * @param weight the stroke weight, if stroked.
+     * @return the group to add the command's values to.
+     */
+    Group group(final int kind, final boolean fill, final int fillColor,
+                final boolean stroke, final int strokeColor, final float weight) {
+        probe.set(kind, fill, fillColor, stroke, strokeColor, weight);
+        if (last != null && last.style.equals(probe)) return last;
+        last = groups.get(probe);
+        if (last == null) {
+            last = new Group(new Style().set(kind, fill, fillColor, stroke, strokeColor, weight));
+            groups.put(last.style, last);
+        }
+        if (!last.queued) {
+            last.queued = true;
+            batch.add(last);
+        }
+        return last;
+    }
+
+    /**
+     * Draws every waiting command and empties the queue. The applet's style is restored afterwards.
+     * @param applet the applet to draw on.
+     */
+    void flush(final PApplet applet) {
+        for (Iterator<Group> it = groups.values().iterator(); it.hasNext(); ) {
+            if (!it.next().queued) it.remove();
+        }
+        applet.pushStyle();
+        for (Group group : batch) {
+            if (group.size > 0) group.draw(applet);
+            group.size = 0;
+            group.queued = false;
+        }
+        applet.popStyle();
+        batch.clear();
+        last = null;
+        // the buffers of this batch's groups are kept for the next one, which most likely draws the same styles
+    }
+
+    /** A primitive and style; colors and weight that are not used, such as the fill color of unfilled shapes, are 0. */
+    private static final class Style {
+        private int kind, fillColor, strokeColor;
+        private boolean fill, stroke;
+        private float weight;
+
+        private Style set(final int kind, final boolean fill, final int fillColor,
+                          final boolean stroke, final int strokeColor, final float weight) {
+            this.kind = kind;
+            this.fill = fill;
+            this.fillColor = fill ? fillColor : 0;
+            this.stroke = stroke;
+            this.strokeColor = stroke ? strokeColor : 0;
+            this.weight = stroke ? weight : 0F;
+            return this;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Style)) return false;
+            final Style style = (Style) other;
+            return kind == style.kind && fill == style.fill && stroke == style.stroke && fillColor == style.fillColor
+                && strokeColor == style.strokeColor && Float.floatToIntBits(weight) == Float.floatToIntBits(style.weight);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = kind;
+            hash = 31 * hash + (fill ? 1 : 0);
+            hash = 31 * hash + fillColor;
+            hash = 31 * hash + (stroke ? 1 : 0);
+            hash = 31 * hash + strokeColor;
+            return 31 * hash + Float.floatToIntBits(weight);
+        }
+    }
+
+    /** The commands of one primitive and style, packed into a float array. */
+    static final class Group {
+        private final Style style;
+        private float[] data = new float[64];
+        private int size = 0;
+        private boolean queued = false;     // whether this batch has used the group yet
+
+        private Group(final Style style) {
+            this.style = style;
+        }
+
+        /**
+         * Appends one value of a command.
+         * @param value the value.
+         * @return this Group instance.
+         */
+        Group add(final float value) {
+            if (size == data.length) data = Arrays.copyOf(data, 2 * data.length);
+            data[size++] = value;
+            return this;
+        }
+
+        private void draw(final PApplet applet) {
+            if (style.fill) applet.fill(style.fillColor); else applet.noFill();
+            if (style.stroke) {
+                applet.stroke(style.strokeColor);
+                applet.strokeWeight(style.weight);
+            } else {
+                applet.noStroke();
+            }
+
+            final float[] d = data;
+            switch (style.kind) {
+                case ELLIPSES:
+                    for (int i = 0; i < size; i += 3) applet.ellipse(d[i], d[i+1], d[i+2], d[i+2]);
+                    break;
+                case SPHERES:
+                    for (int i = 0; i < size; i += 4) {
+                        applet.pushMatrix();
+                        applet.translate(d[i], d[i+1], d[i+2]);
+                        applet.sphere(d[i+3]);
+                        applet.popMatrix();
+                    }
+                    break;
+                case LINES_2D:
+                    applet.beginShape(LINES);
+                    for (int i = 0; i < size; i += 2) applet.vertex(d[i], d[i+1]);
+                    applet.endShape();
+                    break;
+                case LINES_3D:
+                    applet.beginShape(LINES);
+                    for (int i = 0; i < size; i += 3) applet.vertex(d[i], d[i+1], d[i+2]);
+                    applet.endShape();
+                    break;
+                default:
+                    final boolean flat = style.kind == POLYGONS_2D;
+                    for (int i = 0; i < size; ) {
+                        final int end = i + 1 + (flat ? 2 : 3) * (int) d[i];
+                        applet.beginShape();
+                        for (i++; i < end; i += flat ? 2 : 3) {
+                            if (flat) applet.vertex(d[i], d[i+1]); else applet.vertex(d[i], d[i+1], d[i+2]);
+                        }
+                        applet.endShape(CLOSE);
+                    }
+            }
+        }
+    }
+}
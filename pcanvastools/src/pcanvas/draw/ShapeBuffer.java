@@ -0,0 +1,154 @@
+package pcanvas.draw;
+
+import java.util.Arrays;
+
+import processing.core.PApplet;
+
+/**
+ * Retained geometry for {@link CanvasPen3D#drawBuffer(ShapeBuffer)}: a list of separate triangles, line segments or
+ * points, each vertex with its own color (and, for triangles, its own normal). It is filled the way a
+ * {@link PApplet#beginShape(int)} block would be, with {@link #color(int)}, {@link #normal(float, float, float)} and
+ * {@link #vertex(float, float, float)}, but only when the geometry changes; drawing it again costs one call under the
+ * OpenGL renderer, which replays it from a display list.
+ * <br />
+ * <br />
+ * Every {@link #clear()} or added vertex starts a new version of the geometry, so refill a buffer only when what it
+ * shows changed.
+ */
+public class ShapeBuffer {
+
+    /** {@link PApplet#TRIANGLES}, {@link PApplet#LINES} or {@link PApplet#POINTS}. */
+    private final int kind;
+
+    /** Packed x, y, z positions and normals, and one ARGB color per vertex. */
+    private float[] positions, normals;
+    private int[] colors;
+
+    private int vertexCount = 0;
+
+    /** The color and normal the next vertex gets. */
+    private int color = 0xFF000000;
+    private float normalX = 0F, normalY = 0F, normalZ = 1F;
+
+    /** Bumped on every {@link #clear()} and added vertex, so cached display lists know they are stale. */
+    private int version = 0;
+
+    /** Display list state, managed by {@link DisplayLists}. */
+    final DisplayList displayList = new DisplayList();
+
+    /**
+     * Creates an empty buffer.
+     * @param kind {@link PApplet#TRIANGLES}, three vertices per triangle, {@link PApplet#LINES}, two vertices per
+     * segment, or {@link PApplet#POINTS}.
+     */
+    public ShapeBuffer(final int kind) {
+        this(kind, 64);
+    }
+
+    /**
+     * Creates an empty buffer with room for some vertices; it grows as needed.
+     * @param kind {@link PApplet#TRIANGLES}, {@link PApplet#LINES} or {@link PApplet#POINTS}.
+     * @param capacity the number of vertices to make room for.
+     */
+    public ShapeBuffer(final int kind, final int capacity) {
+        if (kind != PApplet.TRIANGLES && kind != PApplet.LINES && kind != PApplet.POINTS) {
+            throw new IllegalArgumentException("A shape buffer holds TRIANGLES, LINES or POINTS, not kind " + kind + ".");
+        }
+        this.kind = kind;
+        final int size = Math.max(capacity, 1);
+        positions = new float[3 * size];
+        normals = (kind == PApplet.TRIANGLES) ? new float[3 * size] : null;
+        colors = new int[size];
+    }
+
+    /**
+     * Empties the buffer to be filled again; its capacity is kept.
+     * @return this ShapeBuffer instance.
+     */
+    public ShapeBuffer clear() {
+        vertexCount = 0;
+        version++;
+        return this;
+    }
+
+    /**
+     * Makes room for more vertices at once, so filling a large buffer grows it only once.
+     * @param vertices the number of vertices about to be added.
+     * @return this ShapeBuffer instance.
+     */
+    public ShapeBuffer ensureCapacity(final int vertices) {
+        if (vertexCount + vertices > colors.length) grow(vertexCount + vertices);
+        return this;
+    }
+
+    private void grow(final int capacity) {
+        positions = Arrays.copyOf(positions, 3 * capacity);
+        if (normals != null) normals = Arrays.copyOf(normals, 3 * capacity);
+        colors = Arrays.copyOf(colors, capacity);
+    }
+
+    /**
+     * Sets the color of the vertices that follow.
+     * @param argb the color, as returned by {@link Colors#getRgb()} or {@link PApplet#color(int)}.
+     * @return this ShapeBuffer instance.
+     */
+    public ShapeBuffer color(final int argb) {
+        this.color = argb;
+        return this;
+    }
+
+    /**
+     * Sets the normal of the vertices that follow; ignored by line and point buffers. It need not be unit length.
+     * @param x the normal's x component.
+     * @param y the normal's y component.
+     * @param z the normal's z component.
+     * @return this ShapeBuffer instance.
+     */
+    public ShapeBuffer normal(final float x, final float y, final float z) {
+        normalX = x;
+        normalY = y;
+        normalZ = z;
+        return this;
+    }
+
+    /**
+     * Adds a vertex with the current color and normal.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @param z the z-coordinate.
+     * @return this ShapeBuffer instance.
+     */
+    public ShapeBuffer vertex(final float x, final float y, final float z) {
+        if (vertexCount == colors.length) grow(colors.length + (colors.length >> 1) + 1);
+        final int i = 3 * vertexCount;
+        positions[i] = x;
+        positions[i + 1] = y;
+        positions[i + 2] = z;
+        if (normals != null) {
+            normals[i] = normalX;
+            normals[i + 1] = normalY;
+            normals[i + 2] = normalZ;
+        }
+        colors[vertexCount++] = color;
+        version++;
+        return this;
+    }
+
+    /** @return {@link PApplet#TRIANGLES}, {@link PApplet#LINES} or {@link PApplet#POINTS}. */
+    public int kind() {return kind;}
+
+    /** @return the number of vertices added since the last {@link #clear()}. */
+    public int vertexCount() {return vertexCount;}
+
+    /** @return the packed x, y, z vertex positions, 3 per vertex of {@link #vertexCount()}; not to be modified. */
+    public float[] positions() {return positions;}
+
+    /** @return the packed x, y, z vertex normals, or null unless this is a triangle buffer; not to be modified. */
+    public float[] normals() {return normals;}
+
+    /** @return the ARGB vertex colors; only the first {@link #vertexCount()} are used; not to be modified. */
+    public int[] colors() {return colors;}
+
+    /** @return a number that changes whenever the buffer is cleared or a vertex is added. */
+    public int version() {return version;}
+}
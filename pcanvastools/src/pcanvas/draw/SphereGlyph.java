@@ -0,0 +1,112 @@
+package pcanvas.draw;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import pcanvas.geom.UnitCircle;
+import processing.core.PApplet;
+
+/**
+ * A unit sphere tessellated once, to be stamped into a {@link ShapeBuffer} at many points: drawing thousands of
+ * spheres this way costs one buffer draw, where {@link CanvasPen3D#drawPoint3D(pcanvas.Point, float)} costs a matrix
+ * push, a translation and a freshly tessellated sphere each. Templates are shared: {@link #of(int)} returns the same
+ * instance for the same detail.
+ * <br />
+ * <br />
+ * The sphere is cut into segments around its z-axis and half as many bands from pole to pole, so a detail of 4 is an
+ * octahedron and the triangle count, segments * (segments - 2), grows with the square of the segment count.
+ */
+public final class SphereGlyph {
+
+    /** The coarsest sphere that still looks round from every side. */
+    public static final int MIN_SEGMENTS = 4;
+
+    private static final ConcurrentMap<Integer, SphereGlyph> templates = new ConcurrentHashMap<Integer, SphereGlyph>();
+
+    /** The number of segments around the z-axis. */
+    public final int segments;
+
+    /** The triangles' corners on the unit sphere, which are also their normals: 3 floats per corner, 3 per triangle. */
+    private final float[] corners;
+
+    private SphereGlyph(final int segments) {
+        this.segments = segments;
+        final int bands = segments / 2;
+        final UnitCircle around = UnitCircle.of(segments), down = UnitCircle.of(2 * bands);
+
+        // band 0 and the last band meet at the poles, so they have one triangle per segment instead of two
+        corners = new float[9 * 2 * segments * (bands - 1)];
+        int k = 0;
+        for (int band = 0; band < bands; band++) {
+            final float z0 = down.cos(band), r0 = down.sin(band);
+            final float z1 = down.cos(band + 1), r1 = (band + 1 == bands) ? 0F : down.sin(band + 1);
+            for (int j = 0; j < segments; j++) {
+                final int next = (j + 1 == segments) ? 0 : j + 1;
+                final float c0 = around.cos(j), s0 = around.sin(j), c1 = around.cos(next), s1 = around.sin(next);
+                if (band > 0) {
+                    k = corner(k, r0 * c0, r0 * s0, z0);
+                    k = corner(k, r1 * c0, r1 * s0, z1);
+                    k = corner(k, r0 * c1, r0 * s1, z0);
+                }
+                if (band + 1 < bands) {
+                    k = corner(k, r0 * c1, r0 * s1, z0);
+                    k = corner(k, r1 * c0, r1 * s0, z1);
+                    k = corner(k, r1 * c1, r1 * s1, z1);
+                }
+            }
+        }
+    }
+
+    private int corner(final int k, final float x, final float y, final float z) {
+        corners[k] = x;
+        corners[k + 1] = y;
+        corners[k + 2] = z;
+        return k + 3;
+    }
+
+    /**
+     * Returns the sphere template with the given detail.
+     * @param segments the number of segments around the sphere; an even number, at least {@link #MIN_SEGMENTS}.
+     * @return the shared template.
+     */
+    public static SphereGlyph of(final int segments) {
+        if (segments < MIN_SEGMENTS || segments % 2 != 0) {
+            throw new IllegalArgumentException("A sphere glyph needs an even number of segments, at least "
+                                               + MIN_SEGMENTS + ", not " + segments + ".");
+        }
+        SphereGlyph template = templates.get(segments);
+        if (template == null) {
+            final SphereGlyph created = new SphereGlyph(segments);
+            template = templates.putIfAbsent(segments, created);
+            if (template == null) template = created;
+        }
+        return template;
+    }
+
+    /** @return the number of vertices one sphere adds to a buffer, three per triangle. */
+    public int vertexCount() {
+        return corners.length / 3;
+    }
+
+    /**
+     * Adds a sphere to a triangle buffer, with smooth normals and the buffer's current color.
+     * @param buffer a {@link PApplet#TRIANGLES} buffer.
+     * @param x the x-coordinate of the sphere's center.
+     * @param y the y-coordinate of the sphere's center.
+     * @param z the z-coordinate of the sphere's center.
+     * @param radius the sphere's radius.
+     * @return buffer, for chaining.
+     */
+    public ShapeBuffer add(final ShapeBuffer buffer, final float x, final float y, final float z, final float radius) {
+        if (buffer.kind() != PApplet.TRIANGLES) {
+            throw new IllegalArgumentException("Sphere glyphs can only be added to a TRIANGLES buffer.");
+        }
+        final float[] t = corners;
+        buffer.ensureCapacity(t.length / 3);
+        for (int i = 0; i < t.length; i += 3) {
+            buffer.normal(t[i], t[i + 1], t[i + 2]);
+            buffer.vertex(x + radius * t[i], y + radius * t[i + 1], z + radius * t[i + 2]);
+        }
+        return buffer;
+    }
+}
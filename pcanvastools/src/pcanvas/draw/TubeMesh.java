@@ -0,0 +1,128 @@
+package pcanvas.draw;
+
+import java.util.List;
+
+import pcanvas.Circle3D;
+import pcanvas.Point;
+
+/**
+ * A tube built once from a {@link Circle3D} 'skeleton': the circles' points as an indexed triangle mesh, with one
+ * normal per point shared by every quad around it. Draw it with {@link CanvasPen3D#drawTube(TubeMesh, int)}; under the
+ * OpenGL renderer a tube that is drawn again unchanged is replayed from a display list instead of being sent vertex by
+ * vertex.
+ * <br />
+ * <br />
+ * The geometry is only rebuilt when {@link #update(List)} is given different circles, or when {@link #invalidate()}
+ * is called after the circles' points were moved in place.
+ */
+public class TubeMesh {
+
+    /** The skeleton the geometry was built from. */
+    private Circle3D[] circles = new Circle3D[0];
+
+    /** Packed x, y, z positions and unit normals, one per circle point. */
+    private float[] positions = new float[0], normals = new float[0];
+
+    /** Three vertex indices per triangle. */
+    private int[] triangles = new int[0];
+
+    /** Bumped on every rebuild, so cached display lists know they are stale. */
+    private int version = 0;
+
+    /** Display list state, managed by {@link DisplayLists}. */
+    final DisplayList displayList = new DisplayList();
+
+    /**
+     * Builds a tube through the given circles.
+     * @param circles the 'skeleton' circles, all with the same number of points.
+     */
+    public TubeMesh(final List<Circle3D> circles) {
+        this.update(circles);
+    }
+
+    /**
+     * Rebuilds the tube through the given circles, unless they are the very circles it was last built from.
+     * @param circles the 'skeleton' circles, all with the same number of points.
+     * @return true if the geometry was rebuilt.
+     */
+    public boolean update(final List<Circle3D> circles) {
+        if (circles.size() == this.circles.length) {
+            int i = 0;
+            while (i < this.circles.length && circles.get(i) == this.circles[i]) i++;
+            if (i == this.circles.length) return false;
+        }
+        this.build(circles.toArray(new Circle3D[circles.size()]));
+        return true;
+    }
+
+    /**
+     * Rebuilds the tube from its current circles; call it after moving their points in place.
+     */
+    public void invalidate() {
+        this.build(this.circles);
+    }
+
+    private void build(final Circle3D[] circles) {
+        final int rings = circles.length;
+        final int ringSize = (rings == 0) ? 0 : circles[0].points.size();
+        for (Circle3D circle : circles) {
+            if (circle.points.size() != ringSize) {
+                throw new IllegalArgumentException("Cannot build a tube through circles with different numbers of points!");
+            }
+        }
+        this.circles = circles;
+
+        positions = new float[3 * rings * ringSize];
+        normals = new float[3 * rings * ringSize];
+        for (int i = 0, k = 0; i < rings; i++) {
+            final Point center = circles[i].center;
+            for (Point point : circles[i].points) {
+                final float nx = point.x - center.x, ny = point.y - center.y, nz = point.z - center.z;
+                float n = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+                if (n < 0.000001) n = 1;
+                positions[k] = point.x;
+                positions[k + 1] = point.y;
+                positions[k + 2] = point.z;
+                normals[k] = nx / n;
+                normals[k + 1] = ny / n;
+                normals[k + 2] = nz / n;
+                k += 3;
+            }
+        }
+
+        // two triangles per quad, wound as drawSmoothShading wound its quads
+        triangles = new int[(rings < 2) ? 0 : 6 * (rings - 1) * ringSize];
+        for (int i = 0, k = 0; i < rings - 1; i++) {
+            for (int j = 0; j < ringSize; j++) {
+                final int next = (j + 1 == ringSize) ? 0 : j + 1;
+                final int topLeft = i * ringSize + j, topRight = topLeft + ringSize;
+                final int bottomLeft = i * ringSize + next, bottomRight = bottomLeft + ringSize;
+                triangles[k++] = topLeft;
+                triangles[k++] = topRight;
+                triangles[k++] = bottomRight;
+                triangles[k++] = topLeft;
+                triangles[k++] = bottomRight;
+                triangles[k++] = bottomLeft;
+            }
+        }
+        version++;
+    }
+
+    /** @return the number of vertices, one per circle point. */
+    public int vertexCount() {return positions.length / 3;}
+
+    /** @return the number of triangles. */
+    public int triangleCount() {return triangles.length / 3;}
+
+    /** @return the packed x, y, z vertex positions; not to be modified. */
+    public float[] positions() {return positions;}
+
+    /** @return the packed x, y, z unit vertex normals; not to be modified. */
+    public float[] normals() {return normals;}
+
+    /** @return three vertex indices per triangle; not to be modified. */
+    public int[] triangles() {return triangles;}
+
+    /** @return a number that changes whenever the geometry is rebuilt. */
+    public int version() {return version;}
+}
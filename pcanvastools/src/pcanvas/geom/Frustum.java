@@ -0,0 +1,110 @@
+package pcanvas.geom;
+
+import pcanvas.Point;
+import pcanvas.Vector;
+
+/**
+ * The part of space a perspective camera can see: six planes (left, right, top, bottom, near and far) bounding a
+ * truncated pyramid that opens from the eye towards the target. It is used to skip geometry that is off screen before
+ * sending it to the renderer; see {@link pcanvas.camera.Camera#frustum(Frustum)}.
+ * <br />
+ * <br />
+ * Each plane is stored as a unit normal pointing into the frustum and an offset, so a point p is inside the plane when
+ * n &middot; p + d &ge; 0.
+ */
+public class Frustum {
+
+    /** The planes' inward unit normals and offsets: a, b, c, d for each of the six planes in turn. */
+    private final float[] planes = new float[24];
+
+    /** Where the camera is. */
+    private float eyeX, eyeY, eyeZ;
+
+    /**
+     * Sets this frustum to the view of a camera looking from eye towards target, under a symmetric perspective
+     * projection such as {@link processing.core.PApplet#perspective(float, float, float, float)} sets up.
+     * @param eye the camera position.
+     * @param target the point the camera looks at.
+     * @param up the camera's up direction; it need not be unit length or perpendicular to the view.
+     * @param fovy the vertical field of view, in radians.
+     * @param aspect the width of the view divided by its height.
+     * @param near the distance from the eye to the near clipping plane.
+     * @param far the distance from the eye to the far clipping plane.
+     * @return this updated Frustum instance.
+     */
+    public Frustum set(final Point eye, final Point target, final Vector up,
+                       final float fovy, final float aspect, final float near, final float far) {
+        eyeX = eye.x;
+        eyeY = eye.y;
+        eyeZ = eye.z;
+
+        // forward, right and true up, as unit vectors
+        float fx = target.x - eye.x, fy = target.y - eye.y, fz = target.z - eye.z;
+        float n = (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+        if (n < 0.000001) throw new IllegalArgumentException("The camera's eye and target must be apart.");
+        fx /= n; fy /= n; fz /= n;
+        float rx = fy * up.z - fz * up.y, ry = fz * up.x - fx * up.z, rz = fx * up.y - fy * up.x;
+        n = (float) Math.sqrt(rx * rx + ry * ry + rz * rz);
+        if (n < 0.000001) throw new IllegalArgumentException("The camera's up vector must not point along its view.");
+        rx /= n; ry /= n; rz /= n;
+        final float ux = ry * fz - rz * fy, uy = rz * fx - rx * fz, uz = rx * fy - ry * fx;
+
+        // the side planes pass through the eye, tilted from the view direction by half the field of view
+        final float tanV = (float) Math.tan(fovy / 2), tanH = aspect * tanV;
+        sidePlane(0, fx * tanH - rx, fy * tanH - ry, fz * tanH - rz);
+        sidePlane(1, fx * tanH + rx, fy * tanH + ry, fz * tanH + rz);
+        sidePlane(2, fx * tanV - ux, fy * tanV - uy, fz * tanV - uz);
+        sidePlane(3, fx * tanV + ux, fy * tanV + uy, fz * tanV + uz);
+        final float along = fx * eyeX + fy * eyeY + fz * eyeZ;
+        plane(4, fx, fy, fz, -along - near);
+        plane(5, -fx, -fy, -fz, along + far);
+        return this;
+    }
+
+    private void sidePlane(final int i, final float x, final float y, final float z) {
+        final float n = (float) Math.sqrt(x * x + y * y + z * z);
+        plane(i, x / n, y / n, z / n, -(x * eyeX + y * eyeY + z * eyeZ) / n);
+    }
+
+    private void plane(final int i, final float a, final float b, final float c, final float d) {
+        planes[4 * i] = a;
+        planes[4 * i + 1] = b;
+        planes[4 * i + 2] = c;
+        planes[4 * i + 3] = d;
+    }
+
+    /**
+     * Tells whether a sphere may be visible. The test is conservative: a sphere that is reported visible may still lie
+     * just outside a corner of the frustum, but a sphere reported invisible is certainly outside.
+     * @param x the x-coordinate of the sphere's center.
+     * @param y the y-coordinate of the sphere's center.
+     * @param z the z-coordinate of the sphere's center.
+     * @param radius the sphere's radius.
+     * @return false if the sphere lies entirely outside one of the planes.
+     */
+    public boolean intersectsSphere(final float x, final float y, final float z, final float radius) {
+        final float[] p = planes;
+        for (int i = 0; i < 24; i += 4) {
+            if (p[i] * x + p[i + 1] * y + p[i + 2] * z + p[i + 3] < -radius) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether a point is inside the frustum.
+     * @param point the point to test.
+     * @return true if the point is on the inner side of all six planes.
+     */
+    public boolean contains(final Point point) {
+        return this.intersectsSphere(point.x, point.y, point.z, 0);
+    }
+
+    /**
+     * Copies out the camera position this frustum was set from.
+     * @param out the point to fill.
+     * @return out, updated.
+     */
+    public Point eye(final Point out) {
+        return out.set(eyeX, eyeY, eyeZ);
+    }
+}
@@ -3,7 +3,6 @@ package pcanvas.geom;
 import java.util.ArrayList;
 import java.util.List;
 
-import Jama.Matrix;
 import pcanvas.Circle3D;
 import pcanvas.Point;
 import pcanvas.Vector;
@@ -270,65 +269,16 @@ public class GeomUtils {
     }
 
     /**
-     * Performs a point rotation about an arbitrary axis. Unfortunately this does not use quaternions, so deal with it. =)
+     * Performs a point rotation about an arbitrary axis, in closed form (Rodrigues' rotation formula). To rotate many
+     * points by the same axis and angle, build one {@link Rotation3D} and reuse it.
      * @param origin an origin point.
      * @param toRotate the point to rotate.
      * @param rotationAxis the axis of rotation.
      * @param angle an angle of rotation, in radians.
      * @return a rotated point.
      */
-    public static Point PointRotate3D(final Point origin, final Point toRotate, final Vector rotationAxis, final float angle) {        
-        Vector axis = (rotationAxis.magnitude() == 1) ? rotationAxis : rotationAxis.normal();
-        float dist = sqrt(sq(axis.y) + sq(axis.z));                                                
-        Matrix T = new Matrix(new double[][]{
-                new double[] {1, 0, 0, -origin.x},
-                new double[] {0, 1, 0, -origin.y},
-                new double[] {0, 0, 1, -origin.z},
-                new double[] {0, 0, 0, 1},
-        });
-        Matrix TInv = T.inverse();
-
-        float aZ = (axis.z == 0 && dist == 0) ? 0 : (axis.z / dist);
-        float aY = (axis.y == 0 && dist == 0) ? 0 : (axis.y / dist);
-        Matrix Rx = new Matrix(new double[][]{
-                new double[] {1, 0, 0, 0},
-                new double[] {0, aZ, -aY, 0},
-                new double[] {0, aY, aZ, 0},
-                new double[] {0, 0, 0, 1},
-        });
-
-        Matrix RxInv = new Matrix(new double[][]{
-                new double[] {1, 0, 0, 0},
-                new double[] {0, aZ, aY, 0},
-                new double[] {0, -aY, aZ, 0},
-                new double[] {0, 0, 0, 1},
-        });
-
-       Matrix Ry = new Matrix(new double[][]{
-                new double[] {dist, 0, -axis.x, 0},
-                new double[] {0, 1, 0, 0},
-                new double[] {axis.x, 0, dist, 0},
-                new double[] {0, 0, 0, 1},
-        });
-
-        Matrix RyInv = Ry.inverse();
-
-        Matrix Rz = new Matrix(new double[][]{
-                new double[] {cos(angle), -sin(angle), 0, 0},
-                new double[] {sin(angle), cos(angle), 0, 0},
-                new double[] {0, 0, 1, 0},
-                new double[] {0, 0, 0, 1},
-        });
-
-        Matrix origSpace = new Matrix(new double[][] {
-                new double[]{toRotate.x},
-                new double[]{toRotate.y},
-                new double[]{toRotate.z},
-                new double[]{1}
-        });
-        Matrix rotated = TInv.times(RxInv).times(RyInv).times(Rz).times(Ry).times(Rx).times(T).times(origSpace);
-
-        return new Point((float) rotated.get(0, 0), (float) rotated.get(1, 0), (float) rotated.get(2, 0));
+    public static Point PointRotate3D(final Point origin, final Point toRotate, final Vector rotationAxis, final float angle) {
+        return new Rotation3D(rotationAxis, angle).rotate(origin, toRotate);
     }
 
     /**
@@ -410,6 +360,56 @@ public class GeomUtils {
         return new Point(avgX / length, avgY / length, avgZ / length);
     }
 
+    /* Packed Point Array Functions. */
+
+    /**
+     * Packs points into one float array, x, y, z per point, for the array functions below and {@link Transform3D}.
+     * @param points the points to pack.
+     * @return a new array of 3 * points.size() floats.
+     */
+    public static float[] PackPoints(final List<Point> points) {
+        float[] xyz = new float[3 * points.size()];
+        int i = 0;
+        for (Point each : points) {
+            xyz[i++] = each.x;
+            xyz[i++] = each.y;
+            xyz[i++] = each.z;
+        }
+        return xyz;
+    }
+
+    /**
+     * Rotates every point of a packed array in place about an arbitrary axis; the array version of
+     * {@link #PointRotate3D(Point, Point, Vector, float)}.
+     * @param xyz the coordinates, three floats per point.
+     * @param origin an origin point.
+     * @param rotationAxis the axis of rotation.
+     * @param angle an angle of rotation, in radians.
+     */
+    public static void PointsRotate3D(final float[] xyz, final Point origin, final Vector rotationAxis, final float angle) {
+        new Transform3D().rotate(origin, rotationAxis, angle).apply(xyz);
+    }
+
+    /**
+     * Translates every point of a packed array in place by a vector.
+     * @param xyz the coordinates, three floats per point.
+     * @param translator the {@link Vector} to translate by.
+     */
+    public static void PointsTranslate(final float[] xyz, final Vector translator) {
+        new Transform3D().translate(translator).apply(xyz);
+    }
+
+    /**
+     * Scales every point of a packed array in place about some point.
+     * @param xyz the coordinates, three floats per point.
+     * @param origin the point to scale about.
+     * @param scalar the scale factor.
+     */
+    public static void PointsScale(final float[] xyz, final Point origin, final float scalar) {
+        new Transform3D().translate(-origin.x, -origin.y, -origin.z).scale(scalar)
+                         .translate(origin.x, origin.y, origin.z).apply(xyz);
+    }
+
     /* Orientation Tests */
 
     /**
@@ -552,25 +552,4 @@ public class GeomUtils {
         }
         return circles;
     }
-
-    
-
-
-    /* Utility/Debugging */
-
-    /**
-     * Internal utility function used for debugging purposes. Prints a {@link Matrix} in a nice, neat looking text format.
-     * @param m the Matrix to print.
-     */
-    private static void printMatrix(final Matrix m) {
-        System.out.println("====== BEGIN MATRIX ======");
-        for (int i = 0; i < m.getRowDimension(); i++ ){
-            for (int j = 0; j < m.getColumnDimension(); j++) {
-                String comma = (j == m.getColumnDimension() - 1) ? " " : ", ";
-                System.out.print(m.get(i, j) + comma);
-            }
-            System.out.println("");
-        }
-        System.out.println("====== END MATRIX ======");
-    }
 }
@@ -0,0 +1,139 @@
+package pcanvas.geom;
+
+import pcanvas.Point;
+import pcanvas.Vector;
+
+/**
+ * A rotation by some angle about an arbitrary axis, precomputed as a 3x3 matrix with Rodrigues' formula:
+ * <br />
+ * <br />
+ * R = cos(a) I + sin(a) [k]x + (1 - cos(a)) k k<sup>T</sup>, for the unit axis k.
+ * <br />
+ * <br />
+ * Building one costs a single sin/cos pair; after that every point or vector it rotates costs nine multiplies and
+ * allocates nothing, so rotate many points by the same axis and angle through one instance. For a single point,
+ * {@link GeomUtils#PointRotate3D(Point, Point, Vector, float)} does the same thing. Rotations follow the right-hand
+ * rule: looking down the axis towards its base, positive angles turn counter-clockwise.
+ */
+public class Rotation3D {
+
+    /** The rotation matrix, row by row; {@link Transform3D} reads it when composing. */
+    float m00, m01, m02, m10, m11, m12, m20, m21, m22;
+
+    /**
+     * Creates a rotation about an axis by an angle.
+     * @param axis the axis of rotation; it need not be unit length.
+     * @param angle the angle of rotation, in radians.
+     */
+    public Rotation3D(final Vector axis, final float angle) {
+        this.set(axis.x, axis.y, axis.z, angle);
+    }
+
+    /**
+     * Creates a rotation about the axis (x, y, z) by an angle.
+     * @param x the axis' x component.
+     * @param y the axis' y component.
+     * @param z the axis' z component.
+     * @param angle the angle of rotation, in radians.
+     */
+    public Rotation3D(final float x, final float y, final float z, final float angle) {
+        this.set(x, y, z, angle);
+    }
+
+    /**
+     * Changes this rotation's axis and angle, so one instance can be reused.
+     * @param axis the axis of rotation; it need not be unit length.
+     * @param angle the angle of rotation, in radians.
+     * @return this updated Rotation3D instance.
+     */
+    public Rotation3D set(final Vector axis, final float angle) {
+        return this.set(axis.x, axis.y, axis.z, angle);
+    }
+
+    /**
+     * Changes this rotation's axis and angle, so one instance can be reused. An axis too short to have a direction
+     * gives the identity.
+     * @param x the axis' x component.
+     * @param y the axis' y component.
+     * @param z the axis' z component.
+     * @param angle the angle of rotation, in radians.
+     * @return this updated Rotation3D instance.
+     */
+    public Rotation3D set(final float x, final float y, final float z, final float angle) {
+        final double n = Math.sqrt((double) x * x + (double) y * y + (double) z * z);
+        if (n < 0.000001) {
+            m00 = 1; m01 = 0; m02 = 0;
+            m10 = 0; m11 = 1; m12 = 0;
+            m20 = 0; m21 = 0; m22 = 1;
+            return this;
+        }
+        final double kx = x / n, ky = y / n, kz = z / n;
+        final double c = Math.cos(angle), s = Math.sin(angle), t = 1 - c;
+        m00 = (float) (c + t * kx * kx);
+        m01 = (float) (t * kx * ky - s * kz);
+        m02 = (float) (t * kx * kz + s * ky);
+        m10 = (float) (t * ky * kx + s * kz);
+        m11 = (float) (c + t * ky * ky);
+        m12 = (float) (t * ky * kz - s * kx);
+        m20 = (float) (t * kz * kx - s * ky);
+        m21 = (float) (t * kz * ky + s * kx);
+        m22 = (float) (c + t * kz * kz);
+        return this;
+    }
+
+    /**
+     * Rotates a point about an axis through origin.
+     * @param origin a point on the axis of rotation.
+     * @param toRotate the point to rotate.
+     * @return a new, rotated point.
+     */
+    public Point rotate(final Point origin, final Point toRotate) {
+        return this.rotate(origin, toRotate, new Point(0, 0, 0));
+    }
+
+    /**
+     * Rotates a point about an axis through origin, writing the result into out.
+     * @param origin a point on the axis of rotation.
+     * @param toRotate the point to rotate.
+     * @param out the point to hold the result; may be toRotate.
+     * @return out, updated.
+     */
+    public Point rotate(final Point origin, final Point toRotate, final Point out) {
+        final float dx = toRotate.x - origin.x, dy = toRotate.y - origin.y, dz = toRotate.z - origin.z;
+        return out.set(origin.x + m00 * dx + m01 * dy + m02 * dz,
+                       origin.y + m10 * dx + m11 * dy + m12 * dz,
+                       origin.z + m20 * dx + m21 * dy + m22 * dz);
+    }
+
+    /**
+     * Rotates a vector, writing the result into out.
+     * @param vector the vector to rotate.
+     * @param out the vector to hold the result; may be vector.
+     * @return out, updated.
+     */
+    public Vector rotate(final Vector vector, final Vector out) {
+        final float x = vector.x, y = vector.y, z = vector.z;
+        return out.set(m00 * x + m01 * y + m02 * z,
+                       m10 * x + m11 * y + m12 * z,
+                       m20 * x + m21 * y + m22 * z);
+    }
+
+    /**
+     * Rotates packed x, y, z triples in place about an axis through (ox, oy, oz).
+     * @param xyz the coordinates, three floats per point.
+     * @param from the first point to rotate.
+     * @param to one past the last point to rotate.
+     * @param ox the x-coordinate of a point on the axis.
+     * @param oy the y-coordinate of a point on the axis.
+     * @param oz the z-coordinate of a point on the axis.
+     */
+    public void rotate(final float[] xyz, final int from, final int to,
+                       final float ox, final float oy, final float oz) {
+        for (int i = 3 * from, end = 3 * to; i < end; i += 3) {
+            final float dx = xyz[i] - ox, dy = xyz[i + 1] - oy, dz = xyz[i + 2] - oz;
+            xyz[i] = ox + m00 * dx + m01 * dy + m02 * dz;
+            xyz[i + 1] = oy + m10 * dx + m11 * dy + m12 * dz;
+            xyz[i + 2] = oz + m20 * dx + m21 * dy + m22 * dz;
+        }
+    }
+}
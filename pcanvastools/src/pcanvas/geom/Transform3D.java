@@ -0,0 +1,287 @@
+package pcanvas.geom;
+
+import pcanvas.Point;
+import pcanvas.Vector;
+import pcanvas.concurrent.Workers;
+
+/**
+ * An affine transform of 3-space (the top three rows of a 4x4 matrix whose last row is 0 0 0 1), for moving large sets
+ * of points stored as packed x, y, z floats.
+ * <br />
+ * <br />
+ * Transforms are built by chaining steps, each applied after the ones before it:
+ * <code>new Transform3D().scale(2).rotate(axis, angle).translate(0, 0, 5)</code> scales, then rotates, then
+ * translates. The whole chain costs one matrix product per point when applied. Arrays of at least
+ * {@link #PARALLEL_THRESHOLD} points are split across the shared {@link Workers} pool.
+ */
+public class Transform3D {
+
+    /** Arrays with at least this many points are transformed on the shared worker pool. */
+    protected static int PARALLEL_THRESHOLD = 1 << 16;
+
+    /** Smallest range of points handed to a single worker. */
+    protected static int PARALLEL_CHUNK = 1 << 14;
+
+    /** The matrix, row by row; column 3 is the translation. */
+    private float m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23;
+
+    /**
+     * Creates the identity transform.
+     */
+    public Transform3D() {
+        this.identity();
+    }
+
+    /**
+     * Creates a copy of another transform.
+     * @param other the transform to copy.
+     */
+    public Transform3D(final Transform3D other) {
+        this.set(other);
+    }
+
+    /**
+     * Resets this transform to the identity.
+     * @return this updated Transform3D instance.
+     */
+    public Transform3D identity() {
+        m00 = 1; m01 = 0; m02 = 0; m03 = 0;
+        m10 = 0; m11 = 1; m12 = 0; m13 = 0;
+        m20 = 0; m21 = 0; m22 = 1; m23 = 0;
+        return this;
+    }
+
+    /**
+     * Sets this transform to a copy of another.
+     * @param other the transform to copy.
+     * @return this updated Transform3D instance.
+     */
+    public Transform3D set(final Transform3D other) {
+        m00 = other.m00; m01 = other.m01; m02 = other.m02; m03 = other.m03;
+        m10 = other.m10; m11 = other.m11; m12 = other.m12; m13 = other.m13;
+        m20 = other.m20; m21 = other.m21; m22 = other.m22; m23 = other.m23;
+        return this;
+    }
+
+    /**
+     * Sets this transform from a 4x4 matrix, such as one read back from a renderer.
+     * @param matrix 16 floats, row by row; the last row must be 0 0 0 1.
+     * @return this updated Transform3D instance.
+     */
+    public Transform3D set(final float[] matrix) {
+        if (matrix.length != 16) throw new IllegalArgumentException("A 4x4 matrix needs 16 values, not " + matrix.length + ".");
+        if (matrix[12] != 0 || matrix[13] != 0 || matrix[14] != 0 || matrix[15] != 1) {
+            throw new IllegalArgumentException("Only affine matrices (last row 0 0 0 1) are supported.");
+        }
+        m00 = matrix[0]; m01 = matrix[1]; m02 = matrix[2]; m03 = matrix[3];
+        m10 = matrix[4]; m11 = matrix[5]; m12 = matrix[6]; m13 = matrix[7];
+        m20 = matrix[8]; m21 = matrix[9]; m22 = matrix[10]; m23 = matrix[11];
+        return this;
+    }
+
+    /**
+     * Copies this transform out as a 4x4 matrix.
+     * @param matrix an array of at least 16 floats to fill, row by row.
+     * @return matrix, filled.
+     */
+    public float[] get(final float[] matrix) {
+        matrix[0] = m00; matrix[1] = m01; matrix[2] = m02; matrix[3] = m03;
+        matrix[4] = m10; matrix[5] = m11; matrix[6] = m12; matrix[7] = m13;
+        matrix[8] = m20; matrix[9] = m21; matrix[10] = m22; matrix[11] = m23;
+        matrix[12] = 0; matrix[13] = 0; matrix[14] = 0; matrix[15] = 1;
+        return matrix;
+    }
+
+    /**
+     * Adds a translation after the current steps.
+     * @param x the x displacement.
+     * @param y the y displacement.
+     * @param z the z displacement.
+     * @return this updated Transform3D instance.
+     */
+    public Transform3D translate(final float x, final float y, final float z) {
+        m03 += x;
+        m13 += y;
+        m23 += z;
+        return this;
+    }
+
+    /**
+     * Adds a translation by a {@link Vector} after the current steps.
+     * @param vector the displacement.
+     * @return this updated Transform3D instance.
+     */
+    public Transform3D translate(final Vector vector) {
+        return this.translate(vector.x, vector.y, vector.z);
+    }
+
+    /**
+     * Adds a uniform scale about the origin after the current steps.
+     * @param scalar the scale factor.
+     * @return this updated Transform3D instance.
+     */
+    public Transform3D scale(final float scalar) {
+        return this.scale(scalar, scalar, scalar);
+    }
+
+    /**
+     * Adds a per-axis scale about the origin after the current steps.
+     * @param x the x scale factor.
+     * @param y the y scale factor.
+     * @param z the z scale factor.
+     * @return this updated Transform3D instance.
+     */
+    public Transform3D scale(final float x, final float y, final float z) {
+        m00 *= x; m01 *= x; m02 *= x; m03 *= x;
+        m10 *= y; m11 *= y; m12 *= y; m13 *= y;
+        m20 *= z; m21 *= z; m22 *= z; m23 *= z;
+        return this;
+    }
+
+    /**
+     * Adds a rotation about an axis through the origin after the current steps.
+     * @param rotation the rotation.
+     * @return this updated Transform3D instance.
+     */
+    public Transform3D rotate(final Rotation3D rotation) {
+        return this.premultiply(rotation.m00, rotation.m01, rotation.m02, 0,
+                                rotation.m10, rotation.m11, rotation.m12, 0,
+                                rotation.m20, rotation.m21, rotation.m22, 0);
+    }
+
+    /**
+     * Adds a rotation about an axis through the origin after the current steps.
+     * @param axis the axis of rotation; it need not be unit length.
+     * @param angle the angle of rotation, in radians.
+     * @return this updated Transform3D instance.
+     */
+    public Transform3D rotate(final Vector axis, final float angle) {
+        return this.rotate(new Rotation3D(axis, angle));
+    }
+
+    /**
+     * Adds a rotation about an axis through some point after the current steps, as
+     * {@link GeomUtils#PointRotate3D(Point, Point, Vector, float)} does for one point.
+     * @param origin a point on the axis of rotation.
+     * @param axis the axis of rotation; it need not be unit length.
+     * @param angle the angle of rotation, in radians.
+     * @return this updated Transform3D instance.
+     */
+    public Transform3D rotate(final Point origin, final Vector axis, final float angle) {
+        return this.translate(-origin.x, -origin.y, -origin.z).rotate(axis, angle).translate(origin.x, origin.y, origin.z);
+    }
+
+    /**
+     * Adds another transform's steps after the current ones.
+     * @param next the transform to apply after this one.
+     * @return this updated Transform3D instance.
+     */
+    public Transform3D then(final Transform3D next) {
+        return this.premultiply(next.m00, next.m01, next.m02, next.m03,
+                                next.m10, next.m11, next.m12, next.m13,
+                                next.m20, next.m21, next.m22, next.m23);
+    }
+
+    /** Replaces this matrix M with A M, for the affine A given row by row. */
+    private Transform3D premultiply(final float a00, final float a01, final float a02, final float a03,
+                                    final float a10, final float a11, final float a12, final float a13,
+                                    final float a20, final float a21, final float a22, final float a23) {
+        final float b00 = m00, b01 = m01, b02 = m02, b03 = m03;
+        final float b10 = m10, b11 = m11, b12 = m12, b13 = m13;
+        final float b20 = m20, b21 = m21, b22 = m22, b23 = m23;
+        m00 = a00 * b00 + a01 * b10 + a02 * b20;
+        m01 = a00 * b01 + a01 * b11 + a02 * b21;
+        m02 = a00 * b02 + a01 * b12 + a02 * b22;
+        m03 = a00 * b03 + a01 * b13 + a02 * b23 + a03;
+        m10 = a10 * b00 + a11 * b10 + a12 * b20;
+        m11 = a10 * b01 + a11 * b11 + a12 * b21;
+        m12 = a10 * b02 + a11 * b12 + a12 * b22;
+        m13 = a10 * b03 + a11 * b13 + a12 * b23 + a13;
+        m20 = a20 * b00 + a21 * b10 + a22 * b20;
+        m21 = a20 * b01 + a21 * b11 + a22 * b21;
+        m22 = a20 * b02 + a21 * b12 + a22 * b22;
+        m23 = a20 * b03 + a21 * b13 + a22 * b23 + a23;
+        return this;
+    }
+
+    /**
+     * Transforms one point, writing the result into out.
+     * @param point the point to transform.
+     * @param out the point to hold the result; may be point.
+     * @return out, updated.
+     */
+    public Point apply(final Point point, final Point out) {
+        final float x = point.x, y = point.y, z = point.z;
+        return out.set(m00 * x + m01 * y + m02 * z + m03,
+                       m10 * x + m11 * y + m12 * z + m13,
+                       m20 * x + m21 * y + m22 * z + m23);
+    }
+
+    /**
+     * Transforms one vector, writing the result into out. Vectors are displacements, so the translation is ignored.
+     * @param vector the vector to transform.
+     * @param out the vector to hold the result; may be vector.
+     * @return out, updated.
+     */
+    public Vector apply(final Vector vector, final Vector out) {
+        final float x = vector.x, y = vector.y, z = vector.z;
+        return out.set(m00 * x + m01 * y + m02 * z,
+                       m10 * x + m11 * y + m12 * z,
+                       m20 * x + m21 * y + m22 * z);
+    }
+
+    /**
+     * Transforms every point of a packed array in place.
+     * @param xyz the coordinates, three floats per point.
+     */
+    public void apply(final float[] xyz) {
+        this.apply(xyz, xyz, 0, xyz.length / 3);
+    }
+
+    /**
+     * Transforms points [from, to) of a packed array in place.
+     * @param xyz the coordinates, three floats per point.
+     * @param from the first point to transform.
+     * @param to one past the last point to transform.
+     */
+    public void apply(final float[] xyz, final int from, final int to) {
+        this.apply(xyz, xyz, from, to);
+    }
+
+    /**
+     * Transforms points [from, to) of one packed array into the same positions of another, which may be the same
+     * array. Large ranges are split across the shared worker pool.
+     * @param source the coordinates to read, three floats per point.
+     * @param target the array to write; at least as long as the range needs.
+     * @param from the first point to transform.
+     * @param to one past the last point to transform.
+     */
+    public void apply(final float[] source, final float[] target, final int from, final int to) {
+        if (from < 0 || from > to || 3L * to > source.length || 3L * to > target.length) {
+            throw new IllegalArgumentException("Points " + from + " to " + to + " are out of range.");
+        }
+        final int count = to - from;
+        if (count < PARALLEL_THRESHOLD) {
+            transform(source, target, from, to);
+            return;
+        }
+        Workers.forRange(count, PARALLEL_CHUNK, new Workers.RangeTask() {
+            @Override
+            public void run(final int start, final int end) {
+                transform(source, target, from + start, from + end);
+            }
+        });
+    }
+
+    private void transform(final float[] source, final float[] target, final int from, final int to) {
+        final float a00 = m00, a01 = m01, a02 = m02, a03 = m03;
+        final float a10 = m10, a11 = m11, a12 = m12, a13 = m13;
+        final float a20 = m20, a21 = m21, a22 = m22, a23 = m23;
+        for (int i = 3 * from, end = 3 * to; i < end; i += 3) {
+            final float x = source[i], y = source[i + 1], z = source[i + 2];
+            target[i] = a00 * x + a01 * y + a02 * z + a03;
+            target[i + 1] = a10 * x + a11 * y + a12 * z + a13;
+            target[i + 2] = a20 * x + a21 * y + a22 * z + a23;
+        }
+    }
+}
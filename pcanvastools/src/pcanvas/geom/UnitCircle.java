@@ -0,0 +1,131 @@
+package pcanvas.geom;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import pcanvas.Point;
+import pcanvas.Vector;
+
+/**
+ * The cosines and sines of n evenly spaced angles around a circle, so circles and rings can be generated without
+ * calling a trig function (or rotating a point) per sample. Templates are shared: {@link #of(int)} returns the same
+ * instance for the same sample count.
+ * <br />
+ * <br />
+ * Sample i sits at angle 2&pi;i/n. A circle of radius r around c in the plane spanned by the orthonormal vectors u and
+ * v is then c + r(cos u + sin v); {@link #frame(Vector, Vector, Vector, Vector)} builds such a u and v for a circle
+ * about an axis.
+ */
+public final class UnitCircle {
+
+    /** Templates with more samples than this are built fresh each time instead of being kept. */
+    private static final int MAX_CACHED_SAMPLES = 1 << 12;
+
+    private static final ConcurrentMap<Integer, UnitCircle> templates = new ConcurrentHashMap<Integer, UnitCircle>();
+
+    /** The number of samples. */
+    public final int samples;
+
+    private final float[] cos, sin;
+
+    private UnitCircle(final int samples) {
+        this.samples = samples;
+        this.cos = new float[samples];
+        this.sin = new float[samples];
+        for (int i = 0; i < samples; i++) {
+            final double angle = 2 * Math.PI * i / samples;
+            cos[i] = (float) Math.cos(angle);
+            sin[i] = (float) Math.sin(angle);
+        }
+    }
+
+    /**
+     * Returns the template with the given number of samples.
+     * @param samples the number of points around the circle; at least 1.
+     * @return the shared template.
+     */
+    public static UnitCircle of(final int samples) {
+        if (samples < 1) throw new IllegalArgumentException("A circle needs at least one sample, not " + samples + ".");
+        if (samples > MAX_CACHED_SAMPLES) return new UnitCircle(samples);
+        UnitCircle template = templates.get(samples);
+        if (template == null) {
+            final UnitCircle created = new UnitCircle(samples);
+            template = templates.putIfAbsent(samples, created);
+            if (template == null) template = created;
+        }
+        return template;
+    }
+
+    /**
+     * The cosine of sample i's angle.
+     * @param i the sample, from 0 to {@link #samples} - 1.
+     * @return cos(2&pi;i/n).
+     */
+    public float cos(final int i) {
+        return cos[i];
+    }
+
+    /**
+     * The sine of sample i's angle.
+     * @param i the sample, from 0 to {@link #samples} - 1.
+     * @return sin(2&pi;i/n).
+     */
+    public float sin(final int i) {
+        return sin[i];
+    }
+
+    /**
+     * Writes the points of a circle into a packed array: sample i is center + radius (cos u + sin v).
+     * @param center the circle's center.
+     * @param radius the circle's radius.
+     * @param u the direction of sample 0.
+     * @param v the direction a quarter turn on from u.
+     * @param xyz the array to fill, three floats per sample.
+     * @param offset the index in xyz of the first sample's x-coordinate.
+     * @return xyz, filled.
+     */
+    public float[] ring(final Point center, final float radius, final Vector u, final Vector v,
+                        final float[] xyz, final int offset) {
+        final float cx = center.x, cy = center.y, cz = center.z;
+        final float ux = radius * u.x, uy = radius * u.y, uz = radius * u.z;
+        final float vx = radius * v.x, vy = radius * v.y, vz = radius * v.z;
+        for (int i = 0, j = offset; i < samples; i++, j += 3) {
+            final float c = cos[i], s = sin[i];
+            xyz[j] = cx + c * ux + s * vx;
+            xyz[j + 1] = cy + c * uy + s * vy;
+            xyz[j + 2] = cz + c * uz + s * vz;
+        }
+        return xyz;
+    }
+
+    /**
+     * Builds the plane of a circle about an axis: u and v become unit vectors perpendicular to the axis and to each
+     * other, with v = axis x u, so walking the samples turns about the axis by the right-hand rule. u is the part of
+     * start perpendicular to the axis; if start has no such part, any perpendicular direction is used.
+     * @param axis the circle's axis; it need not be unit length.
+     * @param start roughly where sample 0 should lie, as seen from the center.
+     * @param u set to the direction of sample 0.
+     * @param v set to the direction a quarter turn on.
+     */
+    public static void frame(final Vector axis, final Vector start, final Vector u, final Vector v) {
+        float n = (float) Math.sqrt(axis.x * axis.x + axis.y * axis.y + axis.z * axis.z);
+        if (n < 0.000001) n = 1;
+        final float kx = axis.x / n, ky = axis.y / n, kz = axis.z / n;
+
+        float d = start.x * kx + start.y * ky + start.z * kz;
+        float ux = start.x - d * kx, uy = start.y - d * ky, uz = start.z - d * kz;
+        float m = (float) Math.sqrt(ux * ux + uy * uy + uz * uz);
+        if (m < 0.000001) {
+            // start is along the axis: fall back to the world axis the circle's axis is least aligned with
+            final float ax = Math.abs(kx), ay = Math.abs(ky), az = Math.abs(kz);
+            final float hx = (ax <= ay && ax <= az) ? 1 : 0, hy = (hx == 0 && ay <= az) ? 1 : 0, hz = 1 - hx - hy;
+            d = hx * kx + hy * ky + hz * kz;
+            ux = hx - d * kx;
+            uy = hy - d * ky;
+            uz = hz - d * kz;
+            m = (float) Math.sqrt(ux * ux + uy * uy + uz * uz);
+        }
+        u.set(ux / m, uy / m, uz / m);
+        v.set(ky * u.z - kz * u.y, kz * u.x - kx * u.z, kx * u.y - ky * u.x);
+    }
+}
@@ -0,0 +1,68 @@
+package pcanvas.mesh;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads fixed-size binary records from a channel through one reusable buffer, so binary mesh formats can be parsed
+ * with {@link ByteBuffer} getters without mapping (and so without size limits on) the whole file.
+ */
+final class ChannelInput {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final ReadableByteChannel channel;
+    private ByteBuffer buffer;
+    private long consumed = 0;
+
+    ChannelInput(final ReadableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.buffer.limit(0);
+    }
+
+    /**
+     * Sets the byte order of the multi-byte getters.
+     * @param order the file's byte order.
+     */
+    void order(final ByteOrder order) {
+        buffer.order(order);
+    }
+
+    /**
+     * Makes at least count bytes available and returns the buffer positioned at them. The bytes must be consumed
+     * with relative getters before the next call.
+     * @param count the number of bytes needed; at most the buffer size.
+     * @return the buffer.
+     * @throws IOException if reading fails or the file ends first.
+     */
+    ByteBuffer require(final int count) throws IOException {
+        if (buffer.remaining() >= count) return buffer;
+        consumed += buffer.position();
+        buffer.compact();
+        if (count > buffer.capacity()) {
+            final ByteBuffer larger = ByteBuffer.allocateDirect(count).order(buffer.order());
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        while (buffer.position() < count) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("The file ended " + (count - buffer.position()) + " bytes early.");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Tells how many bytes have been consumed from the start of the channel, for progress and error messages.
+     * @return the offset of the next byte to be read.
+     */
+    long offset() {
+        return consumed + buffer.position();
+    }
+}
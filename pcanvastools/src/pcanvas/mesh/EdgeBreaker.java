@@ -0,0 +1,458 @@
+package pcanvas.mesh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * EdgeBreaker compression of closed, genus-0, manifold triangle meshes, following Rossignac, Safonova and Szymczak's
+ * "Edgebreaker on a Corner Table".
+ * <br />
+ * <br />
+ * The connectivity is a bit-packed CLERS string, one symbol per triangle with C = 0, S = 100, R = 101, L = 110 and
+ * E = 111, which averages about 2 bits per triangle since half the symbols are C. Vertices are quantized to a uniform
+ * grid over the mesh's bounding box and stored in the order the traversal first meets them. Each new vertex is
+ * predicted by the parallelogram rule across the gate it was reached through, and only the residual is written, as a
+ * zig-zag varint.
+ * <br />
+ * <br />
+ * The decoder rebuilds the opposite table with Zip while reading the symbols, then labels the vertices by swinging
+ * around each C vertex, and finally reads the geometry in a third pass. Traversals use the mesh's growable stack, so
+ * there is no limit on the number of pending S branches.
+ * <br />
+ * <br />
+ * Stream layout (big-endian): the bytes 'E' 'B' and a version byte, triangle count, vertex count, quantization bits,
+ * bounding box minimum x, y, z and extent as floats, byte length of the CLERS bits, the CLERS bytes, then the varint
+ * geometry.
+ */
+public final class EdgeBreaker {
+
+    /** Default quantization, in bits per coordinate. */
+    public static final int DEFAULT_QUANTIZATION_BITS = 14;
+
+    private static final int VERSION = 1;
+
+    /* opposite-table markers used while decoding: free edges waiting for a partner, free edges to zip, unreached gates */
+    private static final int FREE = -1, ZIP = -2, PENDING = -3;
+
+    private EdgeBreaker() {}
+
+    /**
+     * Compresses a mesh with {@link #DEFAULT_QUANTIZATION_BITS} bits per coordinate.
+     * @param mesh a closed, genus-0, manifold mesh with its opposite table built.
+     * @return the compressed bytes.
+     */
+    public static byte[] compress(final Mesh mesh) {
+        return compress(mesh, DEFAULT_QUANTIZATION_BITS);
+    }
+
+    /**
+     * Compresses a mesh.
+     * @param mesh a closed, genus-0, manifold mesh with its opposite table built.
+     * @param bits the quantization, in bits per coordinate (1 to 24).
+     * @return the compressed bytes.
+     */
+    public static byte[] compress(final Mesh mesh, final int bits) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(mesh.numTriangles / 4 + 3 * mesh.numVerts + 64);
+        try {
+            compress(mesh, bits, bytes);
+        } catch (final IOException ex) {
+            throw new IllegalStateException(ex);    // cannot happen writing to memory
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Compresses a mesh into a stream. Also fills the mesh's triangleSymbol and CLERS tables and symbol counts, so
+     * the traversal can be displayed.
+     * @param mesh a closed, genus-0, manifold mesh with its opposite table built.
+     * @param bits the quantization, in bits per coordinate (1 to 24).
+     * @param out the stream to write to; not closed.
+     * @throws IOException if writing fails.
+     */
+    public static void compress(final Mesh mesh, final int bits, final OutputStream out) throws IOException {
+        if (bits < 1 || bits > 24) throw new IllegalArgumentException("Quantization must be 1 to 24 bits, got " + bits + ".");
+        checkTopology(mesh);
+
+        final int nt = mesh.numTriangles, nv = mesh.numVerts;
+        final int[] V = mesh.vertexTable, O = mesh.vOppositeTable;
+        final float[] bounds = bounds(mesh);
+        final int[] q = quantize(mesh, bounds, bits);
+
+        final int[] label = new int[nv];
+        Arrays.fill(label, -1);
+        final boolean[] visited = new boolean[nt];
+        final BitWriter clers = new BitWriter(nt / 4 + 16);
+        final ByteArrayOutputStream geometry = new ByteArrayOutputStream(3 * nv + 16);
+        mesh.Ccount = mesh.Lcount = mesh.Ecount = mesh.Rcount = mesh.Scount = 0;
+        mesh.symbols = 0;
+
+        // The first triangle is sent implicitly: its vertices are the first three, and the traversal enters its neighbour.
+        final int c0 = 0;
+        visited[mesh.t(c0)] = true;
+        mesh.triangleSymbol[mesh.t(c0)] = 'B';
+        int numLabels = 0;
+        for (int c : new int[] {c0, mesh.n(c0), mesh.p(c0)}) {
+            label[V[c]] = numLabels++;
+            for (int k = 0; k < 3; k++) {
+                writeVarint(geometry, zigzag(q[3*V[c]+k] - (c == c0 ? 0 : q[3*V[c0]+k])));
+            }
+        }
+
+        mesh.resetStack();
+        int c = O[c0];
+        while (true) {
+            final int t = mesh.t(c);
+            if (visited[t]) throw new IllegalArgumentException("The mesh is not a genus-0 manifold; triangle " + t + " was reached twice.");
+            visited[t] = true;
+            final int right = O[mesh.n(c)], left = O[mesh.p(c)];
+            final char symbol;
+            if (label[V[c]] < 0) {
+                symbol = 'C';
+                label[V[c]] = numLabels++;
+                final int tip = 3*V[c], a = 3*V[mesh.n(c)], b = 3*V[mesh.p(c)], o = 3*V[O[c]];
+                for (int k = 0; k < 3; k++) {
+                    writeVarint(geometry, zigzag(q[tip+k] - (q[a+k] + q[b+k] - q[o+k])));
+                }
+                clers.write(0, 1);
+                mesh.Ccount++;
+                c = right;
+            } else if (visited[mesh.t(right)]) {
+                if (visited[mesh.t(left)]) {
+                    symbol = 'E';
+                    clers.write(7, 3);
+                    mesh.Ecount++;
+                } else {
+                    symbol = 'R';
+                    clers.write(5, 3);
+                    mesh.Rcount++;
+                    c = left;
+                }
+            } else if (visited[mesh.t(left)]) {
+                symbol = 'L';
+                clers.write(6, 3);
+                mesh.Lcount++;
+                c = right;
+            } else {
+                symbol = 'S';
+                clers.write(4, 3);
+                mesh.Scount++;
+                mesh.push(left);
+                c = right;
+            }
+            mesh.triangleSymbol[t] = symbol;
+            mesh.CLERS[mesh.symbols++] = symbol;
+            if (symbol == 'E') {
+                if (mesh.stackHeight == 0) break;
+                c = mesh.pop();
+            }
+        }
+        if (mesh.symbols != nt - 1 || numLabels != nv) {
+            throw new IllegalArgumentException("The mesh is not a connected genus-0 manifold.");
+        }
+        mesh.markChanged();     // the triangle symbols changed, which MeshPen shows
+
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeByte('E');
+        data.writeByte('B');
+        data.writeByte(VERSION);
+        data.writeInt(nt);
+        data.writeInt(nv);
+        data.writeByte(bits);
+        for (int k = 0; k < 4; k++) data.writeFloat(bounds[k]);
+        data.writeInt(clers.length());
+        data.write(clers.bytes(), 0, clers.length());
+        geometry.writeTo(data);
+        data.flush();
+    }
+
+    /**
+     * Decompresses a mesh produced by {@link #compress(Mesh, int)}.
+     * @param compressed the compressed bytes.
+     * @return the decoded mesh, with its opposite table built and its normals marked for computation.
+     */
+    public static Mesh decompress(final byte[] compressed) {
+        try {
+            return decompress(new java.io.ByteArrayInputStream(compressed));
+        } catch (final IOException ex) {
+            throw new IllegalArgumentException("Truncated EdgeBreaker data.", ex);
+        }
+    }
+
+    /**
+     * Decompresses a mesh from a stream.
+     * @param in the stream to read from; not closed.
+     * @return the decoded mesh, with its opposite table built and its normals marked for computation.
+     * @throws IOException if reading fails or the data is truncated.
+     */
+    public static Mesh decompress(final InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        if (data.readUnsignedByte() != 'E' || data.readUnsignedByte() != 'B') {
+            throw new IllegalArgumentException("Not EdgeBreaker data.");
+        }
+        final int version = data.readUnsignedByte();
+        if (version != VERSION) throw new IllegalArgumentException("Unsupported EdgeBreaker version " + version + ".");
+        final int nt = data.readInt(), nv = data.readInt(), bits = data.readUnsignedByte();
+        if (nt < 1 || nv < 3 || bits < 1 || bits > 24) throw new IllegalArgumentException("Corrupt EdgeBreaker header.");
+        final float[] bounds = new float[4];
+        for (int k = 0; k < 4; k++) bounds[k] = data.readFloat();
+        final byte[] clersBytes = new byte[data.readInt()];
+        data.readFully(clersBytes);
+
+        final Mesh mesh = new Mesh(nv, nt);
+        mesh.numTriangles = nt;
+        mesh.numCorners = 3 * nt;
+        mesh.numVerts = nv;
+        Arrays.fill(mesh.visible, 0, nt, true);
+        decodeConnectivity(mesh, new BitReader(clersBytes));
+        labelVertices(mesh);
+        decodeGeometry(mesh, data, bounds, bits);
+
+        mesh.buildVertexCorners();
+        mesh.invalidateCornerFans();
+        mesh.markAllNormalsDirty();
+        return mesh;
+    }
+
+    /* ======================================== DECODING ================================================ */
+
+    /** Rebuilds the opposite table from the CLERS string, attaching one triangle per symbol and zipping free edges. */
+    private static void decodeConnectivity(final Mesh mesh, final BitReader clers) {
+        final int nt = mesh.numTriangles;
+        final int[] O = mesh.vOppositeTable;
+        Arrays.fill(O, 0, 3 * nt, PENDING);
+        O[1] = FREE;
+        O[2] = FREE;
+        mesh.triangleSymbol[0] = 'B';
+        mesh.symbols = 0;
+        mesh.resetStack();
+
+        int c = 0, t = 0;
+        while (true) {
+            if (++t >= nt) throw new IllegalArgumentException("Corrupt EdgeBreaker data: too many symbols.");
+            final int e = 3 * t;
+            O[c] = e;
+            O[e] = c;
+            final char symbol = clers.readSymbol();
+            mesh.triangleSymbol[t] = symbol;
+            mesh.CLERS[mesh.symbols++] = symbol;
+            if (symbol == 'C') {
+                O[e+2] = FREE;
+                c = e + 1;
+            } else if (symbol == 'L') {
+                O[e+2] = ZIP;
+                zip(mesh, e + 2);
+                c = e + 1;
+            } else if (symbol == 'R') {
+                O[e+1] = ZIP;
+                c = e + 2;
+            } else if (symbol == 'S') {
+                mesh.push(e + 2);
+                c = e + 1;
+            } else {
+                O[e+1] = ZIP;
+                O[e+2] = ZIP;
+                zip(mesh, e + 2);
+                if (mesh.stackHeight == 0) break;
+                c = mesh.pop();
+            }
+        }
+        if (t != nt - 1) throw new IllegalArgumentException("Corrupt EdgeBreaker data: " + (t + 1) + " of " + nt + " triangles.");
+        for (int k = 0; k < 3 * nt; k++) {
+            if (O[k] < 0) throw new IllegalArgumentException("Corrupt EdgeBreaker data: corner " + k + " was never zipped.");
+        }
+    }
+
+    /**
+     * Glues the free edge facing corner c to the free edge found by turning clockwise around v(p(c)), if that edge is
+     * waiting for a partner, and carries on zipping around the vertex the two edges now share.
+     */
+    private static void zip(final Mesh mesh, int c) {
+        final int[] O = mesh.vOppositeTable;
+        final int guard = mesh.numCorners;
+        while (true) {
+            int b = mesh.n(c);
+            for (int steps = 0; O[b] >= 0; steps++) {
+                if (steps > guard) throw new IllegalArgumentException("Corrupt EdgeBreaker data: zip does not close.");
+                b = mesh.n(O[b]);
+            }
+            if (O[b] != FREE) return;
+            O[c] = b;
+            O[b] = c;
+            c = mesh.p(c);
+            for (int steps = 0; O[c] >= 0 && c != b; steps++) {
+                if (steps > guard) throw new IllegalArgumentException("Corrupt EdgeBreaker data: zip does not close.");
+                c = mesh.p(O[c]);
+            }
+            if (O[c] != ZIP) return;
+        }
+    }
+
+    /**
+     * Fills the corner table with vertex ids: the first triangle holds vertices 0, 1 and 2, and each C triangle adds
+     * the next id at its tip. Every corner of a vertex is reached by swinging, now that the opposite table is whole.
+     */
+    private static void labelVertices(final Mesh mesh) {
+        final int nt = mesh.numTriangles;
+        final int[] V = mesh.vertexTable;
+        Arrays.fill(V, 0, 3 * nt, -1);
+        int next = 0;
+        for (int c = 0; c < 3; c++) labelFan(mesh, c, next++);
+        for (int t = 1; t < nt; t++) {
+            if (mesh.triangleSymbol[t] == 'C') labelFan(mesh, 3 * t, next++);
+        }
+        if (next != mesh.numVerts) {
+            throw new IllegalArgumentException("Corrupt EdgeBreaker data: " + next + " of " + mesh.numVerts + " vertices.");
+        }
+        for (int c = 0; c < 3 * nt; c++) {
+            if (V[c] < 0) throw new IllegalArgumentException("Corrupt EdgeBreaker data: corner " + c + " has no vertex.");
+        }
+    }
+
+    private static void labelFan(final Mesh mesh, final int c, final int label) {
+        final int[] V = mesh.vertexTable, O = mesh.vOppositeTable;
+        int a = c;
+        do {
+            if (V[a] >= 0) throw new IllegalArgumentException("Corrupt EdgeBreaker data: corner " + a + " is shared by two vertices.");
+            V[a] = label;
+            a = mesh.n(O[mesh.n(a)]);
+        } while (a != c);
+    }
+
+    /** Reads the first three vertices and then the residual of each C tip, in the order the labels were handed out. */
+    private static void decodeGeometry(final Mesh mesh, final DataInputStream in, final float[] bounds, final int bits)
+            throws IOException {
+        final int[] V = mesh.vertexTable, O = mesh.vOppositeTable;
+        final int[] q = new int[3 * mesh.numVerts];
+        for (int k = 0; k < 3; k++) q[k] = unzigzag(readVarint(in));
+        for (int v = 1; v < 3; v++) {
+            for (int k = 0; k < 3; k++) q[3*v+k] = q[k] + unzigzag(readVarint(in));
+        }
+        for (int t = 1; t < mesh.numTriangles; t++) {
+            if (mesh.triangleSymbol[t] != 'C') continue;
+            final int e = 3 * t;
+            final int tip = 3*V[e], a = 3*V[e+1], b = 3*V[e+2], o = 3*V[O[e]];
+            for (int k = 0; k < 3; k++) q[tip+k] = q[a+k] + q[b+k] - q[o+k] + unzigzag(readVarint(in));
+        }
+
+        final float step = bounds[3] / ((1 << bits) - 1);
+        for (int i = 0; i < q.length; i++) {
+            mesh.G[i] = bounds[i % 3] + q[i] * step;
+        }
+    }
+
+    /* ======================================== VALIDATION ============================================== */
+
+    private static void checkTopology(final Mesh mesh) {
+        final int nt = mesh.numTriangles, nv = mesh.numVerts;
+        if (nt < 4) throw new IllegalArgumentException("EdgeBreaker needs a closed mesh, got " + nt + " triangles.");
+        for (int t = 0; t < nt; t++) {
+            if (!mesh.visible[t]) throw new IllegalArgumentException("The mesh has hidden triangles; compact() it first.");
+        }
+        for (int c = 0; c < 3 * nt; c++) {
+            if (mesh.vOppositeTable[c] < 0) throw new IllegalArgumentException("EdgeBreaker needs a closed mesh; corner " + c + " faces a border.");
+        }
+        if (2 * nv != nt + 4) {         // Euler: V - E + F = 2 with E = 3F/2
+            throw new IllegalArgumentException("EdgeBreaker needs a genus-0 mesh without unused vertices.");
+        }
+    }
+
+    /* ======================================== QUANTIZATION ============================================ */
+
+    /** Returns the minimum corner of the bounding box and its largest extent. */
+    private static float[] bounds(final Mesh mesh) {
+        final float[] G = mesh.G;
+        float minX = G[0], minY = G[1], minZ = G[2], maxX = minX, maxY = minY, maxZ = minZ;
+        for (int i = 3; i < 3 * mesh.numVerts; i += 3) {
+            minX = Math.min(minX, G[i]);   maxX = Math.max(maxX, G[i]);
+            minY = Math.min(minY, G[i+1]); maxY = Math.max(maxY, G[i+1]);
+            minZ = Math.min(minZ, G[i+2]); maxZ = Math.max(maxZ, G[i+2]);
+        }
+        final float extent = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+        return new float[] {minX, minY, minZ, (extent > 0F) ? extent : 1F};
+    }
+
+    private static int[] quantize(final Mesh mesh, final float[] bounds, final int bits) {
+        final int[] q = new int[3 * mesh.numVerts];
+        final float scale = ((1 << bits) - 1) / bounds[3];
+        for (int i = 0; i < q.length; i++) {
+            q[i] = Math.round((mesh.G[i] - bounds[i % 3]) * scale);
+        }
+        return q;
+    }
+
+    /* ======================================== BIT PACKING ============================================= */
+
+    private static int zigzag(final int n) {return (n << 1) ^ (n >> 31);}
+    private static int unzigzag(final int n) {return (n >>> 1) ^ -(n & 1);}
+
+    private static void writeVarint(final ByteArrayOutputStream out, int n) {
+        while ((n & ~0x7F) != 0) {
+            out.write((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        out.write(n);
+    }
+
+    private static int readVarint(final InputStream in) throws IOException {
+        int n = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final int b = in.read();
+            if (b < 0) throw new EOFException("Truncated EdgeBreaker geometry.");
+            n |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return n;
+        }
+        throw new IllegalArgumentException("Corrupt EdgeBreaker geometry.");
+    }
+
+    /** Most-significant-bit-first bit packer. */
+    private static final class BitWriter {
+        private byte[] bytes;
+        private int bitCount = 0;
+
+        BitWriter(final int initialBytes) {this.bytes = new byte[Math.max(16, initialBytes)];}
+
+        void write(final int value, final int width) {
+            for (int i = width - 1; i >= 0; i--) {
+                final int index = bitCount >>> 3;
+                if (index == bytes.length) bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+                if (((value >>> i) & 1) != 0) bytes[index] |= (byte) (0x80 >>> (bitCount & 7));
+                bitCount++;
+            }
+        }
+
+        int length() {return (bitCount + 7) >>> 3;}
+        byte[] bytes() {return bytes;}
+    }
+
+    /** Reads back what {@link BitWriter} packed, one CLERS symbol at a time. */
+    private static final class BitReader {
+        private final byte[] bytes;
+        private int bit = 0;
+
+        BitReader(final byte[] bytes) {this.bytes = bytes;}
+
+        private int read() {
+            if ((bit >>> 3) >= bytes.length) throw new IllegalArgumentException("Corrupt EdgeBreaker data: CLERS string ends early.");
+            final int value = (bytes[bit >>> 3] >>> (7 - (bit & 7))) & 1;
+            bit++;
+            return value;
+        }
+
+        char readSymbol() {
+            if (read() == 0) return 'C';
+            final int code = (read() << 1) | read();
+            switch (code) {
+                case 0: return 'S';
+                case 1: return 'R';
+                case 2: return 'L';
+                default: return 'E';
+            }
+        }
+    }
+}
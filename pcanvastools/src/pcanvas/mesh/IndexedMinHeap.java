@@ -0,0 +1,134 @@
+package pcanvas.mesh;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over the integer ids 0 to capacity - 1, keyed by float. Each id knows its slot in the heap, so keys
+ * can be changed or ids removed in O(log n) without searching, which is what Dijkstra-style sweeps and edge-collapse
+ * queues need. Nothing is allocated once the heap has been sized.
+ */
+final class IndexedMinHeap {
+
+    private int[] heap;         // ids, in heap order
+    private int[] slot;         // position of each id in heap, or -1 when the id is not queued
+    private float[] key;        // key of each id
+    private int size = 0;
+
+    IndexedMinHeap(final int capacity) {
+        this.heap = new int[capacity];
+        this.slot = new int[capacity];
+        this.key = new float[capacity];
+        Arrays.fill(this.slot, -1);
+    }
+
+    int capacity() {return slot.length;}
+    int size() {return size;}
+    boolean isEmpty() {return size == 0;}
+    boolean contains(final int id) {return slot[id] >= 0;}
+    float keyOf(final int id) {return key[id];}
+
+    /**
+     * Empties the heap, keeping its tables. Costs time proportional to the number of queued ids only.
+     * @param capacity the number of ids the heap must be able to hold from now on.
+     */
+    void clear(final int capacity) {
+        for (int i = 0; i < size; i++) slot[heap[i]] = -1;
+        size = 0;
+        if (capacity > slot.length) {
+            heap = new int[capacity];
+            slot = new int[capacity];
+            key = new float[capacity];
+            Arrays.fill(slot, -1);
+        }
+    }
+
+    /**
+     * Queues id with the given key, or moves it to the new key when it is already queued.
+     * @param id the id to queue.
+     * @param k its key.
+     */
+    void update(final int id, final float k) {
+        int i = slot[id];
+        if (i < 0) {
+            i = size++;
+            heap[i] = id;
+            slot[id] = i;
+            key[id] = k;
+            siftUp(i);
+        } else if (k < key[id]) {
+            key[id] = k;
+            siftUp(i);
+        } else {
+            key[id] = k;
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Returns the id with the smallest key without removing it.
+     * @return the id at the top of the heap.
+     */
+    int peek() {
+        if (size == 0) throw new IllegalStateException("The heap is empty.");
+        return heap[0];
+    }
+
+    /**
+     * Removes and returns the id with the smallest key.
+     * @return the removed id.
+     */
+    int pop() {
+        final int top = peek();
+        remove(top);
+        return top;
+    }
+
+    /**
+     * Removes id from the heap; does nothing when it is not queued.
+     * @param id the id to remove.
+     */
+    void remove(final int id) {
+        final int i = slot[id];
+        if (i < 0) return;
+        slot[id] = -1;
+        final int last = heap[--size];
+        if (i == size) return;
+        heap[i] = last;
+        slot[last] = i;
+        siftUp(i);
+        siftDown(slot[last]);
+    }
+
+    private void siftUp(int i) {
+        final int id = heap[i];
+        final float k = key[id];
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            final int p = heap[parent];
+            if (key[p] <= k) break;
+            heap[i] = p;
+            slot[p] = i;
+            i = parent;
+        }
+        heap[i] = id;
+        slot[id] = i;
+    }
+
+    private void siftDown(int i) {
+        final int id = heap[i];
+        final float k = key[id];
+        final int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            final int right = child + 1;
+            if (right < size && key[heap[right]] < key[heap[child]]) child = right;
+            final int c = heap[child];
+            if (k <= key[c]) break;
+            heap[i] = c;
+            slot[c] = i;
+            i = child;
+        }
+        heap[i] = id;
+        slot[id] = i;
+    }
+}
@@ -0,0 +1,71 @@
+package pcanvas.mesh;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Forwards load progress to a {@link MeshLoadListener}, at most once per percent and never backwards, so parsers can
+ * report as often as is convenient for them and from several threads. Parsing is reported as the first
+ * {@link #PARSE_SHARE} of the work; building the adjacency tables makes up the rest.
+ */
+final class LoadProgress {
+
+    /** Share of a load spent reading and parsing the file. */
+    static final float PARSE_SHARE = 0.9F;
+
+    private static final float STEP = 0.01F;
+
+    private final MeshLoadListener listener;
+    private float reported = -1F;
+
+    LoadProgress(final MeshLoadListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Reports the overall fraction of the load that is done.
+     * @param fraction from 0 to 1.
+     */
+    synchronized void report(final float fraction) {
+        if (listener == null || fraction <= reported) return;
+        if (fraction < 1F && fraction < reported + STEP) return;
+        reported = fraction;
+        listener.progress(fraction);
+    }
+
+    /**
+     * Reports how much of the file has been parsed.
+     * @param done the bytes, chunks, etc. parsed so far.
+     * @param total the bytes, chunks, etc. in the file.
+     */
+    void parsed(final long done, final long total) {
+        if (total > 0) report(PARSE_SHARE * Math.min(done, total) / total);
+    }
+
+    /**
+     * Wraps a stream so that reading it reports parse progress.
+     * @param in the stream to read.
+     * @param size the number of bytes it will deliver.
+     * @return the wrapped stream; closing it closes in.
+     */
+    InputStream track(final InputStream in, final long size) {
+        return new FilterInputStream(in) {
+            private long count = 0;
+
+            @Override
+            public int read() throws IOException {
+                final int b = super.read();
+                if (b >= 0) parsed(++count, size);
+                return b;
+            }
+
+            @Override
+            public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                final int n = super.read(buffer, offset, length);
+                if (n > 0) parsed(count += n, size);
+                return n;
+            }
+        };
+    }
+}
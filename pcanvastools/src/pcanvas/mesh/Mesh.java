@@ -5,8 +5,11 @@
 
 package pcanvas.mesh;
 
+import java.util.Arrays;
+
 import pcanvas.Point;
 import pcanvas.Vector;
+import pcanvas.concurrent.Workers;
 
 import static pcanvas.Point.midPoint;
 
@@ -18,69 +21,100 @@ public class Mesh {
     protected class CornerIndex {
         public int index;
         public CornerIndex(final int index) {this.index = index;}
-        public Point getPoint() {return G[index];}
+        public Point getPoint() {return Mesh.this.getPoint(index);}
         public int index() {return index;}
         // next, opposite, left, right, etc. functions.
     }
 
-    protected static int MAX_NUM_VERTS = 45000;
-    protected static int MAX_NUM_TRI = MAX_NUM_VERTS * 2;
+    /** Initial per-vertex table size for an empty mesh; tables grow geometrically past this as needed. */
+    protected static int DEFAULT_VERTEX_CAPACITY = 16;
+    /** Initial per-triangle table size for an empty mesh. */
+    protected static int DEFAULT_TRIANGLE_CAPACITY = DEFAULT_VERTEX_CAPACITY * 2;
+
+    /** Fraction of the vertices that may be dirty before {@link #updateNormals()} falls back to a full recompute. */
+    protected static float FULL_NORMALS_UPDATE_FRACTION = 0.05F;
+
+    /** Corner count above which table construction is split across the shared worker pool. */
+    protected static int PARALLEL_CORNER_THRESHOLD = 1 << 18;
+    /** Smallest range of corners handed to a single worker. */
+    protected static int PARALLEL_CORNER_CHUNK = 1 << 14;
+
+    /* current sizes of the per-vertex and per-triangle tables (corner tables hold 3 entries per triangle). */
+    protected int vertexCapacity = 0;
+    protected int triangleCapacity = 0;
 
-    
     /* 'public' stuff  */
     protected float meshRadius = 1000F;
 
     protected boolean showPath=false, showDistances=false;
-    protected boolean[] parentPathCornerMarkers = new boolean [3*MAX_NUM_TRI];       // marker of corners in a path to parent triangle
-    protected int[] Distance = new int[MAX_NUM_TRI];           // triangle markers for distance fields
-    protected int[] SMt = new int[MAX_NUM_TRI];                // sum of triangle markers for isolation
+    protected boolean[] parentPathCornerMarkers;             // marker of corners in a path to parent triangle
+    protected int[] Distance;                                // triangle markers for distance fields
+    protected int[] SMt;                                     // sum of triangle markers for isolation
     protected int previousCorner = 0;                             // previously selected corner
     protected int rings=2;
+    protected float[] vertexDistance;                        // edge-length distance of each vertex from the seed, see computeGeodesicDistance
+    private int[] triangleQueue;                             // scratch frontier for computeDistance
+    private IndexedMinHeap vertexHeap;                       // scratch queue for computeGeodesicDistance
 
     /* ============================================= CORNER DATA ======================================= */
     protected int numCorners = 0;                                         // current number of corners (3 per triangle).
     protected int currCorner = 0;                                         // current corner shown in image.
-    protected int[] vertexTable = new int[3 * MAX_NUM_TRI];               // table of vertex indices.
-    protected int[] vOppositeTable = new int[3 * MAX_NUM_TRI];            // table of indices opposite a vertex.
-    protected int[] triangleCornerTable = new int[3 * MAX_NUM_TRI];       // table of triangle corner indices.
+    protected int[] vertexTable;                                          // table of vertex indices.
+    protected int[] vOppositeTable;                                       // table of indices opposite a vertex.
+    protected int[] triangleCornerTable;                                  // table of triangle corner indices.
 
     /* ============================================= VERTEX DATA ======================================= */
     protected int numVerts = 0;                                           // current  number of vertices
     protected int vertexSphereRadius = 5;                                 // radius of spheres for displaying vertices
-    protected Point[] G = new Point[MAX_NUM_VERTS];                // geometry table (vertices)
-    protected Point[] G2 = new Point[MAX_NUM_VERTS];               // 2008-03-06 JJ -- misc
-    protected int[] vertexMarkers = new int[MAX_NUM_VERTS];               // vertex markers
-    protected int[] Valence = new int[MAX_NUM_VERTS];                     // vertex valence (count of incident triangles)
-    protected boolean[] borderVertices = new boolean[MAX_NUM_VERTS];      // vertex is border
-    protected boolean[] VisitedV = new boolean[MAX_NUM_VERTS];            // vertex visited
+    protected float[] G;                                                  // geometry table (vertices), packed as x, y, z at 3*v
+    protected float[] G2;                                                 // 2008-03-06 JJ -- misc, packed like G
+    protected int[] vertexMarkers;                                        // vertex markers
+    protected int[] Valence;                                              // vertex valence (count of incident triangles)
+    protected boolean[] borderVertices;                                   // vertex is border
+    protected boolean[] VisitedV;                                         // vertex visited
     protected boolean showVertices = false;
 
     /* =============================== VECTOR/TRIANGLE NORMALS DATA ==================================== */
     protected boolean showNormals = false;
-    protected Vector[] vertexNormals = new Vector[MAX_NUM_VERTS];  // vertex normals or laplace vectors
-    protected Vector[] triangleNormals = new Vector[MAX_NUM_TRI];  // triangles normals
+    protected float[] vertexNormals;                               // vertex normals or laplace vectors, packed like G
+    protected float[] triangleNormals;                             // triangle normals scaled by twice the area, packed x, y, z at 3*t
+
+    /* ==================================== DIRTY NORMALS DATA ========================================= */
+    protected int[] dirtyVertices = new int[16];                   // vertices whose one-ring needs fresh normals
+    protected int numDirtyVertices = 0;
+    protected boolean allNormalsDirty = true;                      // set when the next update must recompute every normal
+    private int[] triangleStamps, vertexStamps;                    // per-update visit stamps, so shared triangles are refreshed once
+    private int normalStamp = 0;
+
+    /* ======================================== CHANGE TRACKING ========================================= */
+    private int version = 0;                                       // bumped on every edit, so drawing caches know they are stale
+
+    /* ================================= VERTEX-CORNER INCIDENCE DATA ================================== */
+    protected int[] vertexCorner;                                  // one corner of each vertex, or -1 for a vertex with no triangles
+    protected int[] cornerFanStart;                                // corners of vertex v are cornerFan[cornerFanStart[v]] up to cornerFan[cornerFanStart[v+1]]
+    protected int[] cornerFan;                                     // corners bucketed by vertex; both tables are null when out of date
     
     /* end 'public' stuff  */
 
     /* ======================================== SUBDIVISION DATA ======================================= */
-    private static int[] W = new int [3*MAX_NUM_TRI];                   // mid-edge vertex indices for subdivision (associated with corner opposite to edge)
+    private int[] W;                                               // mid-edge vertex indices for subdivision (associated with corner opposite to edge)
 
     /* 'public' stuff */
     /* ======================================== TRIANGLE DATA =========================================== */
     protected boolean showTriangles = true, showEdges = false;
     protected boolean showSelectedTriangle=false;
     protected int numTriangles = 0;                   // current number of triangles
-    protected boolean[] visible = new boolean[MAX_NUM_TRI];    // set if triangle visible
-    protected int[] triangleMarkers = new int[MAX_NUM_TRI];                 // triangle markers for distance and other things
-    protected boolean [] VisitedT = new boolean [MAX_NUM_TRI];  // triangle visited
+    protected boolean[] visible;                      // set if triangle visible
+    protected int[] triangleMarkers;                  // triangle markers for distance and other things
+    protected boolean [] VisitedT;                    // triangle visited
 
     /* ======================================== COMPRESSION DATA========================================= */
     protected boolean showEB = false, showEBrec = false;
-    protected char[] triangleSymbol = new char[MAX_NUM_TRI];
-    protected char[] CLERS = new char[MAX_NUM_TRI];
+    protected char[] triangleSymbol;
+    protected char[] CLERS;
     protected int symbols=0;
-    protected int stack[] = new int[10000];
-    protected int stackHeight=1;
+    protected int[] stack = new int[16];                           // corners waiting on the right branch of an S; grows as needed
+    protected int stackHeight=0;
     protected int Ccount=0, Lcount=0, Ecount=0, Rcount=0, Scount=0;
     protected boolean EBisDone;
     protected int firstCorner=0;
@@ -88,8 +122,24 @@ public class Mesh {
     /* end 'public' stuff  */
 
 
-    private Mesh() {
+    /**
+     * Creates an empty mesh with small default tables. The tables grow as vertices and triangles are added.
+     */
+    public Mesh() {
+        this(DEFAULT_VERTEX_CAPACITY, DEFAULT_TRIANGLE_CAPACITY);
+    }
 
+    /**
+     * Creates an empty mesh whose tables are sized up front, e.g. from the counts in a mesh file header.
+     * @param vertexCapacity the number of vertices to make room for.
+     * @param triangleCapacity the number of triangles to make room for.
+     */
+    public Mesh(final int vertexCapacity, final int triangleCapacity) {
+        if (vertexCapacity < 0 || triangleCapacity < 0) {
+            throw new IllegalArgumentException("Mesh capacities must not be negative.");
+        }
+        this.resizeVertexTables(vertexCapacity);
+        this.resizeTriangleTables(triangleCapacity);
     }
 
     public void declare() {
@@ -101,26 +151,183 @@ public class Mesh {
     }
 
     public Point triangleCenter(int i) {
-        return(triCenterFromPts( G[vertexTable[3*i]], G[vertexTable[3*i+1]], G[vertexTable[3*i+2]] ));
+        final int a = 3 * vertexTable[3*i], b = 3 * vertexTable[3*i+1], c = 3 * vertexTable[3*i+2];
+        return new Point((G[a]+G[b]+G[c])/3F, (G[a+1]+G[b+1]+G[c+1])/3F, (G[a+2]+G[b+2]+G[c+2])/3F);
     }
 
     public Point triangleCenter() {
         return triangleCenter(cornerAsTriangle()); // computes center of triangle t(i)
     }
     
+    public int addVertex(final float x, final float y, final float z) {
+        ensureVertexCapacity(numVerts + 1);
+        G[3*numVerts] = x;
+        G[3*numVerts+1] = y;
+        G[3*numVerts+2] = z;
+        vertexCorner[numVerts] = -1;
+        version++;
+        return numVerts++;
+    }
+
+    public int addVertex(final Point point) {
+        return addVertex(point.x, point.y, point.z);
+    }
+
     public void addTriangle(int i, int j, int k) {
-        vertexTable[numCorners++]=i;
-        vertexTable[numCorners++]=j;
-        vertexTable[numCorners++]=k;
-        visible[numCorners++]=true;
+        ensureTriangleCapacity(numTriangles + 1);
+        invalidateCornerFans();
+        markAllNormalsDirty();
+        vertexCorner[i] = numCorners; vertexTable[numCorners++]=i;
+        vertexCorner[j] = numCorners; vertexTable[numCorners++]=j;
+        vertexCorner[k] = numCorners; vertexTable[numCorners++]=k;
+        visible[numTriangles++]=true;
+    }
+
+    /* ======================================== GEOMETRY ACCESS ========================================= */
+
+    public float vertexX(final int v) {return G[3*v];}
+    public float vertexY(final int v) {return G[3*v+1];}
+    public float vertexZ(final int v) {return G[3*v+2];}
+
+    /**
+     * Returns a copy of the position of vertex v. The mesh stores its geometry packed in {@link #G}, so changing the
+     * returned point does not move the vertex; use {@link #setPoint(int, float, float, float)} for that.
+     * @param v a vertex index.
+     * @return a new {@link Point} at the vertex position.
+     */
+    public Point getPoint(final int v) {
+        return new Point(G[3*v], G[3*v+1], G[3*v+2]);
+    }
+
+    /**
+     * Same as {@link #getPoint(int)}, but writes the position into a caller-owned point instead of allocating one.
+     * @param v a vertex index.
+     * @param out the point to fill.
+     * @return out, for chaining.
+     */
+    public Point getPoint(final int v, final Point out) {
+        return out.set(G[3*v], G[3*v+1], G[3*v+2]);
+    }
+
+    /**
+     * Moves vertex v and marks its one-ring for the next {@link #updateNormals()}.
+     * @param v a vertex index.
+     * @param x the new x-coordinate.
+     * @param y the new y-coordinate.
+     * @param z the new z-coordinate.
+     */
+    public void setPoint(final int v, final float x, final float y, final float z) {
+        G[3*v] = x;
+        G[3*v+1] = y;
+        G[3*v+2] = z;
+        markVertexDirty(v);
+    }
+
+    public void setPoint(final int v, final Point point) {
+        setPoint(v, point.x, point.y, point.z);
+    }
+
+    /* ======================================== TABLE CAPACITY ========================================== */
+
+    /**
+     * Makes sure every per-vertex table can hold at least the given number of vertices. Tables grow by half their
+     * current size (or straight to the requested size if that is larger), so repeated {@link #addVertex} calls stay
+     * amortized constant time.
+     * @param required the number of vertices the tables must be able to hold.
+     */
+    protected void ensureVertexCapacity(final int required) {
+        if (required > vertexCapacity) {
+            resizeVertexTables(grownCapacity(vertexCapacity, required));
+        }
+    }
+
+    /**
+     * Makes sure every per-triangle and per-corner table can hold at least the given number of triangles.
+     * @param required the number of triangles the tables must be able to hold.
+     */
+    protected void ensureTriangleCapacity(final int required) {
+        if (required > triangleCapacity) {
+            resizeTriangleTables(grownCapacity(triangleCapacity, required));
+        }
+    }
+
+    /**
+     * Shrinks every table to the current vertex and triangle counts. Useful after loading or editing a mesh that is
+     * going to stay resident for a while.
+     */
+    public void trimToSize() {
+        if (vertexCapacity > numVerts) resizeVertexTables(numVerts);
+        if (triangleCapacity > numTriangles) resizeTriangleTables(numTriangles);
     }
 
+    public int vertexCapacity() {return vertexCapacity;}
+    public int triangleCapacity() {return triangleCapacity;}
+
+    private void resizeVertexTables(final int capacity) {
+        G = resize(G, 3 * capacity);
+        G2 = resize(G2, 3 * capacity);
+        vertexMarkers = resize(vertexMarkers, capacity);
+        Valence = resize(Valence, capacity);
+        borderVertices = resize(borderVertices, capacity);
+        VisitedV = resize(VisitedV, capacity);
+        vertexNormals = resize(vertexNormals, 3 * capacity);
+        if (vertexStamps != null) vertexStamps = resize(vertexStamps, capacity);
+        vertexCorner = resize(vertexCorner, capacity);
+        vertexDistance = resize(vertexDistance, capacity);
+        vertexCapacity = capacity;
+    }
+
+    private void resizeTriangleTables(final int capacity) {
+        final int corners = 3 * capacity;
+        parentPathCornerMarkers = resize(parentPathCornerMarkers, corners);
+        vertexTable = resize(vertexTable, corners);
+        vOppositeTable = resize(vOppositeTable, corners);
+        triangleCornerTable = resize(triangleCornerTable, corners);
+        W = resize(W, corners);
+
+        if (triangleStamps != null) triangleStamps = resize(triangleStamps, capacity);
+        Distance = resize(Distance, capacity);
+        SMt = resize(SMt, capacity);
+        visible = resize(visible, capacity);
+        triangleMarkers = resize(triangleMarkers, capacity);
+        VisitedT = resize(VisitedT, capacity);
+        triangleSymbol = resize(triangleSymbol, capacity);
+        CLERS = resize(CLERS, capacity);
+        triangleNormals = resize(triangleNormals, 3 * capacity);
+        triangleCapacity = capacity;
+    }
+
+    private static int grownCapacity(final int current, final int required) {
+        int capacity = current + (current >> 1) + 1;
+        if (capacity < required || capacity < 0) {
+            capacity = required;   // also covers int overflow of the 1.5x step
+        }
+        return capacity;
+    }
+
+    private static int[] resize(final int[] table, final int size) {
+        return (table == null) ? new int[size] : Arrays.copyOf(table, size);
+    }
+
+    private static boolean[] resize(final boolean[] table, final int size) {
+        return (table == null) ? new boolean[size] : Arrays.copyOf(table, size);
+    }
+
+    private static char[] resize(final char[] table, final int size) {
+        return (table == null) ? new char[size] : Arrays.copyOf(table, size);
+    }
+
+    private static float[] resize(final float[] table, final int size) {
+        return (table == null) ? new float[size] : Arrays.copyOf(table, size);
+    }
+
+
 
     public int cornerAsTriangle(final int corner) {return (corner / 3);}                            /* == */  public int t(final int c) {return (c / 3);}
     public int nextCorner(final int corner) {return 3 * cornerAsTriangle(corner) + (corner + 1)%3;} /* == */  public int n(final int c) {return 3 * t(c) + (c + 1)%3;}
     public int previousCorner(final int corner) {return nextCorner(nextCorner(corner));}            /* == */  public int p(final int c) {return n(n(c));}
     public int vertexIndex(final int corner){return vertexTable[corner];}                           /* == */  public int v(final int c){return vertexTable[c];}
-    public Point getVertex(final int corner){return G[vertexIndex(corner)];}                        /* == */  public Point g(final int c){return G[v(c)];}
+    public Point getVertex(final int corner){return getPoint(vertexIndex(corner));}                 /* == */  public Point g(final int c){return getPoint(v(c));}
     public Boolean isBorder(final int corner){return vOppositeTable[corner] == -1;}                 /* == */  public Boolean b(final int c){return vOppositeTable[c] == -1;}
     public int oppositeCorner(final int corner) {
         if (isBorder(corner)) return corner;
@@ -145,10 +352,12 @@ public class Mesh {
     public int swingVertex(){return swingVertex(currCorner);}                               /* == */    public int s() {return s(currCorner);}
     public Point getCurrentVertex(){return getVertex(currCorner);}                          /* == */    public Point g() {return g(currCorner);}  // shortcut to get the point of the vertex v(c) of corner c
 
-    public Vector vectorNormal(int c) {return(vertexNormals[vertexTable[c]]);}
+    public Vector vectorNormal(int c) {return getVertexNormal(v(c), new Vector(0F, 0F, 0F));}
     public Vector vectorNormal() {return vectorNormal(currCorner);}                // shortcut to get the normal of v(c)
-    public Vector triangleNormal(int c) {return(triangleNormals[t(c)]);}
+    public Vector triangleNormal(int c) {return getTriangleNormal(t(c), new Vector(0F, 0F, 0F));}
     public Vector triangleNormal() {return triangleNormal(currCorner);}            // shortcut to get the normal of t(c)
+    public Vector getVertexNormal(final int v, final Vector out) {return out.set(vertexNormals[3*v], vertexNormals[3*v+1], vertexNormals[3*v+2]);}
+    public Vector getTriangleNormal(final int t, final Vector out) {return out.set(triangleNormals[3*t], triangleNormals[3*t+1], triangleNormals[3*t+2]);}
     public int midEdgeCornerVertex(int c) {return(W[c]);}                          // temporary indices to mid-edge vertices associated with corners during subdivision
 
     boolean vis(int c) {return visible[t(c)]; }   // true if tiangle of c is visible
@@ -187,50 +396,673 @@ public class Mesh {
         }
     }
 
-    private void constructOppositesTable() {
-        int[] C = new int [numCorners];
-        int[] val = new int[numVerts];         
-        int[] fic = new int[numVerts];
+    /**
+     * Builds {@link #vOppositeTable} in time linear in the number of corners (for bounded vertex valence).
+     * <br />
+     * <br />
+     * Corners are first bucketed by vertex with a counting sort. The opposite of corner c faces the edge running from
+     * v(n(c)) to v(p(c)), so it is found by looking only at the corners of vertex v(p(c)): a corner e there whose
+     * next vertex is v(n(c)) belongs to the neighbouring triangle, and p(e) is the opposite of c. Large meshes split
+     * the matching pass across the shared worker pool; every corner writes only its own table entry, so no locking
+     * is needed.
+     */
+    protected void constructOppositesTable() {
+        version++;
+        buildVertexCorners();
+        buildCornerFans();
+        final int[] fanStart = cornerFanStart, fan = cornerFan;
+
+        if (numCorners >= PARALLEL_CORNER_THRESHOLD) {
+            Workers.forRange(numCorners, PARALLEL_CORNER_CHUNK, new Workers.RangeTask() {
+                @Override
+                public void run(final int start, final int end) {
+                    matchOpposites(start, end, fanStart, fan);
+                }
+            });
+        } else {
+            matchOpposites(0, numCorners, fanStart, fan);
+        }
+    }
 
-        int rfic = 0;
-        
-        for (int v=0; v<numVerts; v++) {val[v]=0;}
-        for (int c=0; c<numCorners; c++) {val[v(c)]++;}   //  valences
+    /**
+     * Rebuilds {@link #cornerFanStart} and {@link #cornerFan} with a counting sort of the corners by their vertex: the
+     * corners of vertex v end up in cornerFan[cornerFanStart[v]] through cornerFan[cornerFanStart[v+1] - 1].
+     */
+    protected void buildCornerFans() {
+        final int[] fanStart = new int[numVerts + 1];
+        final int[] fan = new int[numCorners];
+        for (int c=0; c<numCorners; c++) {fanStart[vertexTable[c] + 1]++;}          // valences, shifted by one
+        for (int v=0; v<numVerts; v++) {fanStart[v + 1] += fanStart[v];}            // running sum gives bucket heads
+        final int[] next = Arrays.copyOf(fanStart, numVerts);
+        for (int c=0; c<numCorners; c++) {fan[next[vertexTable[c]]++] = c;}
+        cornerFanStart = fanStart;
+        cornerFan = fan;
+    }
 
-        for (int v=0; v<numVerts; v++) {
-            // head of list of incident corners
-            fic[v]=rfic;
-            rfic+=val[v];
+    /**
+     * Rebuilds {@link #vertexCorner} from the corner table. Loaders that fill {@link #vertexTable} directly get this
+     * through {@link #constructOppositesTable()}; {@link #addTriangle(int, int, int)} and the editing operations keep
+     * it up to date on their own.
+     */
+    protected void buildVertexCorners() {
+        Arrays.fill(vertexCorner, 0, numVerts, -1);
+        for (int c=0; c<numCorners; c++) {vertexCorner[vertexTable[c]] = c;}
+    }
+
+    /** Builds the vertex-corner incidence tables if they are missing or out of date. */
+    protected void ensureCornerFans() {
+        if (cornerFanStart == null || cornerFanStart.length != numVerts + 1 || cornerFan.length != numCorners) {
+            buildCornerFans();
         }
+    }
 
-        for (int v=0; v<numVerts; v++) {
-            val[v]=0;   // valences wil be reused to track how many incident corners were encountered for each vertex
+    /** Marks the vertex-corner incidence tables out of date; called whenever corners change vertices. */
+    protected void invalidateCornerFans() {
+        cornerFanStart = null;
+        cornerFan = null;
+    }
+
+    private void matchOpposites(final int start, final int end, final int[] fanStart, final int[] fan) {
+        for (int c = start; c < end; c++) {
+            final int from = vertexTable[n(c)], to = vertexTable[p(c)];
+            int opposite = -1;
+            for (int i = fanStart[to], last = fanStart[to + 1]; i < last; i++) {
+                final int e = fan[i];
+                if (vertexTable[n(e)] == from && t(e) != t(c)) {
+                    opposite = p(e);
+                    break;
+                }
+            }
+            vOppositeTable[c] = opposite;
         }
+    }
 
-        for (int c=0; c<numCorners; c++) {
-            C[fic[v(c)]+val[v(c)]++]=c;  // vor each vertex: the list of val[v] incident corners starts at C[fic[v]]
+    /* ============================================= NORMALS ============================================ */
+
+    /**
+     * Recomputes the triangle normals, the vertex normals and the vertex valences. Triangle normals are computed
+     * per triangle; each vertex normal is then gathered from the triangles of its own corners, so both passes write
+     * disjoint table entries and large meshes run them on the shared worker pool without locking or per-triangle
+     * allocation.
+     */
+    public void normals() {
+        computeTriNormals();
+        computeVertexNormals();
+        version++;
+        allNormalsDirty = false;
+        numDirtyVertices = 0;
+    }
+
+    /**
+     * Brings the normals up to date after edits. Only the one-rings of the vertices marked since the last update are
+     * refreshed: first the triangles around each dirty vertex, then the normals of every vertex of those triangles.
+     * When more than {@link #FULL_NORMALS_UPDATE_FRACTION} of the vertices are dirty, or an edit could not be
+     * localized, this falls back to {@link #normals()}.
+     */
+    public void updateNormals() {
+        if (allNormalsDirty || numDirtyVertices > FULL_NORMALS_UPDATE_FRACTION * numVerts) {
+            normals();
+            return;
+        }
+        if (numDirtyVertices == 0) return;
+        version++;
+
+        // dirty vertices are resolved to corners only now, since edits after the marking may have hidden the
+        // triangles their corners were in at the time
+        int stamp = nextNormalStamp();
+        for (int i = 0; i < numDirtyVertices; i++) {
+            final int c = liveCorner(dirtyVertices[i]);
+            if (c < 0) continue;
+            final int first = firstCornerAround(c);
+            for (int a = first; a != -1; a = nextCornerAround(a, first)) {
+                final int t = t(a);
+                if (triangleStamps[t] != stamp) {
+                    triangleStamps[t] = stamp;
+                    computeTriNormals(t, t + 1);
+                }
+            }
+        }
+        for (int i = 0; i < numDirtyVertices; i++) {
+            final int c = liveCorner(dirtyVertices[i]);
+            if (c < 0) continue;
+            final int first = firstCornerAround(c);
+            for (int a = first; a != -1; a = nextCornerAround(a, first)) {
+                updateVertexNormal(a, stamp);
+                updateVertexNormal(n(a), stamp);
+                updateVertexNormal(p(a), stamp);
+            }
+        }
+        numDirtyVertices = 0;
+    }
+
+    // a corner of v in a visible triangle, or -1 if v has none (it was collapsed away, or never had triangles)
+    private int liveCorner(final int v) {
+        final int c = vertexCorner[v];
+        return (c < 0 || !visible[t(c)]) ? -1 : c;
+    }
+
+    /**
+     * Marks the one-ring of corner c's vertex as needing fresh normals.
+     * @param c a corner of the edited vertex.
+     */
+    public void markCornerDirty(final int c) {
+        markVertexDirty(vertexTable[c]);
+    }
+
+    /**
+     * Marks the one-ring of vertex v as needing fresh normals.
+     * @param v the edited vertex.
+     */
+    public void markVertexDirty(final int v) {
+        version++;
+        if (allNormalsDirty) return;
+        if (vertexCorner[v] < 0) return;    // isolated vertex, no normals depend on it
+        if (numDirtyVertices > FULL_NORMALS_UPDATE_FRACTION * numVerts) {
+            allNormalsDirty = true;     // too much to track; the next update recomputes everything anyway
+            numDirtyVertices = 0;
+            return;
+        }
+        if (numDirtyVertices == dirtyVertices.length) {
+            dirtyVertices = Arrays.copyOf(dirtyVertices, 2 * dirtyVertices.length);
         }
+        dirtyVertices[numDirtyVertices++] = v;
+    }
+
+    /** Marks the one-rings of all three vertices of triangle t as needing fresh normals. */
+    public void markTriangleDirty(final int t) {
+        markCornerDirty(3*t);
+        markCornerDirty(3*t+1);
+        markCornerDirty(3*t+2);
+    }
+
+    /**
+     * Returns a number that changes whenever the mesh does: its geometry, connectivity, visibility, normals or
+     * markers. Anything derived from the mesh, such as {@link MeshPen}'s cached layers, can keep the version it was
+     * built from and rebuild only when it differs.
+     * @return the current version.
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * Bumps the {@link #version()} after the tables were written directly, e.g. {@link #visible} or
+     * {@link #triangleSymbol}, rather than through the mesh's own methods.
+     */
+    public void markChanged() {
+        version++;
+    }
 
+    /** Forces the next {@link #updateNormals()} to recompute every normal. */
+    public void markAllNormalsDirty() {
+        version++;
+        allNormalsDirty = true;
+        numDirtyVertices = 0;
+    }
+
+    /**
+     * Declares the normal tables up to date without recomputing them, for loaders that read cached normals. The
+     * valences, which {@link #normals()} would otherwise fill in, are counted from the corner table.
+     */
+    protected void markNormalsClean() {
+        Arrays.fill(Valence, 0, numVerts, 0);
+        for (int c=0; c<numCorners; c++) {Valence[vertexTable[c]]++;}
+        version++;
+        allNormalsDirty = false;
+        numDirtyVertices = 0;
+    }
+
+    private void updateVertexNormal(final int c, final int stamp) {
+        final int v = vertexTable[c];
+        if (vertexStamps[v] == stamp) return;
+        vertexStamps[v] = stamp;
+
+        float x = 0F, y = 0F, z = 0F;
+        int valence = 0;
+        final int first = firstCornerAround(c);
+        for (int a = first; a != -1; a = nextCornerAround(a, first)) {
+            final int t = 3 * t(a);
+            x += triangleNormals[t];
+            y += triangleNormals[t+1];
+            z += triangleNormals[t+2];
+            valence++;
+        }
+        float n = (float) Math.sqrt(x*x + y*y + z*z);
+        if (n < 0.000001) n = 1;
+        vertexNormals[3*v] = x / n;
+        vertexNormals[3*v+1] = y / n;
+        vertexNormals[3*v+2] = z / n;
+        Valence[v] = valence;
+    }
+
+    private int nextNormalStamp() {
+        if (triangleStamps == null || triangleStamps.length < triangleCapacity) triangleStamps = new int[triangleCapacity];
+        if (vertexStamps == null || vertexStamps.length < vertexCapacity) vertexStamps = new int[vertexCapacity];
+        if (normalStamp == Integer.MAX_VALUE) {
+            Arrays.fill(triangleStamps, 0);
+            Arrays.fill(vertexStamps, 0);
+            normalStamp = 0;
+        }
+        return ++normalStamp;
+    }
+
+    /* ============================================ SWINGING ============================================ */
+    /*
+     * The corners of a vertex are visited without allocating anything:
+     *
+     *     for (int a = firstCornerAroundVertex(v), first = a; a != -1; a = nextCornerAround(a, first)) { ... }
+     *
+     * Each step is the same as s(), so every query costs time proportional to the vertex valence. Around a border
+     * vertex the walk starts at the border and ends at the other border, instead of wrapping around.
+     */
+
+    /**
+     * Returns one corner of vertex v, kept up to date by {@link #addTriangle(int, int, int)}, the loaders and the
+     * editing operations.
+     * @param v a vertex index.
+     * @return a corner c with v(c) == v, or -1 when no triangle uses v.
+     */
+    public int cornerOfVertex(final int v) {return vertexCorner[v];}
+
+    /**
+     * Returns the corner to start swinging around vertex v from.
+     * @param v a vertex index.
+     * @return the first corner of v, or -1 when no triangle uses v.
+     */
+    public int firstCornerAroundVertex(final int v) {
+        final int c = vertexCorner[v];
+        return (c < 0) ? -1 : firstCornerAround(c);
+    }
+
+    /**
+     * Returns the first corner of the fan of triangles around v(c): c itself when the vertex is interior, or the
+     * corner whose previous edge lies on the border otherwise. Walking on with {@link #nextCornerAround(int, int)}
+     * visits every corner of the vertex once.
+     * @param c any corner of the vertex.
+     * @return the corner to start swinging from.
+     */
+    public int firstCornerAround(final int c) {
+        int a = c;
+        for (int guard = 0; guard < numCorners; guard++) {
+            final int o = vOppositeTable[p(a)];
+            if (o < 0) return a;                    // reached the border, swing forward from here
+            a = p(o);                               // unswing
+            if (a == c) return c;                   // closed fan
+        }
+        return c;
+    }
+
+    /**
+     * Swings from corner a to the next corner around the same vertex. The swing only crosses edges whose opposites
+     * point back at each other; starting from a corner of a triangle hidden by {@link #collapse(int)}, whose opposites
+     * still point into the surviving fan that no longer points back, the walk stops instead. Swinging is then
+     * one-to-one, so a walk from first ends, or returns to first, within {@link #numCorners} steps.
+     * @param a the current corner.
+     * @param first the corner returned by {@link #firstCornerAround(int)}.
+     * @return the next corner, or -1 once the fan is exhausted.
+     */
+    public int nextCornerAround(final int a, final int first) {
+        final int o = vOppositeTable[n(a)];
+        if (o < 0 || vOppositeTable[o] != n(a)) return -1;
+        final int next = n(o);
+        return (next == first) ? -1 : next;
+    }
+
+    /**
+     * Counts the triangles around vertex v by swinging.
+     * @param v a vertex index.
+     * @return the number of incident triangles.
+     */
+    public int valence(final int v) {
+        int count = 0;
+        for (int a = firstCornerAroundVertex(v), first = a; a != -1; a = nextCornerAround(a, first)) count++;
+        return count;
+    }
+
+    /**
+     * Tells whether vertex v lies on a border, i.e. its fan of triangles does not close up.
+     * @param v a vertex index.
+     * @return true for border vertices; false for interior and unused ones.
+     */
+    public boolean isBorderVertex(final int v) {
+        final int first = firstCornerAroundVertex(v);
+        return first >= 0 && vOppositeTable[p(first)] < 0;
+    }
+
+    /**
+     * Writes the neighbours of vertex v into out, in swing order. For a border vertex the last neighbour is the far
+     * end of the closing border edge.
+     * @param v a vertex index.
+     * @param out receives the neighbouring vertices; must hold at least valence(v) + 1 entries.
+     * @return the number of neighbours written.
+     */
+    public int neighbors(final int v, final int[] out) {
+        int count = 0, last = -1;
+        for (int a = firstCornerAroundVertex(v), first = a; a != -1; a = nextCornerAround(a, first)) {
+            out[count++] = vertexTable[n(a)];
+            last = a;
+        }
+        if (last >= 0 && vOppositeTable[n(last)] < 0) out[count++] = vertexTable[p(last)];
+        return count;
+    }
+
+    /* ===================================== EDGEBREAKER STACK ========================================== */
+
+    protected void resetStack() {stackHeight = 0;}
+
+    protected void push(final int c) {
+        if (stackHeight == stack.length) stack = Arrays.copyOf(stack, 2 * stack.length);
+        stack[stackHeight++] = c;
+    }
+
+    protected int pop() {
+        if (stackHeight == 0) throw new IllegalStateException("The EdgeBreaker stack is empty.");
+        return stack[--stackHeight];
+    }
+
+    /* ====================================== GARBAGE COLLECTION ======================================== */
+
+    /**
+     * Removes hidden triangles and the vertices no triangle uses any more, renumbering both so the tables are dense
+     * again. Triangles next to a removed one become border triangles. Run this after deleting a region or decimating,
+     * before anything that loops over every triangle.
+     */
+    public void compact() {
+        compactTriangles();
+        compactVertices();
+        buildVertexCorners();
+        invalidateCornerFans();
+        markAllNormalsDirty();
+    }
+
+    private void compactTriangles() {
+        final int[] U = new int[numCorners];
+        int lc = -1;
+        for (int c=0; c<numCorners; c++) {if (visible[t(c)]) U[c] = ++lc;}
         for (int c=0; c<numCorners; c++) {
-            vOppositeTable[c]=-1;
+            final int o = vOppositeTable[c];
+            vOppositeTable[c] = (o >= 0 && visible[t(o)]) ? U[o] : -1;
+        }
+        int lt = 0;
+        for (int t=0; t<numTriangles; t++) {
+            if (!visible[t]) continue;
+            for (int k=0; k<3; k++) {
+                vertexTable[3*lt+k] = vertexTable[3*t+k];
+                vOppositeTable[3*lt+k] = vOppositeTable[3*t+k];
+            }
+            visible[lt++] = true;
         }
+        numTriangles = lt;
+        numCorners = 3*lt;
+    }
 
-        for (int v=0; v<numVerts;v++) {
-            for (int a=fic[v]; a<fic[v]+val[v]-1; a++) {
-                for (int b=a+1; b<fic[v]+val[v]; b++) {
-                    // if C[a] follows C[b] around v, then p(C[a]) and n(C[b]) are opposite
-                    if (v(n(C[a]))==v(p(C[b]))) {
-                        vOppositeTable[p(C[a])]=n(C[b]);
-                        vOppositeTable[n(C[b])]=p(C[a]);
-                    }
+    private void compactVertices() {
+        final int[] U = new int[numVerts];
+        Arrays.fill(U, -1);
+        for (int c=0; c<numCorners; c++) {U[vertexTable[c]] = 0;}
+        int lv = 0;
+        for (int v=0; v<numVerts; v++) {
+            if (U[v] < 0) continue;
+            U[v] = lv;
+            System.arraycopy(G, 3*v, G, 3*lv, 3);
+            System.arraycopy(G2, 3*v, G2, 3*lv, 3);
+            lv++;
+        }
+        for (int c=0; c<numCorners; c++) {vertexTable[c] = U[vertexTable[c]];}
+        numVerts = lv;
+    }
+
+    /* ======================================= GEODESIC DISTANCE ======================================== */
 
-                    if (v(n(C[b]))==v(p(C[a]))) {
-                        vOppositeTable[p(C[b])]=n(C[a]);
-                        vOppositeTable[n(C[a])]=p(C[b]);
+    /**
+     * Computes ring distances from the triangle of the current corner, see {@link #computeDistance(int, int)}.
+     * @param maxr the last vertex ring to expand.
+     */
+    public void computeDistance(final int maxr) {
+        computeDistance(currCorner, maxr);
+    }
+
+    /**
+     * Marks triangles and vertices with their ring distance from t(seedCorner), which is ring 1. The vertices of ring r
+     * triangles get vertex ring r, and the unmarked triangles around those vertices get ring r + 1. Vertices beyond
+     * ring maxr and triangles beyond ring maxr + 1 are left at 0.
+     * <br />
+     * <br />
+     * Runs as one breadth-first sweep over a triangle frontier queue, swinging around each vertex once, so the cost is
+     * proportional to the size of the marked region plus the clearing of the marker tables. The ring of each triangle
+     * ends up in {@link #triangleMarkers} and {@link #Distance}, the ring of each vertex in {@link #vertexMarkers}, and
+     * the largest triangle ring in {@link #rings}.
+     * @param seedCorner a corner of the seed triangle.
+     * @param maxr the last vertex ring to expand.
+     */
+    public void computeDistance(final int seedCorner, final int maxr) {
+        version++;
+        Arrays.fill(triangleMarkers, 0, numTriangles, 0);
+        Arrays.fill(vertexMarkers, 0, numVerts, 0);
+        if (triangleQueue == null || triangleQueue.length < numTriangles) triangleQueue = new int[triangleCapacity];
+        final int[] queue = triangleQueue;
+
+        int head = 0, tail = 0, deepest = 1;
+        queue[tail++] = t(seedCorner);
+        triangleMarkers[t(seedCorner)] = 1;
+        while (head < tail) {
+            final int t = queue[head++];
+            final int r = triangleMarkers[t];
+            if (r > maxr) break;                    // the queue is in ring order, everything after is deeper
+            for (int c = 3*t; c < 3*t + 3; c++) {
+                final int v = vertexTable[c];
+                if (vertexMarkers[v] != 0) continue;
+                vertexMarkers[v] = r;
+                for (int a = firstCornerAround(c), first = a; a != -1; a = nextCornerAround(a, first)) {
+                    final int next = t(a);
+                    if (triangleMarkers[next] == 0) {
+                        triangleMarkers[next] = r + 1;
+                        queue[tail++] = next;
+                        deepest = r + 1;
                     }
                 }
             }
         }
+        System.arraycopy(triangleMarkers, 0, Distance, 0, numTriangles);
+        rings = deepest;
+    }
+
+    /**
+     * Computes shortest-path distances along the edges from the vertices of t(seedCorner), weighting each edge by its
+     * length (Dijkstra). Distances up to maxDistance end up in {@link #vertexDistance}; farther vertices are set to
+     * {@link Float#POSITIVE_INFINITY}.
+     * <br />
+     * <br />
+     * The result is also banded into maxr rings so it can be used wherever ring distances are expected: vertex
+     * markers run from 1 at the seed to maxr at maxDistance, each triangle takes the smallest ring of its reached
+     * vertices, and {@link #rings} is set to maxr + 1.
+     * @param seedCorner a corner of the seed triangle.
+     * @param maxDistance the distance at which the sweep stops.
+     * @param maxr the number of rings to band the distances into.
+     */
+    public void computeGeodesicDistance(final int seedCorner, final float maxDistance, final int maxr) {
+        if (maxr < 1) throw new IllegalArgumentException("At least one ring is needed, got " + maxr + ".");
+        version++;
+        Arrays.fill(vertexDistance, 0, numVerts, Float.POSITIVE_INFINITY);
+        if (vertexHeap == null) vertexHeap = new IndexedMinHeap(vertexCapacity);
+        final IndexedMinHeap heap = vertexHeap;
+        heap.clear(numVerts);
+
+        final int seed = 3 * t(seedCorner);
+        for (int c = seed; c < seed + 3; c++) {
+            vertexDistance[vertexTable[c]] = 0F;
+            heap.update(vertexTable[c], 0F);
+        }
+        while (!heap.isEmpty()) {
+            final int v = heap.pop();
+            final float d = vertexDistance[v];
+            for (int a = firstCornerAroundVertex(v), first = a; a != -1; a = nextCornerAround(a, first)) {
+                relax(v, vertexTable[n(a)], d, maxDistance, heap);
+                relax(v, vertexTable[p(a)], d, maxDistance, heap);     // reaches the far end of a border fan too
+            }
+        }
+
+        final float band = maxDistance / maxr;
+        for (int v = 0; v < numVerts; v++) {
+            final float d = vertexDistance[v];
+            vertexMarkers[v] = (d <= maxDistance) ? Math.min(maxr, 1 + (int) (d / band)) : 0;
+        }
+        for (int t = 0; t < numTriangles; t++) {
+            int r = 0;
+            for (int c = 3*t; c < 3*t + 3; c++) {
+                final int m = vertexMarkers[vertexTable[c]];
+                if (m != 0 && (r == 0 || m < r)) r = m;
+            }
+            triangleMarkers[t] = r;
+        }
+        System.arraycopy(triangleMarkers, 0, Distance, 0, numTriangles);
+        rings = maxr + 1;
+    }
+
+    private void relax(final int from, final int to, final float d, final float maxDistance, final IndexedMinHeap heap) {
+        final float dx = G[3*to] - G[3*from], dy = G[3*to+1] - G[3*from+1], dz = G[3*to+2] - G[3*from+2];
+        final float candidate = d + (float) Math.sqrt(dx*dx + dy*dy + dz*dz);
+        if (candidate < vertexDistance[to] && candidate <= maxDistance) {
+            vertexDistance[to] = candidate;
+            heap.update(to, candidate);
+        }
+    }
+
+    /* ============================================ EDITING ============================================= */
+
+    private void repointVertexCorners(final int t) {
+        for (int c = 3*t; c < 3*t + 3; c++) vertexCorner[vertexTable[c]] = c;
+    }
+
+    /**
+     * Displaces the vertex of corner c along its normal.
+     * @param c a corner of the vertex to move.
+     * @param d the signed distance to move by.
+     */
+    public void move(final int c, final float d) {
+        final int v = 3 * vertexTable[c];
+        G[v] += d * vertexNormals[v];
+        G[v+1] += d * vertexNormals[v+1];
+        G[v+2] += d * vertexNormals[v+2];
+        markCornerDirty(c);
+    }
+
+    /**
+     * Flips the edge opposite to corner c, so it joins v(c) and v(o(c)) instead. Border edges are left alone.
+     * @param c a corner facing the edge to flip.
+     */
+    public void flip(final int c) {
+        final int co = vOppositeTable[c];
+        if (co < 0) return;
+        final int rc = vOppositeTable[p(c)], rco = vOppositeTable[p(co)];
+        vertexTable[n(co)] = vertexTable[c];
+        vertexTable[n(c)] = vertexTable[co];
+        vOppositeTable[co] = rc;  if (rc >= 0) vOppositeTable[rc] = co;
+        vOppositeTable[c] = rco;  if (rco >= 0) vOppositeTable[rco] = c;
+        vOppositeTable[p(c)] = p(co);
+        vOppositeTable[p(co)] = p(c);
+        vertexCorner[vertexTable[p(c)]] = p(c);         // n(c) and n(co) moved off these two vertices
+        vertexCorner[vertexTable[p(co)]] = p(co);
+        vertexCorner[vertexTable[c]] = c;
+        vertexCorner[vertexTable[co]] = co;
+        invalidateCornerFans();
+        markTriangleDirty(t(c));
+        markTriangleDirty(t(co));
+    }
+
+    /**
+     * Collapses the edge opposite to corner c, merging v(n(c)) into v(p(c)) and hiding the two triangles of the edge.
+     * Like the original, this does not check anything and assumes a manifold neighbourhood.
+     * @param c a corner facing the edge to collapse.
+     */
+    public void collapse(final int c) {
+        if (b(c)) return;
+        final int b = n(c), oc = o(c), vpc = v(p(c)), vb = v(b);
+        final int lc = l(c), rc = r(c), loc = l(oc), roc = r(oc);
+        visible[t(c)] = false;
+        visible[t(oc)] = false;
+        for (int a = b; a != p(oc); a = n(l(a))) {
+            vertexTable[a] = vpc;
+        }
+        vertexTable[p(oc)] = vpc;       // leave both hidden triangles degenerate, so they add nothing to the normals
+        vOppositeTable[lc] = rc;  vOppositeTable[rc] = lc;
+        vOppositeTable[loc] = roc;  vOppositeTable[roc] = loc;
+        vertexNormals[3*vb] = vertexNormals[3*vb+1] = vertexNormals[3*vb+2] = 0F;   // vb no longer has any triangles
+        Valence[vb] = 0;
+        vertexCorner[vb] = -1;
+        repointVertexCorners(t(lc));                    // the surviving vertices may have pointed into a hidden triangle
+        repointVertexCorners(t(loc));
+        invalidateCornerFans();
+        markTriangleDirty(t(lc));
+        markTriangleDirty(t(rc));
+        markTriangleDirty(t(loc));
+        markTriangleDirty(t(roc));
+    }
+
+    /** Caches the valence of each vertex and resets the vertex normals to zero. */
+    public void computeValenceAndResetNormals() {
+        ensureCornerFans();
+        for (int v=0; v<numVerts; v++) {
+            Valence[v] = cornerFanStart[v + 1] - cornerFanStart[v];
+        }
+        Arrays.fill(vertexNormals, 0, 3 * numVerts, 0F);
+    }
+
+    /** Caches the normals of all triangles (cross products of two edges, so scaled by twice the triangle area). */
+    public void computeTriNormals() {
+        Workers.forRange(numTriangles, PARALLEL_CORNER_CHUNK / 3, new Workers.RangeTask() {
+            @Override
+            public void run(final int start, final int end) {
+                computeTriNormals(start, end);
+            }
+        });
+    }
+
+    /**
+     * Computes each vertex normal as the normalized sum of the normals of its incident triangles, and caches the
+     * vertex valences along the way.
+     */
+    public void computeVertexNormals() {
+        ensureCornerFans();
+        Workers.forRange(numVerts, PARALLEL_CORNER_CHUNK / 6, new Workers.RangeTask() {
+            @Override
+            public void run(final int start, final int end) {
+                computeVertexNormals(start, end);
+            }
+        });
+    }
+
+    protected void computeTriNormals(final int start, final int end) {
+        final float[] g = G, normals = triangleNormals;
+        final int[] table = vertexTable;
+        for (int t = start; t < end; t++) {
+            final int a = 3 * table[3*t], b = 3 * table[3*t+1], c = 3 * table[3*t+2];
+            final float ux = g[b] - g[a], uy = g[b+1] - g[a+1], uz = g[b+2] - g[a+2];
+            final float vx = g[c] - g[a], vy = g[c+1] - g[a+1], vz = g[c+2] - g[a+2];
+            normals[3*t] = uy * vz - uz * vy;
+            normals[3*t+1] = uz * vx - ux * vz;
+            normals[3*t+2] = ux * vy - uy * vx;
+        }
+    }
+
+    protected void computeVertexNormals(final int start, final int end) {
+        final float[] normals = vertexNormals, triNormals = triangleNormals;
+        final int[] fanStart = cornerFanStart, fan = cornerFan;
+        for (int v = start; v < end; v++) {
+            float x = 0F, y = 0F, z = 0F;
+            for (int i = fanStart[v], last = fanStart[v + 1]; i < last; i++) {
+                final int t = 3 * (fan[i] / 3);
+                x += triNormals[t];
+                y += triNormals[t+1];
+                z += triNormals[t+2];
+            }
+            float n = (float) Math.sqrt(x*x + y*y + z*z);
+            if (n < 0.000001) n = 1;
+            normals[3*v] = x / n;
+            normals[3*v+1] = y / n;
+            normals[3*v+2] = z / n;
+            Valence[v] = fanStart[v + 1] - fanStart[v];
+        }
     }
 }
 
@@ -308,26 +1140,6 @@ void moveROI() {
      g().setTo(Q);
      }
 
-//  ==========================================================  NORMALS ===========================================
-boolean showNormals=false;
-vec[] Nv = new vec [maxnv];                 // vertex normals or laplace vectors
-vec[] Nt = new vec [maxnt];                // triangles normals
-void normals() {computeValenceAndResetNormals(); computeTriNormals(); computeVertexNormals(); }
-void computeValenceAndResetNormals() {      // caches valence of each vertex
-  for (int i=0; i<nv; i++) {Nv[i].setTo(0,0,0); Valence[i]=0;};  // resets the valences to 0
-  for (int i=0; i<nc; i++) {Valence[v(i)]++; };
-  }
-vec triNormal(int t) { return C(V(g(3*t),g(3*t+1)),V(g(3*t),g(3*t+2))); };
-vec triNormal() {return triNormal(t());} // computes triangle t(i) normal * area / 2
-void computeTriNormals() {for (int i=0; i<nt; i++) {Nt[i].setToVec(triNormal(i)); }; };             // caches normals of all tirangles
-void computeVertexNormals() {  // computes the vertex normals as sums of the normal vectors of incident tirangles scaled by area/2
-  for (int i=0; i<nv; i++) {Nv[i].setTo(0,0,0);};  // resets the valences to 0
-  for (int i=0; i<nc; i++) {Nv[v(i)].add(Nt[t(i)]);};
-  for (int i=0; i<nv; i++) {Nv[i].makeUnit();};            };
-void showCornerNormal(int c) {S(20*r,Nt[t(c)]).show(M(g(c),g(c),triCenter(t(c))));};   // renders corner normal
-void showVertexNormals() {for (int i=0; i<nv; i++) S(10*r,Nv[i]).show(G[i]);  };
-void showTriNormals() {for (int i=0; i<nt; i++) S(10*r,U(Nt[i])).show(triCenter(i));  };
-
 // ============================================================= SMOOTHING ============================================================
 void computeLaplaceVectors() {  // computes the vertex normals as sums of the normal vectors of incident tirangles scaled by area/2
   computeValenceAndResetNormals();
@@ -394,19 +1206,6 @@ void fanThisHole(int cc) {   // fill shole with triangle fan (around average of
  int prevc = 0;                             // previously selected corner
  int rings=2;                           // number of rings for colorcoding
 
-void computeDistance(int maxr) {
-  int tc=0;
-  int r=1;
-  for(int i=0; i<nt; i++) {Mt[i]=0;};  Mt[t(c)]=1; tc++;
-  for(int i=0; i<nv; i++) {Mv[i]=0;};
-  while ((tc<nt)&&(r<=maxr)) {
-      for(int i=0; i<nc; i++) {if ((Mv[v(i)]==0)&&(Mt[t(i)]==r)) {Mv[v(i)]=r;};};
-     for(int i=0; i<nc; i++) {if ((Mt[t(i)]==0)&&(Mv[v(i)]==r)) {Mt[t(i)]=r+1; tc++;};};
-     r++;
-     };
-  rings=r;
-  }
-
 void computeIsolation() {
   println("Starting isolation computation for "+nt+" triangles");
   for(int i=0; i<nt; i++) {SMt[i]=0;};
@@ -446,90 +1245,7 @@ void computePath() {                 // graph based shortest path between t(c0 a
 //  ==========================================================  DELETE ===========================================
 void hideROI() { for(int i=0; i<nt; i++) if(Mt[i]>0) visible[i]=false; }
 
-//  ==========================================================  GARBAGE COLLECTION ===========================================
-void clean() {excludeInvisibleTriangles();  compactVO(); compactV(); M.normals();}  // removes deleted triangles and unused vertices
-void excludeInvisibleTriangles () {for (int b=0; b<nc; b++) {if (!visible[t(o(b))]) {O[b]=-1;};};}
-void compactVO() {
-  int[] U = new int [nc];
-  int lc=-1; for (int c=0; c<nc; c++) {if (visible[t(c)]) {U[c]=++lc; }; };
-  for (int c=0; c<nc; c++) {if (!b(c)) {O[c]=U[o(c)];} else {O[c]=-1;}; };
-  int lt=0;
-  for (int t=0; t<nt; t++) {
-    if (visible[t]) {
-      V[3*lt]=V[3*t]; V[3*lt+1]=V[3*t+1]; V[3*lt+2]=V[3*t+2];
-      O[3*lt]=O[3*t]; O[3*lt+1]=O[3*t+1]; O[3*lt+2]=O[3*t+2];
-      visible[lt]=true;
-      lt++;
-      };
-    };
-  nt=lt; nc=3*nt;
-  println("      ...  NOW: nv="+nv +", nt="+nt +", nc="+nc );
-  }
-
-void compactV() {
-  println("COMPACT VERTICES: nv="+nv +", nt="+nt +", nc="+nc );
-  int[] U = new int [nv];
-  boolean[] deleted = new boolean [nv];
-  for (int v=0; v<nv; v++) {deleted[v]=true;};
-  for (int c=0; c<nc; c++) {deleted[v(c)]=false;};
-  int lv=-1; for (int v=0; v<nv; v++) {if (!deleted[v]) {U[v]=++lv; }; };
-  for (int c=0; c<nc; c++) {V[c]=U[v(c)]; };
-  lv=0;
-  for (int v=0; v<nv; v++) {
-    if (!deleted[v]) {G[lv].setToPoint(G[v]);  deleted[lv]=false;
-      lv++;
-      };
-    };
- nv=lv;
- println("      ...  NOW: nv="+nv +", nt="+nt +", nc="+nc );
-  }
-
-//  ==========================================================  FLIP ===========================================
-void flipWhenLonger() {for (int c=0; c<nc; c++) if (d(g(n(c)),g(p(c)))>d(g(c),g(o(c)))) flip(c); }
-void flip() {flip(c);}
-void flip(int c) {      // flip edge opposite to corner c, FIX border cases
-  if (b(c)) return;
-    V[n(o(c))]=v(c); V[n(c)]=v(o(c));
-    int co=o(c); O[co]=r(c); if(!b(p(c))) O[r(c)]=co; if(!b(p(co))) O[c]=r(co); if(!b(p(co))) O[r(co)]=c; O[p(c)]=p(co); O[p(co)]=p(c);  }
-
-//  ==========================================================  SIMPLIFICATION  ===========================================
-void collapse() {collapse(c);}
-void collapse(int c) {if (b(c)) return;      // collapse edge opposite to corner c, does not check anything !!! assumes manifold
-   int b=n(c), oc=o(c), vpc=v(p(c));
-   visible[t(c)]=false; visible[t(oc)]=false;
-   for (int a=b; a!=p(oc); a=n(l(a))) V[a]=vpc;
-   O[l(c)]=r(c); O[r(c)]=l(c); O[l(oc)]=r(oc); O[r(oc)]=l(oc);  }
-
 // ============================================================= COMPRESSION ============================================================
- void EBcompress(int c) {
- Ccount=0; Lcount=0; Ecount=0; Rcount=0; Scount=0;
- resetStack();
- for (int v=0; v<nv; v++) {VisitedV[v]=false;};
- for (int t=0; t<nt; t++) {VisitedT[t]=false;};
- VisitedT[t(c)]=true; triangleSymbol[t(c)]='B'; VisitedV[v(c)]=true; VisitedV[v(n(c))]=true; VisitedV[v(p(c))]=true; c=r(c);
- symbols=0;
- boolean EBisDone=false;
- while (!EBisDone) {
-  VisitedT[t(c)]=true;
-  if (!VisitedV[v(c)]) {triangleSymbol[t(c)]='C'; Ccount++; CLERS[symbols++]=triangleSymbol[t(c)]; VisitedV[v(c)]=true; c=r(c); }
-  else {
-    if (VisitedT[t(r(c))]) {
-        if (VisitedT[t(l(c))]) {triangleSymbol[t(c)]='E'; Ecount++; CLERS[symbols++]=triangleSymbol[t(c)]; c=stack[--stackHeight]; if (stackHeight==0) {EBisDone=true;};}
-        else {triangleSymbol[t(c)]='R'; Rcount++; CLERS[symbols++]=triangleSymbol[t(c)]; c=l(c);};
-       }
-    else {
-        if (VisitedT[t(l(c))]) {triangleSymbol[t(c)]='L'; Lcount++; CLERS[symbols++]=triangleSymbol[t(c)]; c=r(c);}
-        else {triangleSymbol[t(c)]='S'; triangleSymbol[t(l(c))]='w'; Scount++; CLERS[symbols++]=triangleSymbol[t(c)]; stack[stackHeight++]=l(c); c=r(c);};
-      };
-    };
-  };
-  int total=Ccount+Lcount+Ecount+Rcount+Scount;
-  println(nt+" triangles, "+total+" symbols: C="+Ccount+", L="+Lcount+", E="+Ecount+", R="+Rcount+", S="+Scount);
- }
-
-int pop() {if (stackHeight==0){ println("Stack is empty"); stackHeight=1;}; return(stack[--stackHeight]);}
-void push(int c) {stack[stackHeight++]=c; }
-void resetStack() {stackHeight=1;};
 
 void EBinit() {
    for (int v=0; v<nv; v++) {VisitedV[v]=false;};
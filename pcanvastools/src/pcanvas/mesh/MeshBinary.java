@@ -0,0 +1,222 @@
+package pcanvas.mesh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads and writes the binary mesh format (.vtb), a little-endian image of the mesh's tables that loads by bulk copy
+ * from a memory-mapped file instead of by parsing text.
+ * <br />
+ * <br />
+ * Layout: a 32 byte header (the bytes "PCMB", then int32 version, flags, vertex count and triangle count, then zero
+ * padding), followed by the blocks below in this order. Every block is a plain array, 4-byte aligned.
+ * <ul>
+ *     <li>positions: float32 x, y, z per vertex, as in {@link Mesh#G}</li>
+ *     <li>corners: int32 vertex index per corner, as in {@link Mesh#vertexTable}</li>
+ *     <li>opposites ({@link #OPPOSITES}): int32 per corner, as in {@link Mesh#vOppositeTable}</li>
+ *     <li>normals ({@link #NORMALS}): float32 x, y, z per vertex, then per triangle</li>
+ *     <li>visibility ({@link #VISIBILITY}): one byte per triangle, 1 when visible; absent when all are visible</li>
+ * </ul>
+ * Loading a file with cached opposites skips {@link Mesh#constructOppositesTable()}; loading cached normals leaves
+ * the mesh with up-to-date normals.
+ */
+final class MeshBinary {
+
+    static final int VERSION = 1;
+
+    /** Flag: the opposite table is stored. */
+    static final int OPPOSITES = 1;
+    /** Flag: vertex and triangle normals are stored. */
+    static final int NORMALS = 1 << 1;
+    /** Flag: per-triangle visibility is stored. */
+    static final int VISIBILITY = 1 << 2;
+
+    private static final byte[] MAGIC = {'P', 'C', 'M', 'B'};
+    private static final int HEADER_SIZE = 32;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private MeshBinary() {}
+
+    /**
+     * Writes the mesh. The opposite table is stored when it matches the corner table (a mesh built with
+     * {@link Mesh#addTriangle} may not have built it yet), normals only when they are up to date, and visibility only
+     * when some triangle is hidden.
+     * @param mesh the mesh to write.
+     * @param file the file to create or overwrite.
+     * @throws IOException if writing fails.
+     */
+    static void write(final Mesh mesh, final File file) throws IOException {
+        final int nv = mesh.numVerts, nt = mesh.numTriangles;
+        int flags = oppositesMatch(mesh) ? OPPOSITES : 0;
+        if (!mesh.allNormalsDirty && mesh.numDirtyVertices == 0) flags |= NORMALS;
+        for (int t = 0; t < nt; t++) {
+            if (!mesh.visible[t]) {
+                flags |= VISIBILITY;
+                break;
+            }
+        }
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            final FileChannel channel = raf.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.put(MAGIC).putInt(VERSION).putInt(flags).putInt(nv).putInt(nt);
+            buffer.position(HEADER_SIZE);
+
+            put(channel, buffer, mesh.G, 3 * nv);
+            put(channel, buffer, mesh.vertexTable, 3 * nt);
+            if ((flags & OPPOSITES) != 0) put(channel, buffer, mesh.vOppositeTable, 3 * nt);
+            if ((flags & NORMALS) != 0) {
+                put(channel, buffer, mesh.vertexNormals, 3 * nv);
+                put(channel, buffer, mesh.triangleNormals, 3 * nt);
+            }
+            if ((flags & VISIBILITY) != 0) {
+                for (int t = 0; t < nt; t++) {
+                    if (!buffer.hasRemaining()) flush(channel, buffer);
+                    buffer.put(mesh.visible[t] ? (byte) 1 : (byte) 0);
+                }
+            }
+            flush(channel, buffer);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Replaces the mesh's tables with the contents of a binary mesh file.
+     * @param file the file to read.
+     * @param mesh the mesh to load into.
+     * @throws IOException if reading fails.
+     */
+    static void read(final File file, final Mesh mesh) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            read(map, mesh);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Replaces the mesh's tables with the contents of a buffer holding a binary mesh file.
+     * @param bytes the file's bytes, from its first to its last.
+     * @param mesh the mesh to load into.
+     */
+    static void read(final ByteBuffer bytes, final Mesh mesh) {
+        final ByteBuffer in = bytes.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (in.remaining() < HEADER_SIZE) throw new IllegalArgumentException("Not a binary mesh: too short.");
+        for (byte b : MAGIC) {
+            if (in.get() != b) throw new IllegalArgumentException("Not a binary mesh: bad magic number.");
+        }
+        final int version = in.getInt(), flags = in.getInt(), nv = in.getInt(), nt = in.getInt();
+        if (version != VERSION) throw new IllegalArgumentException("Unsupported binary mesh version " + version + ".");
+        if (nv < 0 || nt < 0) throw new IllegalArgumentException("Negative counts in binary mesh header.");
+        long expected = HEADER_SIZE + 12L * nv + 12L * nt;
+        if ((flags & OPPOSITES) != 0) expected += 12L * nt;
+        if ((flags & NORMALS) != 0) expected += 12L * nv + 12L * nt;
+        if ((flags & VISIBILITY) != 0) expected += nt;
+        if (in.limit() < expected) {
+            throw new IllegalArgumentException("Truncated binary mesh: expected " + expected + " bytes.");
+        }
+        in.position(HEADER_SIZE);
+
+        mesh.ensureVertexCapacity(nv);
+        mesh.ensureTriangleCapacity(nt);
+        get(in, mesh.G, 3 * nv);
+        get(in, mesh.vertexTable, 3 * nt);
+        for (int c = 0; c < 3 * nt; c++) {
+            final int v = mesh.vertexTable[c];
+            if (v < 0 || v >= nv) throw new IllegalArgumentException("Vertex index " + v + " out of range at corner " + c + ".");
+        }
+        mesh.numVerts = nv;
+        mesh.numTriangles = nt;
+        mesh.numCorners = 3 * nt;
+
+        if ((flags & OPPOSITES) != 0) get(in, mesh.vOppositeTable, 3 * nt);
+        if ((flags & NORMALS) != 0) {
+            get(in, mesh.vertexNormals, 3 * nv);
+            get(in, mesh.triangleNormals, 3 * nt);
+        }
+        if ((flags & VISIBILITY) != 0) {
+            for (int t = 0; t < nt; t++) mesh.visible[t] = in.get() != 0;
+        } else {
+            Arrays.fill(mesh.visible, 0, nt, true);
+        }
+
+        // a cached table that does not fit the corners would send swings into endless loops; rebuild it instead
+        if ((flags & OPPOSITES) != 0 && oppositesMatch(mesh)) {
+            mesh.buildVertexCorners();
+            mesh.invalidateCornerFans();
+        } else {
+            mesh.constructOppositesTable();
+        }
+        if ((flags & NORMALS) != 0) {
+            mesh.markNormalsClean();
+        } else {
+            mesh.markAllNormalsDirty();
+        }
+    }
+
+    /** Checks in one pass that every opposite is mutual and faces the same edge, reversed. */
+    private static boolean oppositesMatch(final Mesh mesh) {
+        final int[] V = mesh.vertexTable, O = mesh.vOppositeTable;
+        final int nc = mesh.numCorners;
+        if (O == null) return false;
+        for (int c = 0; c < nc; c++) {
+            final int o = O[c];
+            if (o == -1) continue;
+            if (o < 0 || o >= nc || O[o] != c || o / 3 == c / 3) return false;
+            if (V[mesh.n(c)] != V[mesh.p(o)] || V[mesh.p(c)] != V[mesh.n(o)]) return false;
+        }
+        return true;
+    }
+
+    /* ========================================= BLOCK I/O ============================================== */
+
+    private static void put(final FileChannel channel, final ByteBuffer buffer, final float[] table, final int length)
+            throws IOException {
+        for (int i = 0; i < length; ) {
+            if (buffer.remaining() < 4) flush(channel, buffer);
+            final int count = Math.min(length - i, buffer.remaining() / 4);
+            buffer.asFloatBuffer().put(table, i, count);
+            buffer.position(buffer.position() + 4 * count);
+            i += count;
+        }
+    }
+
+    private static void put(final FileChannel channel, final ByteBuffer buffer, final int[] table, final int length)
+            throws IOException {
+        for (int i = 0; i < length; ) {
+            if (buffer.remaining() < 4) flush(channel, buffer);
+            final int count = Math.min(length - i, buffer.remaining() / 4);
+            buffer.asIntBuffer().put(table, i, count);
+            buffer.position(buffer.position() + 4 * count);
+            i += count;
+        }
+    }
+
+    private static void flush(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    private static void get(final ByteBuffer in, final float[] table, final int length) {
+        in.asFloatBuffer().get(table, 0, length);
+        in.position(in.position() + 4 * length);
+    }
+
+    private static void get(final ByteBuffer in, final int[] table, final int length) {
+        in.asIntBuffer().get(table, 0, length);
+        in.position(in.position() + 4 * length);
+    }
+}
@@ -0,0 +1,173 @@
+package pcanvas.mesh;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of loaded meshes, so switching back to a model skips parsing and adjacency building. Every
+ * {@link MeshLoader} load of a file goes through it.
+ * <br />
+ * <br />
+ * Entries are private snapshots of the tables a load produces (positions, corners, opposites, normals and
+ * visibility) and are copied into the caller's mesh on a hit, so editing a loaded mesh never touches the cache. An
+ * entry is only used while the file's modification time and size are unchanged. When the entries outgrow the memory
+ * budget, the least recently used ones are dropped.
+ */
+public final class MeshCache {
+
+    /** Default budget: 256 MB, or an eighth of the heap if that is smaller. */
+    private static final long DEFAULT_BUDGET = Math.min(256L << 20, Runtime.getRuntime().maxMemory() / 8);
+
+    /** Rough fixed cost of an entry beyond its tables. */
+    private static final long ENTRY_OVERHEAD = 256;
+
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75F, true);
+    private static long budget = DEFAULT_BUDGET;
+    private static long used = 0;
+
+    private MeshCache() {}
+
+    /**
+     * Sets how much memory cached meshes may take, evicting entries if they no longer fit. A budget of 0 turns the
+     * cache off.
+     * @param bytes the budget in bytes.
+     */
+    public static synchronized void setBudget(final long bytes) {
+        if (bytes < 0) throw new IllegalArgumentException("The cache budget must not be negative.");
+        budget = bytes;
+        evict();
+    }
+
+    public static synchronized long budget() {return budget;}
+    public static synchronized long usedBytes() {return used;}
+    public static synchronized int size() {return entries.size();}
+
+    /** Drops every cached mesh. */
+    public static synchronized void clear() {
+        entries.clear();
+        used = 0;
+    }
+
+    /**
+     * Drops the cached meshes of one file, in whatever format or with whatever options they were loaded.
+     * @param file the file.
+     */
+    public static synchronized void invalidate(final File file) {
+        final String prefix = file.getAbsolutePath() + '|';
+        for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<String, Entry> entry = it.next();
+            if (entry.getKey().startsWith(prefix)) {
+                used -= entry.getValue().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Builds the key a load is cached under; loads of the same file with different formats or options differ.
+     * @param file the file.
+     * @param options the format and any options that change the result.
+     * @return the key.
+     */
+    static String key(final File file, final String options) {
+        return file.getAbsolutePath() + '|' + options;
+    }
+
+    /**
+     * Copies a cached load into the mesh, if there is one and the file has not changed since.
+     * @param file the file, to check its modification time and size.
+     * @param key the key from {@link #key(File, String)}.
+     * @param mesh the mesh to load into.
+     * @return true if the mesh was filled from the cache.
+     */
+    static synchronized boolean restore(final File file, final String key, final Mesh mesh) {
+        final Entry entry = entries.get(key);
+        if (entry == null) return false;
+        if (entry.modified != file.lastModified() || entry.length != file.length()) {
+            entries.remove(key);
+            used -= entry.bytes;
+            return false;
+        }
+        entry.copyInto(mesh);
+        return true;
+    }
+
+    /**
+     * Caches a snapshot of a freshly loaded mesh. Its normals are computed first if they are out of date, so that
+     * later hits need not compute them either.
+     * @param key the key from {@link #key(File, String)}.
+     * @param modified the file's modification time when the load started.
+     * @param length the file's size when the load started.
+     * @param mesh the loaded mesh.
+     */
+    static void store(final String key, final long modified, final long length, final Mesh mesh) {
+        final long bytes = Entry.bytes(mesh);
+        synchronized (MeshCache.class) {
+            if (bytes > budget) return;
+        }
+        if (mesh.allNormalsDirty || mesh.numDirtyVertices > 0) mesh.normals();
+        final Entry entry = new Entry(mesh, modified, length, bytes);
+        synchronized (MeshCache.class) {
+            final Entry previous = entries.put(key, entry);
+            if (previous != null) used -= previous.bytes;
+            used += bytes;
+            evict();
+        }
+    }
+
+    private static void evict() {
+        for (Iterator<Entry> it = entries.values().iterator(); used > budget && it.hasNext(); ) {
+            used -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * A snapshot of the tables of one loaded mesh.
+     */
+    private static final class Entry {
+        final long modified, length, bytes;
+        final int numVerts, numTriangles;
+        final float[] G, vertexNormals, triangleNormals;
+        final int[] vertexTable, vOppositeTable;
+        final boolean[] visible;
+
+        Entry(final Mesh mesh, final long modified, final long length, final long bytes) {
+            this.modified = modified;
+            this.length = length;
+            this.bytes = bytes;
+            this.numVerts = mesh.numVerts;
+            this.numTriangles = mesh.numTriangles;
+            this.G = Arrays.copyOf(mesh.G, 3 * numVerts);
+            this.vertexNormals = Arrays.copyOf(mesh.vertexNormals, 3 * numVerts);
+            this.triangleNormals = Arrays.copyOf(mesh.triangleNormals, 3 * numTriangles);
+            this.vertexTable = Arrays.copyOf(mesh.vertexTable, 3 * numTriangles);
+            this.vOppositeTable = Arrays.copyOf(mesh.vOppositeTable, 3 * numTriangles);
+            this.visible = Arrays.copyOf(mesh.visible, numTriangles);
+        }
+
+        static long bytes(final Mesh mesh) {
+            return ENTRY_OVERHEAD + 24L * mesh.numVerts + 37L * mesh.numTriangles;
+        }
+
+        void copyInto(final Mesh mesh) {
+            mesh.ensureVertexCapacity(numVerts);
+            mesh.ensureTriangleCapacity(numTriangles);
+            System.arraycopy(G, 0, mesh.G, 0, G.length);
+            System.arraycopy(vertexNormals, 0, mesh.vertexNormals, 0, vertexNormals.length);
+            System.arraycopy(triangleNormals, 0, mesh.triangleNormals, 0, triangleNormals.length);
+            System.arraycopy(vertexTable, 0, mesh.vertexTable, 0, vertexTable.length);
+            System.arraycopy(vOppositeTable, 0, mesh.vOppositeTable, 0, vOppositeTable.length);
+            System.arraycopy(visible, 0, mesh.visible, 0, visible.length);
+            mesh.numVerts = numVerts;
+            mesh.numTriangles = numTriangles;
+            mesh.numCorners = 3 * numTriangles;
+            mesh.buildVertexCorners();
+            mesh.invalidateCornerFans();
+            mesh.markNormalsClean();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package pcanvas.mesh;
+
+/**
+ * Receives news about a mesh being loaded in the background, see {@link MeshLoader#LoadMeshAsync(String, MeshLoadListener)}.
+ * <br />
+ * <br />
+ * All three methods are called on the loader's thread, never on the animation thread. They should do little more
+ * than hand values over, e.g. by storing them in volatile fields that draw() picks up on its next frame.
+ */
+public interface MeshLoadListener {
+
+    /**
+     * Reports how far the load has come. Calls are made in increasing order of fraction, one at a time.
+     * @param fraction the share of the work done, from 0 to 1.
+     */
+    void progress(float fraction);
+
+    /**
+     * Hands over the mesh once it is completely built, including its opposite table. The loader keeps no reference
+     * to it.
+     * @param mesh the loaded mesh.
+     */
+    void loaded(Mesh mesh);
+
+    /**
+     * Reports that the load failed; {@link #loaded(Mesh)} will not be called.
+     * @param error what went wrong.
+     */
+    void failed(Exception error);
+}
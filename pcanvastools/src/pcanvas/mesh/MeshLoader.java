@@ -1,28 +1,33 @@
 package pcanvas.mesh;
 
 import javax.swing.JFileChooser;
-import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
-import pcanvas.Point;
 import processing.core.PApplet;
 
-import static processing.core.PApplet.loadStrings;
-
 /**
  * NOTE: This is an experimental class, and should not be used until I say so. Kthxbai. =)
  */
 public class MeshLoader {
 
+    private static ExecutorService saver, loader;
+
     protected static void LoadMesh(final String meshName, final Mesh mesh) {
         System.out.println(String.format("Attempting to load mesh: '%s'", meshName));
         String targetName = meshName;
 
-        if (meshName.split(".").length == 0) {
+        if (meshName.indexOf('.') < 0) {
             targetName += ".vts";
         }
 
@@ -30,249 +35,429 @@ public class MeshLoader {
     }
 
     protected static void LoadMesh(final File file, final Mesh mesh) {
-        try {
-            String[] contents = loadStrings(file);
-            int size = 0, numVerts = Integer.parseInt(contents[size++]);
-            int numTriangles, numCorners;
-            int a, b, c, comma1, comma2; float x, y, z;
-            mesh.numVerts = numVerts;
-
-            for (int k = 0; k < numVerts; k++) {
-                int i = k + size;
-                comma1 = contents[i].indexOf(',');
-                x = Float.parseFloat(contents[i].substring(0, comma1));
-                String rest = contents[i].substring(comma1 + 1, contents[i].length());
-                comma2 = rest.indexOf(",");
-                y = Float.parseFloat(rest.substring(0, comma2));
-                z = Float.parseFloat(rest.substring(comma2 + 1, rest.length()));
-                mesh.G[k].set(x, y, z);
-            }
-            size = numVerts + 1;
-            numTriangles = Integer.parseInt(contents[size]);
-            numCorners = 3 * numTriangles;
-            mesh.numTriangles = numTriangles;
-            mesh.numCorners = numCorners;
-            
-            size++;
-            for (int k = 0; k < numTriangles; k++) {
-                int i = k + size;
-                comma1 = contents[i].indexOf(',');
-                a = Integer.parseInt(contents[i].substring(0, comma1));
-                String rest = contents[i].substring(comma1 + 1, contents[i].length());
-                comma2 = rest.indexOf(',');
-                b = Integer.parseInt(rest.substring(0, comma2));
-                c = Integer.parseInt(rest.substring(comma2 + 1, rest.length()));
-                mesh.vertexTable[3 * k] = a;
-                mesh.vertexTable[3 * k + 1] = b;
-                mesh.vertexTable[3 * k + 1] = c;
+        loadReporting(file, mesh, "vts", 0F);
+    }
+
+    /**
+     * Reads a .vts mesh: the vertex count, one "x, y, z" line per vertex, the triangle count and one "a, b, c" line
+     * per triangle. The bytes are scanned straight into the mesh's tables through a fixed-size buffer, so no line or
+     * token strings are created and memory use does not grow with the file.
+     * @param in the stream to read; not closed.
+     * @param mesh the mesh to load into.
+     * @throws IOException if reading fails.
+     */
+    protected static void LoadMesh(final InputStream in, final Mesh mesh) throws IOException {
+        final MeshScanner scanner = new MeshScanner(in);
+        final int numVerts = scanner.nextInt();
+        if (numVerts < 0) throw new IllegalArgumentException("Negative vertex count: " + numVerts + ".");
+        mesh.ensureVertexCapacity(numVerts);
+        mesh.markAllNormalsDirty();
+        final float[] G = mesh.G;
+        for (int i = 0; i < 3 * numVerts; i++) {
+            G[i] = scanner.nextFloat();
+        }
+        mesh.numVerts = numVerts;
+
+        final int numTriangles = scanner.nextInt();
+        if (numTriangles < 0) throw new IllegalArgumentException("Negative triangle count: " + numTriangles + ".");
+        mesh.ensureTriangleCapacity(numTriangles);
+        final int[] vertexTable = mesh.vertexTable;
+        for (int c = 0; c < 3 * numTriangles; c++) {
+            final int v = scanner.nextInt();
+            if (v < 0 || v >= numVerts) {
+                throw new IllegalArgumentException("Vertex index " + v + " out of range on line " + scanner.line() + ".");
             }
-        } catch (final Exception ex) {
-            System.err.println(String.format("An error occurred while attempting to load mesh: '%s'.", file.getName()));
-            System.err.println(ex.getMessage());
-            ex.printStackTrace();
+            vertexTable[c] = v;
         }
+        mesh.numTriangles = numTriangles;
+        mesh.numCorners = 3 * numTriangles;
+        Arrays.fill(mesh.visible, 0, numTriangles, true);
+        mesh.constructOppositesTable();
     }
 
     protected static void LoadMeshObj(final String meshName, final Mesh mesh) {
         System.out.println(String.format("Attempting to load mesh: '%s'", meshName));
         String targetName = meshName;
 
-        if (meshName.split(".").length == 0) {
+        if (meshName.indexOf('.') < 0) {
             targetName += ".obj";
         }
 
         LoadMeshObj(new File(targetName), mesh);
     }
 
+    /**
+     * Reads a Wavefront OBJ mesh. Large files are memory-mapped and parsed on several cores; see {@link ObjLoader}
+     * for what is kept from the file.
+     * @param file the file to read.
+     * @param mesh the mesh to load into.
+     */
     protected static void LoadMeshObj(final File file, final Mesh mesh) {
-        //println("loading heart.obj");
-        String [] ss = loadStrings(file);
-        String subpts;
-        String S;
-        int comma1, comma2, a, b, c, s = 2;
-        float x, y, z;
-        int nn = ss[s].indexOf(':') + 2;
-        int numVerts = Integer.parseInt(ss[s++].substring(nn));
-        mesh.numVerts = numVerts;
+        loadReporting(file, mesh, "obj", 0F);
+    }
+
+
+    protected static void LoadMeshBinary(final String meshName, final Mesh mesh) {
+        System.out.println(String.format("Attempting to load mesh: '%s'", meshName));
+        String targetName = meshName;
+
+        if (meshName.indexOf('.') < 0) {
+            targetName += ".vtb";
+        }
+
+        LoadMeshBinary(new File(targetName), mesh);
+    }
+
+    /**
+     * Reads a binary mesh (.vtb) by bulk copy from a memory-mapped file; see {@link MeshBinary} for the layout. The
+     * opposite table and normals are taken from the file when it has them instead of being rebuilt.
+     * @param file the file to read.
+     * @param mesh the mesh to load into.
+     */
+    protected static void LoadMeshBinary(final File file, final Mesh mesh) {
+        loadReporting(file, mesh, "vtb", 0F);
+    }
+
+    protected static void LoadMeshPly(final String meshName, final Mesh mesh) {
+        System.out.println(String.format("Attempting to load mesh: '%s'", meshName));
+        String targetName = meshName;
+
+        if (meshName.indexOf('.') < 0) {
+            targetName += ".ply";
+        }
+
+        LoadMeshPly(new File(targetName), mesh);
+    }
+
+    /**
+     * Reads a PLY mesh, binary or ASCII; see {@link MeshPly} for what is kept from the file.
+     * @param file the file to read.
+     * @param mesh the mesh to load into.
+     */
+    protected static void LoadMeshPly(final File file, final Mesh mesh) {
+        loadReporting(file, mesh, "ply", 0F);
+    }
+
+    protected static void LoadMeshStl(final String meshName, final Mesh mesh) {
+        System.out.println(String.format("Attempting to load mesh: '%s'", meshName));
+        String targetName = meshName;
+
+        if (meshName.indexOf('.') < 0) {
+            targetName += ".stl";
+        }
+
+        LoadMeshStl(new File(targetName), mesh, 0F);
+    }
+
+    /**
+     * Reads a binary STL mesh, welding corners into shared vertices; see {@link MeshStl}.
+     * @param file the file to read.
+     * @param mesh the mesh to load into.
+     * @param weldTolerance corners closer than this become one vertex; 0 merges exact duplicates only.
+     */
+    protected static void LoadMeshStl(final File file, final Mesh mesh, final float weldTolerance) {
+        loadReporting(file, mesh, "stl", weldTolerance);
+    }
+
+    protected static Future<Mesh> LoadMeshAsync(final String meshName, final MeshLoadListener listener) {
+        String targetName = meshName;
+
+        if (meshName.indexOf('.') < 0) {
+            targetName += ".vts";
+        }
 
+        return LoadMeshAsync(new File(targetName), listener);
+    }
 
-        int k0=s;
-        for(int k = 0; k < numVerts; k++) {
-            int i=k+k0;
-            S=ss[i].substring(2);
-            //if(k == 0 || k == numVerts - 1) println(S);
-            comma1=S.indexOf(' ');
-            x = Float.parseFloat(S.substring(0, comma1));
-            String rest = S.substring(comma1+1);
-            comma2 = rest.indexOf(' ');
-            y = Float.parseFloat(rest.substring(0, comma2));
-            z = Float.parseFloat(rest.substring(comma2+1));
-            mesh.G[k].set(x,y,z);
-            if(k < 3 || k > numVerts - 4) {
-                //print("k="+k+" : "); G[k].write();
+    /**
+     * Loads a mesh on a background thread, so the sketch keeps drawing while a large model streams in. The format is
+     * chosen by extension (.obj, .vtb, .ply, .stl, otherwise .vts), and OBJ files are still parsed on the shared worker pool.
+     * <br />
+     * <br />
+     * The mesh is built in a new {@link Mesh} that nothing else can see, and is only handed out, through the future
+     * and {@link MeshLoadListener#loaded(Mesh)}, once its opposite table is complete. The sketch can therefore keep
+     * drawing its current mesh and swap the reference in a single assignment, e.g. when {@link Future#isDone()}
+     * turns true in draw(). Loads run one at a time, in the order they were requested.
+     * @param file the file to read.
+     * @param listener told about progress, success and failure; may be null.
+     * @return a future that yields the loaded mesh, or fails with the error that stopped the load.
+     */
+    protected static Future<Mesh> LoadMeshAsync(final File file, final MeshLoadListener listener) {
+        System.out.println(String.format("Attempting to load mesh: '%s'", file.getName()));
+        return loader().submit(new Callable<Mesh>() {
+            @Override
+            public Mesh call() throws Exception {
+                try {
+                    final LoadProgress progress = new LoadProgress(listener);
+                    progress.report(0F);
+                    final Mesh mesh = new Mesh();
+                    load(file, mesh, formatOf(file), 0F, progress);
+                    progress.report(1F);
+                    if (listener != null) listener.loaded(mesh);
+                    return mesh;
+                } catch (final Exception ex) {
+                    System.err.println(String.format("An error occurred while attempting to load mesh: '%s'.", file.getName()));
+                    System.err.println(ex.getMessage());
+                    ex.printStackTrace();
+                    if (listener != null) listener.failed(ex);
+                    throw ex;
+                }
             }
-            s++;
+        });
+    }
+
+    /** Loads a file for the synchronous entry points, which print failures instead of throwing them. */
+    private static void loadReporting(final File file, final Mesh mesh, final String format, final float weldTolerance) {
+        try {
+            load(file, mesh, format, weldTolerance, new LoadProgress(null));
+        } catch (final Exception ex) {
+            System.err.println(String.format("An error occurred while attempting to load mesh: '%s'.", file.getName()));
+            System.err.println(ex.getMessage());
+            ex.printStackTrace();
         }
-        s = s + 2;
-        //println("Triangles");
-        //println(ss[s]);
-        nn = ss[s].indexOf(':')+2;
-        int numTriangles = Integer.parseInt(ss[s].substring(nn)); 
-        int numCorners = 3 * numTriangles;
-        mesh.numTriangles = numTriangles;
-        mesh.numCorners = numCorners;
-        //println(", nt="+nt);
-        s++;
-        k0 = s;
-        for(int k = 0; k < numTriangles; k++) {
-            int i = k + k0;
-            S=ss[i].substring(2);                        
-            //if(k==0 || k==nt-1) println(S);
-            comma1=S.indexOf(' ');   a=Integer.parseInt(S.substring(0, comma1));
-            String rest = S.substring(comma1+1); comma2=rest.indexOf(' ');
-            b=Integer.parseInt(rest.substring(0, comma2)); c=Integer.parseInt(rest.substring(comma2+1));
-            mesh.vertexTable[3 * k] = a - 1;
-            mesh.vertexTable[3 * k + 1] = b - 1;
-            mesh.vertexTable[3 * k + 2] = c - 1;
+    }
+
+    /**
+     * Loads a file in the given format, going through {@link MeshCache} first; every file load ends up here.
+     * @param format the extension of the format, without the dot.
+     * @param weldTolerance the STL weld tolerance; ignored by the other formats.
+     */
+    private static void load(final File file, final Mesh mesh, final String format, final float weldTolerance,
+                             final LoadProgress progress) throws IOException {
+        final String key = MeshCache.key(file, format.equals("stl") ? format + ':' + weldTolerance : format);
+        if (MeshCache.restore(file, key, mesh)) return;
+        final long modified = file.lastModified(), length = file.length();
+
+        if (format.equals("obj")) {
+            ObjLoader.load(file, mesh, progress);
+        } else if (format.equals("vtb")) {
+            MeshBinary.read(file, mesh);
+        } else if (format.equals("ply")) {
+            MeshPly.read(file, mesh, progress);
+        } else if (format.equals("stl")) {
+            MeshStl.read(file, mesh, weldTolerance, progress);
+        } else {
+            final InputStream in = progress.track(new FileInputStream(file), length);
+            try {
+                LoadMesh(in, mesh);
+            } finally {
+                in.close();
+            }
         }
+        MeshCache.store(key, modified, length, mesh);
     }
 
+    /** Picks the format from the file's extension; anything unknown is read as .vts. */
+    private static String formatOf(final File file) {
+        final String name = file.getName().toLowerCase();
+        for (String format : new String[] {"obj", "vtb", "ply", "stl"}) {
+            if (name.endsWith("." + format)) return format;
+        }
+        return "vts";
+    }
 
     protected static void LoadMeshFromFile(final PApplet applet, final Mesh mesh) {
+        final File selected = chooseMeshFile(applet);
+        if (selected == null) return;
+        loadReporting(selected, mesh, formatOf(selected), 0F);
+    }
+
+    /**
+     * Lets the user pick a mesh file, then loads it in the background; see {@link #LoadMeshAsync(File, MeshLoadListener)}.
+     * @param applet the sketch, whose 'data' folder the chooser opens in.
+     * @param listener told about progress, success and failure; may be null.
+     * @return a future that yields the loaded mesh, or null when no file was picked.
+     */
+    protected static Future<Mesh> LoadMeshFromFileAsync(final PApplet applet, final MeshLoadListener listener) {
+        final File selected = chooseMeshFile(applet);
+        return (selected == null) ? null : LoadMeshAsync(selected, listener);
+    }
+
+    private static File chooseMeshFile(final PApplet applet) {
         final File dataDir = new File(applet.sketchPath, "data");        
         final JFileChooser chooser1 = new JFileChooser(dataDir);
 
         chooser1.showOpenDialog(applet);
 
-        if (chooser1.getSelectedFile().getName().split(".").length == 1) {
-            throw new IllegalArgumentException("Mesh files must have the extension \".vts\" or \".obj\"");
-        } else {
-            if (chooser1.getSelectedFile().getName().split(".")[1].equals("vts")) {
-                LoadMesh(chooser1.getSelectedFile(), mesh);
-            } else if (chooser1.getSelectedFile().getName().split(".")[1].equals("obj")) {
-                LoadMeshObj(chooser1.getSelectedFile(), mesh);
-            }
+        final File selected = chooser1.getSelectedFile();
+        if (selected == null) return null;
+        final String name = selected.getName().toLowerCase();
+        if (!name.endsWith(".vts") && !name.endsWith(".obj") && !name.endsWith(".vtb")
+                && !name.endsWith(".ply") && !name.endsWith(".stl")) {
+            throw new IllegalArgumentException("Mesh files must have the extension \".vts\", \".vtb\", \".obj\", \".ply\" or \".stl\"");
         }
+        return selected;
     }
 
     protected static void SaveMesh(final String meshName, final Mesh mesh) {
         SaveMesh(meshName, mesh, false);
     }
 
+    /**
+     * Saves the mesh as a .vts file. Numbers are formatted straight into a large output buffer, so no line strings
+     * or whole-file array are built.
+     * @param meshName the file name or path; ".vts" is appended when it has no extension.
+     * @param mesh the mesh to save.
+     * @param flipOrientation whether to reverse the orientation of every triangle.
+     */
     protected static void SaveMesh(final String meshName, final Mesh mesh, final Boolean flipOrientation) {
-        Integer numVerts = mesh.numVerts, numTriangles = mesh.numTriangles;
-        Point[] vertices = mesh.G;
-        int[] vertexTable = mesh.vertexTable;
-
-        // initialize array
-        String [] data = new String [numVerts + 1 + numTriangles + 1];
-        int s = 0;
-
-        // what are we doing here?
-        data[s++] = numVerts.toString();
-
-        for (int i = 0; i < numVerts; i++) {
-            data[s++] = String.format("%f, %f, %f", vertices[i].x, vertices[i].y,vertices[i].z);
+        final File file = saveFile(meshName, "vts");
+        try {
+            writeVts(file, mesh.G, mesh.numVerts, mesh.vertexTable, mesh.numTriangles, flipOrientation);
+        } catch (final IOException ioex) {
+            System.err.println("Error occurred while attempting to save mesh.");
+            System.err.println(ioex.getMessage());
+            ioex.printStackTrace();
         }
+    }
 
-        data[s++] = numTriangles.toString();
+    protected static Future<File> SaveMeshAsync(final String meshName, final Mesh mesh) {
+        return SaveMeshAsync(meshName, mesh, false);
+    }
 
-        if (flipOrientation) {
-            for (int i = 0; i < numTriangles; i++) {
-                data[s++] = String.format("%d, %d, %d", vertexTable[3*i], vertexTable[3*i+2], vertexTable[3*i+1]);
+    /**
+     * Saves the mesh as a .vts file on a background thread, so autosaves do not stall the sketch. The positions and
+     * corners are copied before this returns, so the mesh may be edited while the file is written. Saves run one at
+     * a time, in the order they were requested.
+     * @param meshName the file name or path; ".vts" is appended when it has no extension.
+     * @param mesh the mesh to save.
+     * @param flipOrientation whether to reverse the orientation of every triangle.
+     * @return a future that yields the written file, or fails with the error that stopped the save.
+     */
+    protected static Future<File> SaveMeshAsync(final String meshName, final Mesh mesh, final Boolean flipOrientation) {
+        final File file = saveFile(meshName, "vts");
+        final int numVerts = mesh.numVerts, numTriangles = mesh.numTriangles;
+        final float[] G = Arrays.copyOf(mesh.G, 3 * numVerts);
+        final int[] vertexTable = Arrays.copyOf(mesh.vertexTable, 3 * numTriangles);
+        return saver().submit(new Callable<File>() {
+            @Override
+            public File call() throws IOException {
+                try {
+                    writeVts(file, G, numVerts, vertexTable, numTriangles, flipOrientation);
+                    return file;
+                } catch (final IOException ioex) {
+                    System.err.println(String.format("Error occurred while attempting to save mesh: '%s'.", file.getName()));
+                    System.err.println(ioex.getMessage());
+                    ioex.printStackTrace();
+                    throw ioex;
+                }
             }
-        } else {
-            for (int i = 0; i < numTriangles; i++) {
-                data[s++] = String.format("%d, %d, %d", vertexTable[3*i], vertexTable[3*i+1], vertexTable[3*i+2]);
-            }
-        }
+        });
+    }
 
-        saveStrings(saveFile(meshName), data);
-        //println("saved on file");
+    /**
+     * Saves the mesh as a binary little-endian PLY file.
+     * @param meshName the file name or path; ".ply" is appended when it has no extension.
+     * @param mesh the mesh to save.
+     */
+    protected static void SaveMeshPly(final String meshName, final Mesh mesh) {
+        try {
+            MeshPly.write(mesh, saveFile(meshName, "ply"));
+        } catch (final IOException ioex) {
+            System.err.println("Error occurred while attempting to save PLY mesh.");
+            System.err.println(ioex.getMessage());
+            ioex.printStackTrace();
+        }
     }
 
-    private static void saveStrings(final File file, final String[] strings) {
+    /**
+     * Saves the mesh as a binary STL file.
+     * @param meshName the file name or path; ".stl" is appended when it has no extension.
+     * @param mesh the mesh to save.
+     */
+    protected static void SaveMeshStl(final String meshName, final Mesh mesh) {
         try {
-            FileOutputStream out = new FileOutputStream(file);
-            BufferedOutputStream bos = new BufferedOutputStream(out, 8192);
-            PrintWriter writer = new PrintWriter(new OutputStreamWriter(bos, "UTF-8"));
-            for (int i = 0; i < strings.length; i++) {
-                writer.println(strings[i]);
-            }
-            writer.flush();
-            writer.close();
+            MeshStl.write(mesh, saveFile(meshName, "stl"));
         } catch (final IOException ioex) {
-            System.err.println("Error occurred while attempting to save mesh strings.");
+            System.err.println("Error occurred while attempting to save STL mesh.");
             System.err.println(ioex.getMessage());
             ioex.printStackTrace();
         }
     }
 
-    private static File saveFile(String where) {
-        // If the given filename is null, throw an exception.
-        if (where == null) {
-            throw new IllegalArgumentException("Attempted to save a mesh with a null filename.");
+    private static void writeVts(final File file, final float[] G, final int numVerts, final int[] vertexTable,
+                                 final int numTriangles, final boolean flipOrientation) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            new MeshWriter(out).writeVts(G, numVerts, vertexTable, numTriangles, flipOrientation);
+        } finally {
+            out.close();
+            MeshCache.invalidate(file);
         }
+    }
 
-        String[] filePath = where.split(File.separator);
-        String[] fileName = filePath[filePath.length - 1].split(".");
-        String fileDestination = "";
+    /** Lazily created single daemon thread for background saves. */
+    private static synchronized ExecutorService saver() {
+        if (saver == null) saver = daemonExecutor("pcanvas-mesh-saver");
+        return saver;
+    }
 
-        // Check if the filename already has ".vts" as part of its name, if not, append it. If it has
-        // some unknown extension, throw an exception.
-        if (fileName.length == 1) {
-            for (int i = 0; i < filePath.length; i++) {
-                fileDestination += filePath[i] + File.separator;
-            }
-            fileDestination += ".vts";
-        } else if (fileName.length > 1) {
-            if (!fileName[1].equals("vts")) {
-                throw new IllegalArgumentException("Mesh files must be saved in the \"filename.vts\" format.");
+    /**
+     * Lazily created single daemon thread for background loads. It is not one of the {@link pcanvas.concurrent.Workers}
+     * threads, so loads can still split their own work across that pool.
+     */
+    private static synchronized ExecutorService loader() {
+        if (loader == null) loader = daemonExecutor("pcanvas-mesh-loader");
+        return loader;
+    }
+
+    private static ExecutorService daemonExecutor(final String name) {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
             }
-        }
-        return new File(assertSketchPath(fileDestination));
+        });
     }
 
-    private static String assertSketchPath(final String where) {
+    /**
+     * Saves the mesh in the binary format (.vtb), with its opposite table and, when they are up to date, its normals,
+     * so that loading it needs neither rebuilt.
+     * @param meshName the file name or path; ".vtb" is appended when it has no extension.
+     * @param mesh the mesh to save.
+     */
+    protected static void SaveMeshBinary(final String meshName, final Mesh mesh) {
         try {
+            MeshBinary.write(mesh, saveFile(meshName, "vtb"));
+        } catch (final IOException ioex) {
+            System.err.println("Error occurred while attempting to save binary mesh.");
+            System.err.println(ioex.getMessage());
+            ioex.printStackTrace();
+        }
+    }
 
-            String[] filePath = where.split(File.separator);
-            String[] dirs = new String[filePath.length - 1];
-            String savePath = "";
-            if (dirs.length > 0) {
-                System.arraycopy(filePath, 0, dirs, 0, filePath.length - 1);
-                savePath = inflateDirectories(dirs);
-            } else {
-                System.out.println("No save directory specificed. Saving mesh to 'data' folder.");
-                savePath = inflateDirectories("data");
-            }
-
-            return savePath + filePath[filePath.length - 1];            
+    /**
+     * Resolves where a mesh is saved: the extension is appended when the name has none, a name without a directory
+     * goes into the 'data' folder, and missing directories are created. Cached loads of the file are dropped.
+     * @param where the requested file name or path.
+     * @param extension the extension the file must have, without the dot.
+     * @return the file to write.
+     */
+    private static File saveFile(final String where, final String extension) {
+        // If the given filename is null, throw an exception.
+        if (where == null) {
+            throw new IllegalArgumentException("Attempted to save a mesh with a null filename.");
+        }
 
-        } catch (final Exception ex) {
-            System.err.println("An error occurred while attempting to save the mesh.");
-            System.err.println(ex.getMessage());
-            ex.printStackTrace();
-            return null;
+        final File requested = new File(where);
+        String name = requested.getName();
+        final int dot = name.lastIndexOf('.');
+        if (dot < 0) {
+            name += "." + extension;
+        } else if (!name.substring(dot + 1).equals(extension)) {
+            throw new IllegalArgumentException("Mesh files must be saved in the \"filename." + extension + "\" format.");
         }
-    }
 
-    private static String inflateDirectories(final String ... filePath) {
-        try {
-            System.out.println("Inflating directories for save path...");
-            String path = "";
-            for (int i = 0; i < filePath.length; i++) {
-                String dir = filePath[i];
-                path += (i != filePath.length) ? (dir + File.separator) : dir;
-            }
-            File directory = new File(path);
-            directory.mkdirs();
-            return path;
-        } catch (final Exception ex) {
-            System.err.println("An error occurred while attempting to inflate directories for mesh file save.");
-            System.err.println(ex.getMessage());
-            ex.printStackTrace();
-            return null;
+        File directory = requested.getParentFile();
+        if (directory == null) {
+            System.out.println("No save directory specificed. Saving mesh to 'data' folder.");
+            directory = new File("data");
         }
+        directory.mkdirs();
+        final File file = new File(directory, name);
+        MeshCache.invalidate(file);     // the old contents may share the new file's size and timestamp
+        return file;
     }
 }
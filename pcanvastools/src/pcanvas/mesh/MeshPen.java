@@ -1,17 +1,36 @@
 package pcanvas.mesh;
 
+import java.util.Arrays;
+
 import pcanvas.Point;
 import pcanvas.Vector;
+import pcanvas.camera.Camera;
 import pcanvas.draw.Colors;
 import pcanvas.draw.CanvasPen3D;
+import pcanvas.draw.ShapeBuffer;
+import pcanvas.draw.SphereGlyph;
+import pcanvas.geom.Frustum;
 import processing.core.PApplet;
 
 import static pcanvas.Point.midPoint;
-import static pcanvas.Vector.scaleVector;
+import static processing.core.PApplet.LINES;
+import static processing.core.PApplet.POINTS;
 import static processing.core.PApplet.TRIANGLES;
 
 /**
  * NOTE: This is an experimental class, and should not be used until I say so. Kthxbai. =)
+ * <br />
+ * <br />
+ * The shaded triangles, edges, borders and normals are each kept in a {@link ShapeBuffer} that is only refilled when
+ * the mesh's {@link Mesh#version()} or the layer's own settings change, so a still mesh costs one draw per layer.
+ * Vertices are drawn as {@link SphereGlyph}s whose detail follows their size on screen, or as single pixels once
+ * they are smaller than that.
+ * <br />
+ * <br />
+ * The shaded triangles are split into {@link TriangleClusters}, each with its own buffer. When a {@link Camera} is
+ * set, clusters outside its view frustum are skipped, and so are clusters whose triangles all face away from it,
+ * unless {@link #cullBackFaces} is off. Facing follows the mesh's triangle normals, so it needs a mesh whose triangles
+ * are all wound the same way; and the frustum is only right when the mesh is drawn without transforms of its own.
  */
 public class MeshPen extends CanvasPen3D {
 
@@ -21,8 +40,46 @@ public class MeshPen extends CanvasPen3D {
 
     protected float lightMode = 0;
 
+    /** Whether shaded clusters facing away from the camera are skipped; turn off to see into open meshes. */
+    protected boolean cullBackFaces = true;
+
     private Mesh mesh;
 
+    /** The camera the shaded triangles are culled against, or null to draw them all. */
+    private Camera camera;
+    private final Frustum frustum = new Frustum();
+
+    /** Scratch point for reading vertex positions out of the mesh's packed geometry table. */
+    private final Point vertexPoint = new Point(0F, 0F, 0F);
+
+    /** Scratch vector for reading normals out of the mesh's packed normal tables. */
+    private final Vector normalVector = new Vector(0F, 0F, 0F);
+
+    /** The most vertices the vertex glyph layer may hold; large meshes get coarser glyphs, or pixels, to stay under it. */
+    private static final int MAX_GLYPH_VERTICES = 1 << 22;
+
+    /** What the shaded layer shows. */
+    private static final int SHADE_ORANGE = 0, SHADE_WHITE = 1, SHADE_DISTANCES = 2, SHADE_EB = 3;
+
+    /** The most triangles in one culling cluster: enough to keep the per-cluster draw calls few. */
+    private static final int CLUSTER_SIZE = 2048;
+
+    /** The cached layers. The shaded layer's triangles are in the clusters' buffers; it only keeps their key. */
+    private final Layer shaded = new Layer(), edges = new Layer(LINES), borders = new Layer(LINES);
+    private final Layer normals = new Layer(LINES);
+    private final Layer vertexGlyphs = new Layer(TRIANGLES), vertexPixels = new Layer(POINTS);
+
+    /** The clusters of the shaded triangles, rebuilt when the mesh changes, with one buffer per leaf. */
+    private final TriangleClusters clusters = new TriangleClusters(CLUSTER_SIZE);
+    private final Layer clusterTree = new Layer();
+    private ShapeBuffer[] clusterBuffers = new ShapeBuffer[0];
+    private int[] drawnClusters = new int[0];
+
+    /** The center of the mesh's bounding box, where the size of the vertex glyphs on screen is measured. */
+    private final Point meshCenter = new Point(0F, 0F, 0F);
+    private Mesh centerMesh;
+    private int centerVersion;
+
     private MeshPen(final PApplet applet, final Mesh mesh) {
         super(applet);
         this.mesh = mesh;
@@ -32,6 +89,10 @@ public class MeshPen extends CanvasPen3D {
         this.mesh = mesh;
     }
 
+    private void setCamera(final Camera camera) {
+        this.camera = camera;
+    }
+
     private void drawMesh() {
         this.drawMesh(false);
     }
@@ -45,47 +106,45 @@ public class MeshPen extends CanvasPen3D {
         this.applet.noStroke();
         
         if (showDistances) {
-            showDistances();
+            showShaded(SHADE_DISTANCES);
         } else if (showEB) {
-            showEB();
+            showShaded(SHADE_EB);
         } else if (showTriangles) {
-            showTriangles();
+            showShaded((lightMode == 0) ? SHADE_ORANGE : SHADE_WHITE);
         }
 
         if (showEdges) {
-            this.setStrokeColor(Colors.BLUE);
-            for(int i=0; i < mesh.numCorners; i++) {
-                if(mesh.visible[mesh.cornerAsTriangle(i)]) {
-                    drawEdge(i);
+            if (edges.rebuild(mesh, 0)) {
+                edges.buffer.color(Colors.BLUE.getRgb());
+                for(int i=0; i < mesh.numCorners; i++) {
+                    if (mesh.visible[mesh.cornerAsTriangle(i)] && isFirstSideOfEdge(i)) {
+                        addEdge(edges.buffer, i);
+                    }
                 }
             }
-
+            this.drawBuffer(edges.buffer);
         }
         if (showSelectedTriangle) {
             this.applet.noStroke();
             this.setFillColor(Colors.GREEN);
-            this.shade(mesh.cornerAsTriangle());
+            this.shadeNow(mesh.cornerAsTriangle());
             this.applet.noFill();
         }
 
-        this.setStrokeColor(Colors.RED);
         this.showBorder();
 
         if (showVertices) {
-            this.applet.noStroke();
-            this.applet.noSmooth();
-            this.setFillColor(Colors.WHITE);
-            for (int v=0; v<mesh.numVerts; v++) {
-                this.drawPoint3D(mesh.G[v], pointRadius);
-                this.applet.noFill();
-            }
+            this.showVertices();
         }
 
         if (showNormals) {
-            this.setStrokeColor(Colors.BLUE);
-            this.showTriangleNormals();
-            this.setStrokeColor(Colors.MAGENTA);
-            this.showVertexNormals();
+            if (normals.rebuild(mesh, vertexRadius)) {
+                normals.buffer.color(Colors.BLUE.getRgb());
+                this.showTriangleNormals();
+                normals.buffer.color(Colors.MAGENTA.getRgb());
+                this.showVertexNormals();
+            }
+            this.drawBuffer(normals.buffer);
         }
 
         if (showLabels) {
@@ -93,7 +152,7 @@ public class MeshPen extends CanvasPen3D {
             Point toDraw;
             // draw labesl on vertices
             for (int i=0; i<mesh.numVerts; i++) {
-                toDraw = mesh.G[i];
+                toDraw = mesh.getPoint(i, vertexPoint);
                 this.drawPointLabel3D(toDraw, String.format("v%d", i), pointLabelDisplacement);
                 //label("v"+str(i),labelD);
             }
@@ -120,61 +179,131 @@ public class MeshPen extends CanvasPen3D {
         this.showCorner(mesh.currCorner, 2*pointRadius);
     }
 
-    private void showDistances() {
-        //for(int t=0; t<nt; t++) {if(Mt[t]==0) fill(cyan); else fill(ramp(Mt[t],rings)); shade(t);};
-        for (int t = 0; t < mesh.numTriangles; t++) {
-            if (mesh.triangleMarkers[t] == 0) {
-                this.setFillColor(Colors.CYAN);
-            } else {
-                this.applet.fill(Colors.ramp(mesh.triangleMarkers[t], mesh.rings));
-                this.shade(t);
+    private void showShaded(final int mode) {
+        if (clusterTree.rebuild(mesh, 0)) {
+            clusters.build(mesh);
+            if (clusterBuffers.length < clusters.leafCount()) {
+                clusterBuffers = Arrays.copyOf(clusterBuffers, clusters.leafCount());
+                drawnClusters = new int[clusters.leafCount()];
+            }
+        }
+        if (shaded.rebuild(mesh, mode)) {
+            for (int leaf = 0; leaf < clusters.leafCount(); leaf++) {
+                if (clusterBuffers[leaf] == null) clusterBuffers[leaf] = new ShapeBuffer(TRIANGLES);
+                final ShapeBuffer buffer = clusterBuffers[leaf].clear();
+                buffer.ensureCapacity(3 * (clusters.leafEnd(leaf) - clusters.leafStart(leaf)));
+                for (int i = clusters.leafStart(leaf); i < clusters.leafEnd(leaf); i++) {
+                    final int t = clusters.order[i];
+                    buffer.color(shadeColor(mode, t));
+                    this.shade(buffer, t);
+                }
             }
         }
-    }
-
-    private void showEB() {
-        char[] triangleSymbols = mesh.triangleSymbol;
-        for(int t=0; t<mesh.numTriangles; t++) {
-            this.setFillColor(Colors.CYAN);
-            if (triangleSymbols[t]=='w') {this.setFillColor(Colors.WHITE);}
-            if (triangleSymbols[t]=='B') {this.setFillColor(Colors.BLACK);}
-            if (triangleSymbols[t]=='C') {this.setFillColor(Colors.YELLOW);}
-            if (triangleSymbols[t]=='L') {this.setFillColor(Colors.BLUE);}
-            if (triangleSymbols[t]=='E') {this.setFillColor(Colors.MAGENTA);}
-            if (triangleSymbols[t]=='R') {this.setFillColor(Colors.ORANGE);}
-            if (triangleSymbols[t]=='S') {this.setFillColor(Colors.RED);}
-            this.shade(t);
-         }
-    }
 
-    private void showTriangles() {
-        // if (lightingmode==0) fill(orange); else fill(white); for(int t=0; t<nt; t++)  shade(t); noFill();
-        if (lightMode == 0) {
-            this.setFillColor(Colors.ORANGE);
+        int count = clusters.leafCount();
+        if (camera != null) {
+            count = clusters.collect(camera.frustum(frustum), cullBackFaces, drawnClusters);
         } else {
-            this.setFillColor(Colors.WHITE);
+            for (int leaf = 0; leaf < count; leaf++) drawnClusters[leaf] = leaf;
         }
+        for (int i = 0; i < count; i++) {
+            this.drawBuffer(clusterBuffers[drawnClusters[i]]);
+        }
+    }
 
-        for (int t = 0; t < mesh.numTriangles; t++) {
-            this.shade(t);
+    private int shadeColor(final int mode, final int t) {
+        switch (mode) {
+            case SHADE_DISTANCES:
+                //for(int t=0; t<nt; t++) {if(Mt[t]==0) fill(cyan); else fill(ramp(Mt[t],rings)); shade(t);};
+                if (mesh.triangleMarkers[t] == 0) return Colors.CYAN.getRgb();
+                return Colors.ramp(mesh.triangleMarkers[t], mesh.rings);
+            case SHADE_EB:
+                Colors color = Colors.CYAN;
+                char symbol = mesh.triangleSymbol[t];
+                if (symbol=='w') {color = Colors.WHITE;}
+                if (symbol=='B') {color = Colors.BLACK;}
+                if (symbol=='C') {color = Colors.YELLOW;}
+                if (symbol=='L') {color = Colors.BLUE;}
+                if (symbol=='E') {color = Colors.MAGENTA;}
+                if (symbol=='R') {color = Colors.ORANGE;}
+                if (symbol=='S') {color = Colors.RED;}
+                return color.getRgb();
+            default:
+                // if (lightingmode==0) fill(orange); else fill(white); for(int t=0; t<nt; t++)  shade(t); noFill();
+                return ((mode == SHADE_ORANGE) ? Colors.ORANGE : Colors.WHITE).getRgb();
         }
-        this.applet.noFill();
     }
 
     private void showTriangleNormals() {
         //for (int i=0; i<nt; i++) S(10*r,U(Nt[i])).show(triCenter(i));
         for (int i = 0; i < mesh.numTriangles; i++) {
-            Vector normal =  scaleVector(mesh.triangleNormals[i].clone().normalize(), 10 * vertexRadius);
-            this.drawVector(mesh.triangleCenter(i), normal);
+            Vector normal = mesh.getTriangleNormal(i, normalVector).normalize().scale(10 * vertexRadius);
+            this.addVector(normals.buffer, mesh.triangleCenter(i), normal);
         }
     }
 
     private void showVertexNormals() {
         //S(10*r,Nv[i]).show(G[i]);
         for (int i = 0; i < mesh.numVerts; i++) {
-            Vector normal = scaleVector(mesh.vertexNormals[i], 10 * vertexRadius);
-            this.drawVector(mesh.G[i], normal);
+            Vector normal = mesh.getVertexNormal(i, normalVector).scale(10 * vertexRadius);
+            this.addVector(normals.buffer, mesh.getPoint(i, vertexPoint), normal);
+        }
+    }
+
+    private void showVertices() {
+        if (mesh.numVerts == 0) return;
+        final float pixels = this.screenRadius(meshCenter(), pointRadius);
+        final boolean tooMany = (long) mesh.numVerts * SphereGlyph.of(SphereGlyph.MIN_SEGMENTS).vertexCount()
+                                > MAX_GLYPH_VERTICES;
+        if (pixels < 0.5F || tooMany) {
+            // smaller than a pixel, a glyph would only flicker in and out: plot the pixel instead; the same goes for
+            // meshes so large that even the coarsest glyphs would not fit under the cap
+            if (vertexPixels.rebuild(mesh, 0)) {
+                final float[] g = mesh.G;
+                vertexPixels.buffer.ensureCapacity(mesh.numVerts).color(Colors.WHITE.getRgb());
+                for (int v = 0; v < mesh.numVerts; v++) {
+                    vertexPixels.buffer.vertex(g[3*v], g[3*v+1], g[3*v+2]);
+                }
+            }
+            this.applet.pushStyle();
+            this.applet.strokeWeight(1);
+            this.drawBuffer(vertexPixels.buffer);
+            this.applet.popStyle();
+            return;
         }
+
+        // coarser glyphs for smaller spheres; the detail steps keep the layer from being rebuilt at every zoom step
+        int segments = (pixels < 3) ? SphereGlyph.MIN_SEGMENTS : (pixels < 8) ? 8 : (pixels < 16) ? 12 : 16;
+        while (segments > SphereGlyph.MIN_SEGMENTS
+               && (long) mesh.numVerts * SphereGlyph.of(segments).vertexCount() > MAX_GLYPH_VERTICES) {
+            segments -= 4;
+        }
+        if (vertexGlyphs.rebuild(mesh, 64 * pointRadius + segments)) {
+            final SphereGlyph glyph = SphereGlyph.of(segments);
+            final float[] g = mesh.G;
+            vertexGlyphs.buffer.ensureCapacity(mesh.numVerts * glyph.vertexCount()).color(Colors.WHITE.getRgb());
+            for (int v = 0; v < mesh.numVerts; v++) {
+                glyph.add(vertexGlyphs.buffer, g[3*v], g[3*v+1], g[3*v+2], pointRadius);
+            }
+        }
+        this.drawBuffer(vertexGlyphs.buffer);
+    }
+
+    private Point meshCenter() {
+        if (centerMesh != mesh || centerVersion != mesh.version()) {
+            final float[] g = mesh.G;
+            float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+            float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+            for (int i = 0; i < 3 * mesh.numVerts; i += 3) {
+                minX = Math.min(minX, g[i]);     maxX = Math.max(maxX, g[i]);
+                minY = Math.min(minY, g[i+1]);   maxY = Math.max(maxY, g[i+1]);
+                minZ = Math.min(minZ, g[i+2]);   maxZ = Math.max(maxZ, g[i+2]);
+            }
+            meshCenter.set((minX + maxX) / 2, (minY + maxY) / 2, (minZ + maxZ) / 2);
+            centerMesh = mesh;
+            centerVersion = mesh.version();
+        }
+        return meshCenter;
     }
 
     private void showCorner(final int corner, final int radius) {
@@ -188,21 +317,50 @@ public class MeshPen extends CanvasPen3D {
     }
 
     private void showBorder() {
-        for (int i=0; i< mesh.numCorners; i++) {
-            if (mesh.visible[mesh.cornerAsTriangle(i)] && mesh.isBorder(i)) {
-                drawEdge(i);
+        if (borders.rebuild(mesh, 0)) {
+            borders.buffer.color(Colors.RED.getRgb());
+            for (int i=0; i< mesh.numCorners; i++) {
+                if (mesh.visible[mesh.cornerAsTriangle(i)] && mesh.isBorder(i)) {
+                    addEdge(borders.buffer, i);
+                }
             }
         }
+        this.drawBuffer(borders.buffer);
     }
 
+    // true for one of the two corners facing each edge, so edges shared by two visible triangles are drawn once
+    private boolean isFirstSideOfEdge(int c) {
+        final int o = mesh.vOppositeTable[c];
+        return o < 0 || c < o || !mesh.visible[mesh.cornerAsTriangle(o)];
+    }
+
+    // adds edge of t(c) opposite to corner c
+    private void addEdge(final ShapeBuffer buffer, int c) {
+        final float[] g = mesh.G;
+        final int a = 3 * mesh.v(mesh.previousCorner(c)), b = 3 * mesh.v(mesh.nextCorner(c));
+        buffer.vertex(g[a], g[a+1], g[a+2]);
+        buffer.vertex(g[b], g[b+1], g[b+2]);
+    }
 
-    // draws edge of t(c) opposite to corner c
-    private void drawEdge(int c) {
-        this.drawLineSegments(mesh.getVertex(mesh.previousCorner(c)),mesh.getVertex(mesh.nextCorner(c)));
+    private void addVector(final ShapeBuffer buffer, final Point from, final Vector vector) {
+        buffer.vertex(from.x, from.y, from.z);
+        buffer.vertex(from.x + vector.x, from.y + vector.y, from.z + vector.z);
     }
 
-    // shade triangles
-    private void shade(int t) {
+    // adds triangle t to a shaded cluster's buffer, with its face normal; the clusters only hold visible triangles
+    private void shade(final ShapeBuffer buffer, int t) {
+        final float[] g = mesh.G;
+        final int a = 3 * mesh.vertexTable[3*t], b = 3 * mesh.vertexTable[3*t+1], c = 3 * mesh.vertexTable[3*t+2];
+        final float ux = g[b] - g[a], uy = g[b+1] - g[a+1], uz = g[b+2] - g[a+2];
+        final float vx = g[c] - g[a], vy = g[c+1] - g[a+1], vz = g[c+2] - g[a+2];
+        buffer.normal(uy * vz - uz * vy, uz * vx - ux * vz, ux * vy - uy * vx);
+        buffer.vertex(g[a], g[a+1], g[a+2]);
+        buffer.vertex(g[b], g[b+1], g[b+2]);
+        buffer.vertex(g[c], g[c+1], g[c+2]);
+    }
+
+    // draws triangle t on its own, with the current fill
+    private void shadeNow(int t) {
         if(mesh.visible[t]) {
             this.applet.beginShape(TRIANGLES);
             this.plotPoint(mesh.getVertex(3*t));
@@ -211,4 +369,30 @@ public class MeshPen extends CanvasPen3D {
             this.applet.endShape();
         }
     }
-}
+
+    /** One cached layer of the drawing, refilled only when the mesh or the layer's settings change. */
+    private static final class Layer {
+        final ShapeBuffer buffer;
+        private Mesh mesh;
+        private int version, settings;
+
+        Layer(final int kind) {
+            this.buffer = new ShapeBuffer(kind);
+        }
+
+        // a layer whose contents are kept elsewhere, tracking only what they were built from
+        Layer() {
+            this.buffer = null;
+        }
+
+        // true, with the buffer (if any) cleared, if the layer must be refilled for this mesh and settings
+        boolean rebuild(final Mesh mesh, final int settings) {
+            if (mesh == this.mesh && mesh.version() == version && settings == this.settings) return false;
+            this.mesh = mesh;
+            this.version = mesh.version();
+            this.settings = settings;
+            if (buffer != null) buffer.clear();
+            return true;
+        }
+    }
+}
\ No newline at end of file
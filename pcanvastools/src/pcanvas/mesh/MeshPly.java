@@ -0,0 +1,391 @@
+package pcanvas.mesh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads and writes PLY files. Reading accepts the binary (either byte order) and ASCII encodings and any property
+ * layout: the x, y and z properties of the "vertex" element and the vertex_indices (or vertex_index) list of the
+ * "face" element are kept, every other property and element is read past. Polygons are split into triangle fans.
+ * Writing always produces binary little-endian files with float positions and int indices.
+ */
+final class MeshPly {
+
+    private static final int CHAR = 0, UCHAR = 1, SHORT = 2, USHORT = 3, INT = 4, UINT = 5, FLOAT = 6, DOUBLE = 7;
+    private static final int[] SIZES = {1, 1, 2, 2, 4, 4, 4, 8};
+    private static final int MAX_HEADER_LINE = 4096;
+    private static final int PROGRESS_INTERVAL = 1 << 16;
+
+    private MeshPly() {}
+
+    /**
+     * Replaces the mesh's vertices and triangles with the contents of a PLY file.
+     * @param file the file to read.
+     * @param mesh the mesh to load into.
+     * @param progress where to report progress, or null.
+     * @throws IOException if reading fails.
+     */
+    static void read(final File file, final Mesh mesh, final LoadProgress progress) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final ChannelInput input = new ChannelInput(channel);
+            final List<Element> elements = new ArrayList<Element>();
+            final String format = readHeader(input, elements);
+
+            final Loaded loaded = new Loaded(elements, format.equals("ascii"), channel.size() - input.offset());
+            if (format.equals("ascii")) {
+                channel.position(input.offset());
+                final MeshScanner scanner = new MeshScanner(Channels.newInputStream(channel));
+                for (Element element : elements) readAscii(scanner, element, loaded);
+            } else {
+                input.order(format.equals("binary_big_endian") ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+                final long size = channel.size();
+                for (Element element : elements) readBinary(input, element, loaded, progress, size);
+            }
+            loaded.into(mesh);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes the mesh as a binary little-endian PLY file.
+     * @param mesh the mesh to write.
+     * @param file the file to create or overwrite.
+     * @throws IOException if writing fails.
+     */
+    static void write(final Mesh mesh, final File file) throws IOException {
+        final int nv = mesh.numVerts, nt = mesh.numTriangles;
+        final String header = "ply\n"
+            + "format binary_little_endian 1.0\n"
+            + "comment written by pcanvas\n"
+            + "element vertex " + nv + "\n"
+            + "property float x\n"
+            + "property float y\n"
+            + "property float z\n"
+            + "element face " + nt + "\n"
+            + "property list uchar int vertex_indices\n"
+            + "end_header\n";
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            final FileChannel channel = raf.getChannel();
+            final ByteBuffer out = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            out.put(header.getBytes("US-ASCII"));
+            final float[] G = mesh.G;
+            for (int v = 0; v < nv; v++) {
+                if (out.remaining() < 12) flush(channel, out);
+                out.putFloat(G[3*v]).putFloat(G[3*v+1]).putFloat(G[3*v+2]);
+            }
+            final int[] V = mesh.vertexTable;
+            for (int t = 0; t < nt; t++) {
+                if (out.remaining() < 13) flush(channel, out);
+                out.put((byte) 3).putInt(V[3*t]).putInt(V[3*t+1]).putInt(V[3*t+2]);
+            }
+            flush(channel, out);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /* ============================================ HEADER ============================================== */
+
+    /** Parses the header into elements and returns the format name. */
+    private static String readHeader(final ChannelInput input, final List<Element> elements) throws IOException {
+        if (!readLine(input).equals("ply")) throw new IllegalArgumentException("Not a PLY file.");
+        String format = null;
+        for (String line = readLine(input); !line.equals("end_header"); line = readLine(input)) {
+            final String[] words = line.trim().split("\\s+");
+            if (words[0].equals("format")) {
+                format = words[1];
+                if (!format.equals("ascii") && !format.equals("binary_little_endian") && !format.equals("binary_big_endian")) {
+                    throw new IllegalArgumentException("Unknown PLY format '" + format + "'.");
+                }
+            } else if (words[0].equals("element")) {
+                final long count = Long.parseLong(words[2]);
+                if (count < 0) throw new IllegalArgumentException("Negative count for PLY element '" + words[1] + "'.");
+                elements.add(new Element(words[1], count));
+            } else if (words[0].equals("property")) {
+                if (elements.isEmpty()) throw new IllegalArgumentException("PLY property outside of an element.");
+                final Property property = words[1].equals("list")
+                    ? new Property(words[4], type(words[3]), type(words[2]))
+                    : new Property(words[2], type(words[1]), -1);
+                elements.get(elements.size() - 1).properties.add(property);
+            }
+            // comment and obj_info lines carry nothing we need
+        }
+        if (format == null) throw new IllegalArgumentException("The PLY header has no format line.");
+        return format;
+    }
+
+    private static String readLine(final ChannelInput input) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        for (int c = input.require(1).get(); c != '\n'; c = input.require(1).get()) {
+            if (c != '\r') line.append((char) (c & 0xFF));
+            if (line.length() > MAX_HEADER_LINE) throw new IllegalArgumentException("PLY header line too long.");
+        }
+        return line.toString();
+    }
+
+    private static int type(final String name) {
+        if (name.equals("char") || name.equals("int8")) return CHAR;
+        if (name.equals("uchar") || name.equals("uint8")) return UCHAR;
+        if (name.equals("short") || name.equals("int16")) return SHORT;
+        if (name.equals("ushort") || name.equals("uint16")) return USHORT;
+        if (name.equals("int") || name.equals("int32")) return INT;
+        if (name.equals("uint") || name.equals("uint32")) return UINT;
+        if (name.equals("float") || name.equals("float32")) return FLOAT;
+        if (name.equals("double") || name.equals("float64")) return DOUBLE;
+        throw new IllegalArgumentException("Unknown PLY property type '" + name + "'.");
+    }
+
+    /* ============================================= BODY =============================================== */
+
+    private static void readBinary(final ChannelInput input, final Element element, final Loaded loaded,
+                                   final LoadProgress progress, final long size) throws IOException {
+        final List<Property> properties = element.properties;
+        final int n = properties.size();
+        final int[] roles = element.roles();
+        final float[] xyz = new float[3];
+        for (long r = 0; r < element.count; r++) {
+            for (int i = 0; i < n; i++) {
+                final Property property = properties.get(i);
+                final int role = roles[i];
+                if (property.countType < 0) {
+                    final double value = readValue(input.require(SIZES[property.type]), property.type);
+                    if (role >= 0) xyz[role] = (float) value;
+                } else {
+                    final int count = (int) readValue(input.require(SIZES[property.countType]), property.countType);
+                    if (count < 0) throw new IllegalArgumentException("Negative list length in PLY element '" + element.name + "'.");
+                    final ByteBuffer in = input.require(count * SIZES[property.type]);
+                    if (role == Element.INDICES) {
+                        loaded.beginFace();
+                        for (int k = 0; k < count; k++) loaded.faceCorner((long) readValue(in, property.type));
+                        loaded.endFace();
+                    } else {
+                        in.position(in.position() + count * SIZES[property.type]);
+                    }
+                }
+            }
+            if (element.isVertex) loaded.vertex(xyz[0], xyz[1], xyz[2]);
+            if (progress != null && (r & (PROGRESS_INTERVAL - 1)) == 0) progress.parsed(input.offset(), size);
+        }
+    }
+
+    private static void readAscii(final MeshScanner scanner, final Element element, final Loaded loaded)
+            throws IOException {
+        final List<Property> properties = element.properties;
+        final int n = properties.size();
+        final int[] roles = element.roles();
+        final float[] xyz = new float[3];
+        for (long r = 0; r < element.count; r++) {
+            for (int i = 0; i < n; i++) {
+                final Property property = properties.get(i);
+                final int role = roles[i];
+                if (property.countType < 0) {
+                    final float value = isInteger(property.type) ? scanner.nextInt() : scanner.nextFloat();
+                    if (role >= 0) xyz[role] = value;
+                } else {
+                    final int count = scanner.nextInt();
+                    if (count < 0) throw new IllegalArgumentException("Negative list length on line " + scanner.line() + ".");
+                    if (role == Element.INDICES) loaded.beginFace();
+                    for (int k = 0; k < count; k++) {
+                        if (isInteger(property.type)) {
+                            final int value = scanner.nextInt();
+                            if (role == Element.INDICES) loaded.faceCorner(value);
+                        } else {
+                            scanner.nextFloat();
+                        }
+                    }
+                    if (role == Element.INDICES) loaded.endFace();
+                }
+            }
+            if (element.isVertex) loaded.vertex(xyz[0], xyz[1], xyz[2]);
+        }
+    }
+
+    private static boolean isInteger(final int type) {
+        return type != FLOAT && type != DOUBLE;
+    }
+
+    private static double readValue(final ByteBuffer in, final int type) {
+        switch (type) {
+            case CHAR: return in.get();
+            case UCHAR: return in.get() & 0xFF;
+            case SHORT: return in.getShort();
+            case USHORT: return in.getShort() & 0xFFFF;
+            case INT: return in.getInt();
+            case UINT: return in.getInt() & 0xFFFFFFFFL;
+            case FLOAT: return in.getFloat();
+            default: return in.getDouble();
+        }
+    }
+
+    private static void flush(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /* ============================================ TABLES ============================================== */
+
+    private static final class Property {
+        final String name;
+        final int type, countType;     // countType is -1 for scalar properties
+
+        Property(final String name, final int type, final int countType) {
+            this.name = name;
+            this.type = type;
+            this.countType = countType;
+        }
+    }
+
+    private static final class Element {
+        static final int INDICES = 3;  // role of the face index list; 0 to 2 are x, y and z
+
+        final String name;
+        final long count;
+        final boolean isVertex;
+        final List<Property> properties = new ArrayList<Property>();
+
+        Element(final String name, final long count) {
+            this.name = name;
+            this.count = count;
+            this.isVertex = name.equals("vertex");
+        }
+
+        /**
+         * The fewest bytes one row can take: a byte per value and a separator in ASCII, the values' sizes in binary,
+         * with the count and three indices for a face's list. A corrupt count is bounded by the bytes left over this.
+         */
+        int minRowBytes(final boolean ascii) {
+            final int[] roles = roles();
+            int bytes = 0;
+            for (int i = 0; i < roles.length; i++) {
+                final Property property = properties.get(i);
+                if (property.countType < 0) {
+                    bytes += ascii ? 2 : SIZES[property.type];
+                } else {
+                    bytes += ascii ? 2 : SIZES[property.countType];
+                    if (roles[i] == INDICES) bytes += 3 * (ascii ? 2 : SIZES[property.type]);
+                }
+            }
+            return bytes;
+        }
+
+        /** What each property is for: 0 to 2 for x, y, z of a vertex, INDICES for a face's list, -1 otherwise. */
+        int[] roles() {
+            final int[] roles = new int[properties.size()];
+            for (int i = 0; i < roles.length; i++) {
+                final Property property = properties.get(i);
+                roles[i] = -1;
+                if (isVertex && property.countType < 0) {
+                    if (property.name.equals("x")) roles[i] = 0;
+                    if (property.name.equals("y")) roles[i] = 1;
+                    if (property.name.equals("z")) roles[i] = 2;
+                } else if (name.equals("face") && property.countType >= 0
+                        && (property.name.equals("vertex_indices") || property.name.equals("vertex_index"))) {
+                    roles[i] = INDICES;
+                }
+            }
+            return roles;
+        }
+    }
+
+    /**
+     * Positions and fan-triangulated faces gathered while reading. Nothing of the caller's mesh is touched until
+     * {@link #into(Mesh)}, so a malformed file leaves it as it was. The arrays are sized from the header's element
+     * counts, each bounded by how many rows the rest of the file could hold, and grow only past that.
+     */
+    private static final class Loaded {
+        private float[] positions;
+        private int[] corners;
+        private final long declaredVerts;
+        private int numVerts = 0, numTriangles = 0;
+        private int first, previous, faceCorners;
+
+        Loaded(final List<Element> elements, final boolean ascii, final long bytesLeft) {
+            long verts = 0, faces = 0, vertRows = 0, faceRows = 0;
+            for (Element element : elements) {
+                final int rowBytes = element.minRowBytes(ascii);
+                final long rows = (rowBytes == 0) ? 0 : Math.min(element.count, bytesLeft / rowBytes);
+                if (element.isVertex) {
+                    verts += element.count;
+                    vertRows += rows;
+                } else if (element.name.equals("face")) {
+                    faces += element.count;
+                    faceRows += rows;
+                }
+            }
+            if (verts > Integer.MAX_VALUE / 3 || faces > Integer.MAX_VALUE / 3) {
+                throw new IllegalArgumentException("Too many PLY vertices or faces to load (" + verts + ", " + faces + ").");
+            }
+            declaredVerts = verts;
+            positions = new float[3 * (int) Math.min(vertRows, verts)];
+            corners = new int[3 * (int) Math.min(faceRows, faces)];
+        }
+
+        void vertex(final float x, final float y, final float z) {
+            if (3 * numVerts + 3 > positions.length) positions = Arrays.copyOf(positions, 3 * grown(numVerts));
+            positions[3 * numVerts] = x;
+            positions[3 * numVerts + 1] = y;
+            positions[3 * numVerts + 2] = z;
+            numVerts++;
+        }
+
+        void beginFace() {
+            faceCorners = 0;
+        }
+
+        void faceCorner(final long index) {
+            if (index < 0 || index >= declaredVerts) {
+                throw new IllegalArgumentException("PLY face refers to vertex " + index + " of " + declaredVerts + ".");
+            }
+            final int v = (int) index;
+            if (faceCorners == 0) {
+                first = v;
+            } else if (faceCorners >= 2) {
+                // only faces with more than 3 corners add triangles beyond the header's face count
+                if (3 * numTriangles + 3 > corners.length) corners = Arrays.copyOf(corners, 3 * grown(numTriangles));
+                corners[3 * numTriangles] = first;
+                corners[3 * numTriangles + 1] = previous;
+                corners[3 * numTriangles + 2] = v;
+                numTriangles++;
+            }
+            previous = v;
+            faceCorners++;
+        }
+
+        void endFace() {
+            if (faceCorners < 3) throw new IllegalArgumentException("PLY face with fewer than 3 corners.");
+        }
+
+        private static int grown(final int count) {
+            return count + (count >> 1) + 16;
+        }
+
+        /** Replaces the mesh's vertices and triangles with what was read; the indices were checked as they came. */
+        void into(final Mesh mesh) {
+            mesh.ensureVertexCapacity(numVerts);
+            mesh.ensureTriangleCapacity(numTriangles);
+            System.arraycopy(positions, 0, mesh.G, 0, 3 * numVerts);
+            System.arraycopy(corners, 0, mesh.vertexTable, 0, 3 * numTriangles);
+            mesh.numVerts = numVerts;
+            mesh.numTriangles = numTriangles;
+            mesh.numCorners = 3 * numTriangles;
+            Arrays.fill(mesh.visible, 0, numTriangles, true);
+            mesh.markAllNormalsDirty();
+            mesh.constructOppositesTable();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package pcanvas.mesh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads numbers from a text mesh file without creating a String per token. Bytes are pulled through one fixed buffer,
+ * so memory use does not depend on the size of the file, and numbers are parsed straight out of that buffer.
+ * <br />
+ * <br />
+ * Spaces, tabs, commas and line breaks all separate tokens. Floats may carry a sign, a fraction and an exponent;
+ * anything the fast path does not understand (NaN, Infinity) is handed to {@link Float#parseFloat(String)}. Line
+ * oriented formats such as OBJ use {@link #peekInLine()} and {@link #skipLine()} to walk records, and
+ * {@link #nextIndex()} for slash-separated face corners.
+ */
+final class MeshScanner {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Powers of ten that are exact as doubles. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** Significant digits kept in the mantissa; more than a float can tell apart, and safe from long overflow. */
+    private static final int MAX_DIGITS = 18;
+
+    private final InputStream in;
+    private final ByteBuffer source;
+    private final byte[] buffer;
+    private int position = 0, limit = 0;
+    private int line = 1;
+
+    MeshScanner(final InputStream in) {
+        this.in = in;
+        this.source = null;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Scans the remaining bytes of a buffer, e.g. one chunk of a memory-mapped file.
+     * @param source the bytes to scan; its position advances as they are consumed.
+     */
+    MeshScanner(final ByteBuffer source) {
+        this.in = null;
+        this.source = source;
+        this.buffer = new byte[Math.min(BUFFER_SIZE, Math.max(1, source.remaining()))];
+    }
+
+    /**
+     * Returns the line the scanner is on, for error messages.
+     * @return the 1-based line number.
+     */
+    int line() {return line;}
+
+    /**
+     * Tells whether another token follows, skipping separators.
+     * @return false at the end of the input.
+     * @throws IOException if reading fails.
+     */
+    boolean hasNext() throws IOException {
+        return skipSeparators() >= 0;
+    }
+
+    /**
+     * Skips the rest of the current line, including its line break.
+     * @throws IOException if reading fails.
+     */
+    void skipLine() throws IOException {
+        int c;
+        while ((c = read()) >= 0 && c != '\n') {}
+        if (c == '\n') line++;
+    }
+
+    /**
+     * Skips spaces and tabs (but not line breaks) and returns the next byte without consuming it.
+     * @return the next byte on the line, '\n' at the end of the line, or -1 at the end of the input.
+     * @throws IOException if reading fails.
+     */
+    int peekInLine() throws IOException {
+        int c;
+        while ((c = peek()) == ' ' || c == '\t' || c == '\r') position++;
+        return c;
+    }
+
+    /**
+     * Returns the next byte without consuming it or skipping anything.
+     * @return the byte, or -1 at the end of the input.
+     * @throws IOException if reading fails.
+     */
+    int peekByte() throws IOException {
+        return peek();
+    }
+
+    /**
+     * Consumes and returns the next byte, whatever it is.
+     * @return the byte, or -1 at the end of the input.
+     * @throws IOException if reading fails.
+     */
+    int nextByte() throws IOException {
+        final int c = read();
+        if (c == '\n') line++;
+        return c;
+    }
+
+    /**
+     * Parses the next token as an int.
+     * @return the value.
+     * @throws IOException if reading fails.
+     */
+    int nextInt() throws IOException {
+        return nextInt(false);
+    }
+
+    /**
+     * Parses the next token as an int that may be followed directly by a '/', as the vertex indices in OBJ face
+     * corners ("v/vt/vn") are. The slash is left for the caller.
+     * @return the value.
+     * @throws IOException if reading fails.
+     */
+    int nextIndex() throws IOException {
+        return nextInt(true);
+    }
+
+    private int nextInt(final boolean slashEnds) throws IOException {
+        int c = skipSeparators();
+        if (c < 0) throw error("Expected an integer but reached the end of the file");
+        position++;
+        final boolean negative = (c == '-');
+        if (c == '-' || c == '+') c = read();
+        if (c < '0' || c > '9') throw error("Expected an integer");
+        long value = 0;
+        while (c >= '0' && c <= '9') {
+            value = 10 * value + (c - '0');
+            if (value > Integer.MAX_VALUE + 1L) throw error("Integer out of range");
+            c = read();
+        }
+        if (slashEnds && c == '/') {
+            position--;
+        } else {
+            endToken(c);
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) throw error("Integer out of range");
+        return (int) value;
+    }
+
+    /**
+     * Parses the next token as a float.
+     * @return the value.
+     * @throws IOException if reading fails.
+     */
+    float nextFloat() throws IOException {
+        int c = skipSeparators();
+        if (c < 0) throw error("Expected a number but reached the end of the file");
+        position++;
+        final int sign = c;
+        final boolean negative = (c == '-');
+        if (c == '-' || c == '+') c = read();
+
+        long mantissa = 0;
+        int digits = 0, exponent = 0;
+        boolean any = false, dot = false;
+        for (; c >= '0' && c <= '9'; c = read()) {
+            any = true;
+            if (digits < MAX_DIGITS) {
+                mantissa = 10 * mantissa + (c - '0');
+                if (mantissa != 0) digits++;
+            } else {
+                exponent++;
+            }
+        }
+        if (c == '.') {
+            dot = true;
+            for (c = read(); c >= '0' && c <= '9'; c = read()) {
+                any = true;
+                if (digits < MAX_DIGITS) {
+                    mantissa = 10 * mantissa + (c - '0');
+                    if (mantissa != 0) digits++;
+                    exponent--;
+                }
+            }
+        }
+        if (!any) return slowFloat(sign, dot, c);
+        if (c == 'e' || c == 'E') {
+            c = read();
+            final boolean negativeExponent = (c == '-');
+            if (c == '-' || c == '+') c = read();
+            if (c < '0' || c > '9') throw error("Malformed exponent");
+            int e = 0;
+            for (; c >= '0' && c <= '9'; c = read()) {
+                if (e < 10000) e = 10 * e + (c - '0');
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        endToken(c);
+
+        double value = mantissa;
+        if (mantissa != 0) {
+            if (exponent > 0) {
+                value = (exponent < POWERS_OF_TEN.length) ? value * POWERS_OF_TEN[exponent] : value * Math.pow(10, exponent);
+            } else if (exponent < 0) {
+                value = (-exponent < POWERS_OF_TEN.length) ? value / POWERS_OF_TEN[-exponent] : value / Math.pow(10, -exponent);
+            }
+        }
+        return (float) (negative ? -value : value);
+    }
+
+    /**
+     * Parses tokens like NaN and Infinity, which the fast path rejects, with the JDK. The sign and decimal point the
+     * fast path already consumed are put back in front of the current byte c.
+     */
+    private float slowFloat(final int sign, final boolean dot, int c) throws IOException {
+        final StringBuilder token = new StringBuilder(16);
+        if (sign == '-' || sign == '+') token.append((char) sign);
+        if (dot) token.append('.');
+        for (; c >= 0 && !isSeparator(c); c = read()) {
+            token.append((char) c);
+        }
+        endToken(c);
+        try {
+            return Float.parseFloat(token.toString());
+        } catch (final NumberFormatException ex) {
+            throw error("Expected a number but found '" + token + "'");
+        }
+    }
+
+    /* ========================================= BUFFERING ============================================== */
+
+    private static boolean isSeparator(final int c) {
+        return c == ' ' || c == ',' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /** Skips separators and returns the first byte of the next token without consuming it, or -1 at the end. */
+    private int skipSeparators() throws IOException {
+        int c;
+        while ((c = peek()) >= 0 && isSeparator(c)) {
+            if (c == '\n') line++;
+            position++;
+        }
+        return c;
+    }
+
+    /**
+     * Checks the byte that ended a number and puts it back, so line counting sees line breaks. It is always the last
+     * byte read, so it is still in the buffer even right after a refill.
+     */
+    private void endToken(final int c) throws IOException {
+        if (c < 0) return;
+        if (!isSeparator(c)) throw error("Unexpected character '" + (char) c + "'");
+        position--;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position] & 0xFF;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        if (source != null) {
+            final int count = Math.min(buffer.length, source.remaining());
+            source.get(buffer, 0, count);
+            position = 0;
+            limit = count;
+            return count > 0;
+        }
+        final int count = in.read(buffer, 0, buffer.length);
+        position = 0;
+        limit = Math.max(0, count);
+        return count > 0;
+    }
+
+    private IllegalArgumentException error(final String message) {
+        return new IllegalArgumentException(message + " on line " + line + ".");
+    }
+}
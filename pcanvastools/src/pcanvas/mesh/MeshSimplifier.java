@@ -0,0 +1,306 @@
+package pcanvas.mesh;
+
+import pcanvas.concurrent.Workers;
+
+/**
+ * Decimates a {@link Mesh} by repeatedly collapsing its cheapest edge, using Garland and Heckbert's quadric error
+ * metric.
+ * <br />
+ * <br />
+ * Every vertex carries the sum of the squared-distance quadrics of the planes of its triangles, weighted by area. The
+ * cost of an edge is the error of the best position for the merged vertex under the sum of its endpoints' quadrics.
+ * Edges wait in an indexed binary heap keyed by that cost; after a collapse only the edges around the merged vertex are
+ * re-costed. Before collapsing, an edge must pass the link condition (its endpoints share exactly the two neighbours
+ * across its triangles), must leave every vertex involved with at least three triangles, and must not fold any
+ * surrounding triangle over, so the result stays a manifold.
+ * <br />
+ * <br />
+ * Border vertices are never moved or merged, which keeps the outline of open meshes intact. The mesh is compacted when
+ * simplification ends, so vertex and triangle indices change, and its normals are left marked for recomputation.
+ */
+public class MeshSimplifier {
+
+    /** Triangles per chunk when the initial quadrics and costs are spread across the worker pool. */
+    protected static int PARALLEL_CHUNK = 1 << 12;
+
+    private final Mesh mesh;
+
+    private double[] quadrics;          // 10 entries per vertex: the upper triangle of the symmetric 4x4 quadric
+    private boolean[] border;           // vertices that must stay put
+    private int[] linkStamps;           // per-vertex stamps for the link condition test
+    private int linkStamp = 0;
+    private IndexedMinHeap heap;        // edges keyed by collapse cost; an edge is the smaller corner facing it
+    private final double[] target = new double[3];
+
+    /**
+     * Creates a simplifier for the given mesh. The mesh is only modified by {@link #simplify(int, float)}.
+     * @param mesh the mesh to decimate; must have its opposite table built.
+     */
+    public MeshSimplifier(final Mesh mesh) {
+        if (mesh == null) throw new IllegalArgumentException("A mesh is required.");
+        this.mesh = mesh;
+    }
+
+    /**
+     * Collapses edges until at most targetTriangles triangles remain.
+     * @param targetTriangles the triangle count to reduce the mesh to.
+     * @return the number of edges collapsed.
+     */
+    public int simplify(final int targetTriangles) {
+        return simplify(targetTriangles, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Collapses edges until at most targetTriangles triangles remain or the cheapest remaining collapse would cost
+     * more than maxError, whichever comes first. The cost is a squared distance, in squared mesh units.
+     * @param targetTriangles the triangle count to reduce the mesh to; 0 to rely on the error budget alone.
+     * @param maxError the largest quadric error a collapse may introduce.
+     * @return the number of edges collapsed.
+     */
+    public int simplify(final int targetTriangles, final float maxError) {
+        if (targetTriangles < 0) throw new IllegalArgumentException("The target triangle count must not be negative.");
+        mesh.compact();
+        mesh.constructOppositesTable();
+        initialize();
+
+        int triangles = mesh.numTriangles, collapses = 0;
+        while (triangles > targetTriangles && !heap.isEmpty()) {
+            final int c = heap.peek();
+            if (heap.keyOf(c) > maxError) break;
+            heap.pop();
+            if (!canCollapse(c)) continue;      // dropped; it only returns if a later collapse re-costs edges around it
+            collapse(c);
+            triangles -= 2;
+            collapses++;
+        }
+
+        mesh.compact();
+        release();
+        return collapses;
+    }
+
+    /* ======================================== SET-UP ================================================== */
+
+    private void initialize() {
+        final Mesh m = mesh;
+        final int numVerts = m.numVerts, numCorners = m.numCorners;
+        quadrics = new double[10 * numVerts];
+        border = new boolean[numVerts];
+        linkStamps = new int[numVerts];
+        linkStamp = 0;
+        heap = new IndexedMinHeap(numCorners);
+
+        m.ensureCornerFans();
+        Workers.forRange(numVerts, PARALLEL_CHUNK, new Workers.RangeTask() {
+            @Override
+            public void run(final int start, final int end) {
+                for (int v = start; v < end; v++) {
+                    border[v] = m.isBorderVertex(v);
+                    for (int i = m.cornerFanStart[v]; i < m.cornerFanStart[v + 1]; i++) {
+                        addPlaneQuadric(m.t(m.cornerFan[i]), 10 * v);
+                    }
+                }
+            }
+        });
+
+        final float[] costs = new float[numCorners];
+        Workers.forRange(numCorners, 3 * PARALLEL_CHUNK, new Workers.RangeTask() {
+            @Override
+            public void run(final int start, final int end) {
+                final double[] position = new double[3];
+                for (int c = start; c < end; c++) {
+                    if (isCandidate(c)) costs[c] = (float) cost(c, position);
+                }
+            }
+        });
+        for (int c = 0; c < numCorners; c++) {
+            if (isCandidate(c)) heap.update(c, costs[c]);
+        }
+    }
+
+    private void release() {
+        quadrics = null;
+        border = null;
+        linkStamps = null;
+        heap = null;
+    }
+
+    /** Adds the area-weighted plane quadric of triangle t to the quadric stored at offset q. */
+    private void addPlaneQuadric(final int t, final int q) {
+        final float[] G = mesh.G;
+        final int a = 3 * mesh.vertexTable[3*t], b = 3 * mesh.vertexTable[3*t+1], c = 3 * mesh.vertexTable[3*t+2];
+        final double ux = G[b] - G[a], uy = G[b+1] - G[a+1], uz = G[b+2] - G[a+2];
+        final double wx = G[c] - G[a], wy = G[c+1] - G[a+1], wz = G[c+2] - G[a+2];
+        double nx = uy*wz - uz*wy, ny = uz*wx - ux*wz, nz = ux*wy - uy*wx;
+        final double length = Math.sqrt(nx*nx + ny*ny + nz*nz);
+        if (length == 0) return;
+        nx /= length; ny /= length; nz /= length;
+        final double d = -(nx*G[a] + ny*G[a+1] + nz*G[a+2]);
+        final double area = 0.5 * length;
+
+        final double[] Q = quadrics;
+        Q[q]   += area*nx*nx; Q[q+1] += area*nx*ny; Q[q+2] += area*nx*nz; Q[q+3] += area*nx*d;
+        Q[q+4] += area*ny*ny; Q[q+5] += area*ny*nz; Q[q+6] += area*ny*d;
+        Q[q+7] += area*nz*nz; Q[q+8] += area*nz*d;
+        Q[q+9] += area*d*d;
+    }
+
+    /* ======================================== EDGE COSTS ============================================== */
+
+    /** An edge is queued under the smaller of its two corners, and only when both endpoints may move. */
+    private boolean isCandidate(final int c) {
+        final int o = mesh.vOppositeTable[c];
+        return o > c && !border[mesh.vertexTable[mesh.n(c)]] && !border[mesh.vertexTable[mesh.p(c)]];
+    }
+
+    private int edgeOf(final int c) {
+        final int o = mesh.vOppositeTable[c];
+        return (o >= 0 && o < c) ? o : c;
+    }
+
+    /**
+     * Computes the best position for merging the endpoints of the edge opposite corner c into position, and returns
+     * its quadric error. Falls back to the better of the endpoints and the midpoint when the quadric is singular, as
+     * it is on flat or cylindrical patches.
+     */
+    private double cost(final int c, final double[] position) {
+        final int a = mesh.vertexTable[mesh.n(c)], b = mesh.vertexTable[mesh.p(c)];
+        final double[] Q = quadrics;
+        final int qa = 10 * a, qb = 10 * b;
+        final double q0 = Q[qa]+Q[qb], q1 = Q[qa+1]+Q[qb+1], q2 = Q[qa+2]+Q[qb+2], q3 = Q[qa+3]+Q[qb+3];
+        final double q4 = Q[qa+4]+Q[qb+4], q5 = Q[qa+5]+Q[qb+5], q6 = Q[qa+6]+Q[qb+6];
+        final double q7 = Q[qa+7]+Q[qb+7], q8 = Q[qa+8]+Q[qb+8], q9 = Q[qa+9]+Q[qb+9];
+
+        // Solve A x = -b for the 3x3 block A and column b of the quadric, by Cramer's rule.
+        final double c0 = q4*q7 - q5*q5, c1 = q2*q5 - q1*q7, c2 = q1*q5 - q2*q4;
+        final double det = q0*c0 + q1*c1 + q2*c2;
+        final double trace = q0 + q4 + q7;
+        if (Math.abs(det) > 1e-9 * trace * trace * trace) {
+            final double r0 = -q3, r1 = -q6, r2 = -q8;
+            position[0] = (c0*r0 + c1*r1 + c2*r2) / det;
+            position[1] = ((q2*q5 - q1*q7)*r0 + (q0*q7 - q2*q2)*r1 + (q1*q2 - q0*q5)*r2) / det;
+            position[2] = ((q1*q5 - q2*q4)*r0 + (q1*q2 - q0*q5)*r1 + (q0*q4 - q1*q1)*r2) / det;
+            return Math.max(0, error(q0, q1, q2, q3, q4, q5, q6, q7, q8, q9, position[0], position[1], position[2]));
+        }
+
+        final float[] G = mesh.G;
+        double best = Double.POSITIVE_INFINITY;
+        for (int k = 0; k < 3; k++) {
+            final double w = 0.5 * k;           // a, midpoint, b
+            final double x = G[3*a] + w*(G[3*b] - G[3*a]);
+            final double y = G[3*a+1] + w*(G[3*b+1] - G[3*a+1]);
+            final double z = G[3*a+2] + w*(G[3*b+2] - G[3*a+2]);
+            final double e = error(q0, q1, q2, q3, q4, q5, q6, q7, q8, q9, x, y, z);
+            if (e < best) {
+                best = e;
+                position[0] = x; position[1] = y; position[2] = z;
+            }
+        }
+        return Math.max(0, best);
+    }
+
+    private static double error(final double q0, final double q1, final double q2, final double q3, final double q4,
+                                final double q5, final double q6, final double q7, final double q8, final double q9,
+                                final double x, final double y, final double z) {
+        return x*(q0*x + q1*y + q2*z) + y*(q1*x + q4*y + q5*z) + z*(q2*x + q5*y + q7*z)
+                + 2*(q3*x + q6*y + q8*z) + q9;
+    }
+
+    /* ========================================= COLLAPSING ============================================= */
+
+    /**
+     * Tells whether the edge opposite corner c can still be collapsed: it must pass the link condition, no vertex may
+     * be left with fewer than three triangles, and moving both endpoints to the merged position must not turn any
+     * surviving triangle around them upside down.
+     */
+    private boolean canCollapse(final int c) {
+        final Mesh m = mesh;
+        final int oc = m.vOppositeTable[c];
+        if (oc < 0 || !m.visible[m.t(c)] || !m.visible[m.t(oc)]) return false;
+        final int a = m.vertexTable[m.n(c)], b = m.vertexTable[m.p(c)];
+        if (border[a] || border[b]) return false;
+
+        // Link condition: the one-rings of a and b may only share the two vertices across the edge's triangles.
+        linkStamp += 2;
+        final int inA = linkStamp, shared = linkStamp + 1;
+        int valenceA = 0, valenceB = 0;
+        for (int x = m.firstCornerAroundVertex(a), first = x; x != -1; x = m.nextCornerAround(x, first)) {
+            linkStamps[m.vertexTable[m.n(x)]] = inA;
+            valenceA++;
+        }
+        int common = 0;
+        for (int x = m.firstCornerAroundVertex(b), first = x; x != -1; x = m.nextCornerAround(x, first)) {
+            final int w = m.vertexTable[m.n(x)];
+            if (linkStamps[w] == inA) {
+                linkStamps[w] = shared;
+                common++;
+            }
+            valenceB++;
+        }
+        if (common != 2) return false;
+
+        // Valence: the merged vertex keeps valenceA + valenceB - 4 triangles and the two vertices across the edge lose
+        // one each. A vertex left with two triangles would make them duplicates, as collapsing any edge of a
+        // tetrahedron does, even though its edges pass the link condition.
+        if (valenceA + valenceB - 4 < 3) return false;
+        if (m.valence(m.vertexTable[c]) <= 3 || m.valence(m.vertexTable[oc]) <= 3) return false;
+
+        cost(c, target);
+        return !folds(a, c, oc) && !folds(b, c, oc);
+    }
+
+    /** Tells whether moving vertex v to {@link #target} flips any of its triangles other than t(c) and t(oc). */
+    private boolean folds(final int v, final int c, final int oc) {
+        final Mesh m = mesh;
+        final float[] G = m.G;
+        final int tc = m.t(c), toc = m.t(oc);
+        final double px = G[3*v], py = G[3*v+1], pz = G[3*v+2];
+        for (int x = m.firstCornerAroundVertex(v), first = x; x != -1; x = m.nextCornerAround(x, first)) {
+            final int t = m.t(x);
+            if (t == tc || t == toc) continue;
+            final int n = 3 * m.vertexTable[m.n(x)], p = 3 * m.vertexTable[m.p(x)];
+            final double ux = G[n] - px, uy = G[n+1] - py, uz = G[n+2] - pz;
+            final double wx = G[p] - px, wy = G[p+1] - py, wz = G[p+2] - pz;
+            final double ax = uy*wz - uz*wy, ay = uz*wx - ux*wz, az = ux*wy - uy*wx;
+
+            final double sx = G[n] - target[0], sy = G[n+1] - target[1], sz = G[n+2] - target[2];
+            final double tx = G[p] - target[0], ty = G[p+1] - target[1], tz = G[p+2] - target[2];
+            final double bx = sy*tz - sz*ty, by = sz*tx - sx*tz, bz = sx*ty - sy*tx;
+            if (ax*bx + ay*by + az*bz <= 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Collapses the edge opposite corner c into v(p(c)), moves the merged vertex to {@link #target}, which
+     * {@link #canCollapse(int)} has just computed, and re-costs the edges around it.
+     */
+    private void collapse(final int c) {
+        final Mesh m = mesh;
+        final int a = m.vertexTable[m.n(c)], b = m.vertexTable[m.p(c)];
+        dequeueEdgesAround(a);
+        dequeueEdgesAround(b);
+
+        m.collapse(c);
+        m.setPoint(b, (float) target[0], (float) target[1], (float) target[2]);
+        final int qa = 10 * a, qb = 10 * b;
+        for (int k = 0; k < 10; k++) quadrics[qb + k] += quadrics[qa + k];
+
+        for (int x = m.firstCornerAroundVertex(b), first = x; x != -1; x = m.nextCornerAround(x, first)) {
+            requeue(m.n(x));
+            requeue(m.p(x));
+        }
+    }
+
+    private void dequeueEdgesAround(final int v) {
+        for (int x = mesh.firstCornerAroundVertex(v), first = x; x != -1; x = mesh.nextCornerAround(x, first)) {
+            heap.remove(edgeOf(mesh.n(x)));
+            heap.remove(edgeOf(mesh.p(x)));
+        }
+    }
+
+    private void requeue(final int corner) {
+        final int e = edgeOf(corner);
+        if (isCandidate(e)) heap.update(e, (float) cost(e, target));
+    }
+}
@@ -0,0 +1,146 @@
+package pcanvas.mesh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads and writes binary STL files: an 80 byte header, a triangle count, then 50 bytes per triangle (a normal, three
+ * corner positions and two unused attribute bytes), all little-endian.
+ * <br />
+ * <br />
+ * STL has no shared vertices, so loading welds the corners with a {@link VertexWelder} as they are read. Triangles
+ * that welding collapses (two corners on one vertex) are dropped, since the corner table cannot represent them. The
+ * stored normals are ignored; {@link Mesh#normals()} recomputes them. ASCII STL files are rejected.
+ */
+final class MeshStl {
+
+    private static final int HEADER_SIZE = 84;
+    private static final int RECORD_SIZE = 50;
+    private static final int RECORDS_PER_READ = 1 << 14;
+    private static final byte[] SIGNATURE = "binary STL written by pcanvas".getBytes(Charset.forName("US-ASCII"));
+
+    private MeshStl() {}
+
+    /**
+     * Replaces the mesh's vertices and triangles with the contents of a binary STL file.
+     * @param file the file to read.
+     * @param mesh the mesh to load into.
+     * @param tolerance corners closer than this are merged into one vertex; 0 merges exact duplicates only.
+     * @param progress where to report progress, or null.
+     * @throws IOException if reading fails.
+     */
+    static void read(final File file, final Mesh mesh, final float tolerance, final LoadProgress progress)
+            throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final ChannelInput input = new ChannelInput(channel);
+            input.order(ByteOrder.LITTLE_ENDIAN);
+
+            final long size = channel.size();
+            final byte[] start = new byte[(int) Math.min(5, size)];
+            input.require(start.length).get(start);
+            final boolean ascii = new String(start, "US-ASCII").equals("solid");
+            if (size < HEADER_SIZE) throw notBinary(ascii, "The file is too short for an STL header.");
+            final ByteBuffer header = input.require(HEADER_SIZE - start.length);
+            header.position(header.position() + 75);
+            final long count = header.getInt() & 0xFFFFFFFFL;
+            if (size != HEADER_SIZE + RECORD_SIZE * count) {
+                throw notBinary(ascii, "The STL header promises " + count + " triangles, which does not match the "
+                    + "file size of " + size + " bytes.");
+            }
+            if (3 * count > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Too many triangles: " + count + ".");
+
+            final VertexWelder welder = new VertexWelder(tolerance, (int) (count / 2));
+            final int[] corners = new int[(int) (3 * count)];
+            int numTriangles = 0;
+            for (long t = 0; t < count; ) {
+                final int batch = (int) Math.min(RECORDS_PER_READ, count - t);
+                final ByteBuffer in = input.require(batch * RECORD_SIZE);
+                for (int i = 0; i < batch; i++) {
+                    in.position(in.position() + 12);    // stored normal
+                    final int a = welder.add(in.getFloat(), in.getFloat(), in.getFloat());
+                    final int b = welder.add(in.getFloat(), in.getFloat(), in.getFloat());
+                    final int c = welder.add(in.getFloat(), in.getFloat(), in.getFloat());
+                    in.position(in.position() + 2);     // attribute bytes
+                    if (a == b || b == c || c == a) continue;
+                    corners[3 * numTriangles] = a;
+                    corners[3 * numTriangles + 1] = b;
+                    corners[3 * numTriangles + 2] = c;
+                    numTriangles++;
+                }
+                t += batch;
+                if (progress != null) progress.parsed(t, count);
+            }
+
+            final int numVerts = welder.size();
+            mesh.ensureVertexCapacity(numVerts);
+            mesh.ensureTriangleCapacity(numTriangles);
+            System.arraycopy(welder.positions(), 0, mesh.G, 0, 3 * numVerts);
+            System.arraycopy(corners, 0, mesh.vertexTable, 0, 3 * numTriangles);
+            mesh.numVerts = numVerts;
+            mesh.numTriangles = numTriangles;
+            mesh.numCorners = 3 * numTriangles;
+            Arrays.fill(mesh.visible, 0, numTriangles, true);
+            mesh.markAllNormalsDirty();
+            mesh.constructOppositesTable();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes the mesh as a binary STL file, with unit face normals.
+     * @param mesh the mesh to write.
+     * @param file the file to create or overwrite.
+     * @throws IOException if writing fails.
+     */
+    static void write(final Mesh mesh, final File file) throws IOException {
+        final int nt = mesh.numTriangles;
+        final float[] G = mesh.G;
+        final int[] V = mesh.vertexTable;
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            final FileChannel channel = raf.getChannel();
+            final ByteBuffer out = ByteBuffer.allocateDirect(RECORDS_PER_READ * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            out.put(SIGNATURE);
+            out.position(80);
+            out.putInt(nt);
+            for (int t = 0; t < nt; t++) {
+                if (out.remaining() < RECORD_SIZE) flush(channel, out);
+                final int a = 3 * V[3*t], b = 3 * V[3*t+1], c = 3 * V[3*t+2];
+                final float ux = G[b] - G[a], uy = G[b+1] - G[a+1], uz = G[b+2] - G[a+2];
+                final float vx = G[c] - G[a], vy = G[c+1] - G[a+1], vz = G[c+2] - G[a+2];
+                float nx = uy*vz - uz*vy, ny = uz*vx - ux*vz, nz = ux*vy - uy*vx;
+                float n = (float) Math.sqrt(nx*nx + ny*ny + nz*nz);
+                if (n < 0.000001) n = 1;
+                out.putFloat(nx / n).putFloat(ny / n).putFloat(nz / n);
+                out.putFloat(G[a]).putFloat(G[a+1]).putFloat(G[a+2]);
+                out.putFloat(G[b]).putFloat(G[b+1]).putFloat(G[b+2]);
+                out.putFloat(G[c]).putFloat(G[c+1]).putFloat(G[c+2]);
+                out.putShort((short) 0);
+            }
+            flush(channel, out);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** Files that start with "solid" and do not fit the binary layout are ASCII STL, which gets its own message. */
+    private static IllegalArgumentException notBinary(final boolean ascii, final String message) {
+        return new IllegalArgumentException(ascii ? "ASCII STL files are not supported; save the mesh as binary STL." : message);
+    }
+
+    private static void flush(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+}
@@ -0,0 +1,163 @@
+package pcanvas.mesh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Writes text mesh files without creating a String per number, the counterpart of {@link MeshScanner}. Digits are
+ * formatted straight into one large buffer that is handed to the stream whenever it fills up.
+ * <br />
+ * <br />
+ * Floats are written the way "%f" writes them, rounded to six decimals, but without going through
+ * {@link java.util.Formatter}, and always with a '.' whatever the default locale is.
+ */
+final class MeshWriter {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Room left at the end of the buffer for one number. */
+    private static final int MAX_TOKEN = 48;
+
+    private static final int DECIMALS = 6;
+    private static final double SCALE = 1e6;
+
+    /** Largest magnitude formatted on the fast path; beyond it the scaled value would not fit in a long. */
+    private static final double FAST_LIMIT = 1e12;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+
+    MeshWriter(final OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes a .vts mesh: the vertex count, one "x, y, z" line per vertex, the triangle count and one "a, b, c" line
+     * per triangle.
+     * @param G positions, packed x, y, z.
+     * @param numVerts the number of vertices to write.
+     * @param vertexTable the corner table.
+     * @param numTriangles the number of triangles to write.
+     * @param flipOrientation whether to swap the last two corners of each triangle.
+     * @throws IOException if writing fails.
+     */
+    void writeVts(final float[] G, final int numVerts, final int[] vertexTable, final int numTriangles,
+                  final boolean flipOrientation) throws IOException {
+        writeInt(numVerts);
+        newLine();
+        for (int i = 0; i < numVerts; i++) {
+            writeFloat(G[3*i]);
+            separator();
+            writeFloat(G[3*i+1]);
+            separator();
+            writeFloat(G[3*i+2]);
+            newLine();
+        }
+        writeInt(numTriangles);
+        newLine();
+        final int second = flipOrientation ? 2 : 1, third = flipOrientation ? 1 : 2;
+        for (int t = 0; t < numTriangles; t++) {
+            writeInt(vertexTable[3*t]);
+            separator();
+            writeInt(vertexTable[3*t+second]);
+            separator();
+            writeInt(vertexTable[3*t+third]);
+            newLine();
+        }
+        flush();
+    }
+
+    /**
+     * Writes an int in decimal.
+     * @param value the value.
+     * @throws IOException if writing fails.
+     */
+    void writeInt(final int value) throws IOException {
+        reserve();
+        long v = value;
+        if (v < 0) {
+            buffer[position++] = '-';
+            v = -v;
+        }
+        writeDigits(v, 1);
+    }
+
+    /**
+     * Writes a float with six decimals, as "%f" does.
+     * @param value the value.
+     * @throws IOException if writing fails.
+     */
+    void writeFloat(final float value) throws IOException {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            writeAscii(Float.toString(value));
+            return;
+        }
+        double d = value;
+        if (Math.abs(d) >= FAST_LIMIT) {
+            writeAscii(String.format(Locale.ROOT, "%f", value));
+            return;
+        }
+        reserve();
+        if (d < 0 || (d == 0 && Float.floatToRawIntBits(value) != 0)) {
+            buffer[position++] = '-';
+            d = -d;
+        }
+        final long scaled = Math.round(d * SCALE);
+        writeDigits(scaled / (long) SCALE, 1);
+        buffer[position++] = '.';
+        writeDigits(scaled % (long) SCALE, DECIMALS);
+    }
+
+    void separator() throws IOException {
+        reserve();
+        buffer[position++] = ',';
+        buffer[position++] = ' ';
+    }
+
+    void newLine() throws IOException {
+        reserve();
+        buffer[position++] = '\n';
+    }
+
+    /**
+     * Hands everything buffered so far to the stream and flushes it.
+     * @throws IOException if writing fails.
+     */
+    void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    /* ========================================= BUFFERING ============================================== */
+
+    /** Writes the digits of a non-negative value, padded with zeros to at least width digits. */
+    private void writeDigits(long value, final int width) {
+        int count = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) count++;
+        count = Math.max(count, width);
+        for (int i = position + count - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += count;
+    }
+
+    private void writeAscii(final String token) throws IOException {
+        for (int i = 0; i < token.length(); i++) {
+            if (position == buffer.length) drain();
+            buffer[position++] = (byte) token.charAt(i);
+        }
+    }
+
+    private void reserve() throws IOException {
+        if (position > buffer.length - MAX_TOKEN) drain();
+    }
+
+    private void drain() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+}
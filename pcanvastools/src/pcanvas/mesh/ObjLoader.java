@@ -0,0 +1,268 @@
+package pcanvas.mesh;
+
+import pcanvas.concurrent.Workers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads Wavefront OBJ files into a {@link Mesh}. The file is memory-mapped and cut into chunks at line breaks; the
+ * chunks are parsed on the shared worker pool and then copied into the mesh's tables at offsets given by the running
+ * totals of the chunks before them.
+ * <br />
+ * <br />
+ * Only positions and faces end up in the mesh. "vn" and "vt" records are skipped, and so are the texture and normal
+ * parts of "v/vt/vn" face corners, because the mesh keeps neither; its normals are recomputed by
+ * {@link Mesh#normals()}. Polygons are split into triangle fans around their first corner. Other records (groups,
+ * materials, smoothing groups, lines, comments) are ignored.
+ */
+final class ObjLoader {
+
+    /** Files smaller than this are parsed as a single chunk. */
+    private static final long MIN_CHUNK_SIZE = 1L << 22;
+
+    /** Largest chunk mapped at once; well under the 2 GB limit of a single mapping. */
+    private static final long MAX_CHUNK_SIZE = 1L << 28;
+
+    /** How far ahead of a nominal chunk boundary is searched for a line break at a time. */
+    private static final int BOUNDARY_PROBE = 4096;
+
+    /**
+     * Relative (negative) face indices are stored in the chunk tables as ~(RELATIVE_BIAS + i), where i is the index
+     * of the vertex counted from the start of the chunk; it is negative when the face refers back into an earlier
+     * chunk. They are resolved once the number of vertices before each chunk is known.
+     */
+    private static final int RELATIVE_BIAS = 1 << 30;
+
+    private ObjLoader() {}
+
+    /**
+     * Replaces the mesh's vertices and triangles with the contents of an OBJ file.
+     * @param file the file to read.
+     * @param mesh the mesh to load into.
+     * @throws IOException if reading fails.
+     */
+    static void load(final File file, final Mesh mesh) throws IOException {
+        load(file, mesh, null);
+    }
+
+    /**
+     * Replaces the mesh's vertices and triangles with the contents of an OBJ file, reporting each parsed chunk.
+     * @param file the file to read.
+     * @param mesh the mesh to load into.
+     * @param progress where to report progress, or null.
+     * @throws IOException if reading fails.
+     */
+    static void load(final File file, final Mesh mesh, final LoadProgress progress) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final Chunk[] chunks = split(channel);
+            parse(channel, chunks, progress);
+            merge(chunks, mesh);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** Cuts the file into chunks that each start at the beginning of a line. */
+    private static Chunk[] split(final FileChannel channel) throws IOException {
+        final long size = channel.size();
+        final int count = (int) Math.max(
+            Math.min(Workers.parallelism() * 4L, size / MIN_CHUNK_SIZE),
+            (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        if (count <= 1) return new Chunk[] {new Chunk(0, size)};
+
+        final long[] bounds = new long[count + 1];
+        bounds[count] = size;
+        final ByteBuffer probe = ByteBuffer.allocate(BOUNDARY_PROBE);
+        for (int i = 1; i < count; i++) {
+            bounds[i] = Math.max(bounds[i - 1], nextLineStart(channel, probe, size * i / count, size));
+        }
+
+        final Chunk[] chunks = new Chunk[count];
+        for (int i = 0; i < count; i++) {
+            chunks[i] = new Chunk(bounds[i], bounds[i + 1]);
+        }
+        return chunks;
+    }
+
+    /** Returns the offset just past the first line break at or after position, or size if there is none. */
+    private static long nextLineStart(final FileChannel channel, final ByteBuffer probe, long position, final long size)
+            throws IOException {
+        while (position < size) {
+            probe.clear();
+            final int count = channel.read(probe, position);
+            if (count <= 0) break;
+            for (int i = 0; i < count; i++) {
+                if (probe.get(i) == '\n') return position + i + 1;
+            }
+            position += count;
+        }
+        return size;
+    }
+
+    private static void parse(final FileChannel channel, final Chunk[] chunks, final LoadProgress progress)
+            throws IOException {
+        final long size = chunks[chunks.length - 1].end;
+        final AtomicLong parsed = new AtomicLong();
+        // map up front, so I/O errors surface here rather than inside the workers
+        final MappedByteBuffer[] maps = new MappedByteBuffer[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            maps[i] = channel.map(FileChannel.MapMode.READ_ONLY, chunks[i].start, chunks[i].end - chunks[i].start);
+        }
+        Workers.forRange(chunks.length, 1, new Workers.RangeTask() {
+            @Override
+            public void run(final int start, final int end) {
+                for (int i = start; i < end; i++) {
+                    try {
+                        chunks[i].parse(new MeshScanner(maps[i]));
+                    } catch (final IOException ex) {
+                        throw new IllegalStateException("Failed to read OBJ bytes " + chunks[i].start + " to "
+                            + chunks[i].end + ".", ex);
+                    } catch (final IllegalArgumentException ex) {
+                        throw new IllegalArgumentException(ex.getMessage() + " (in the chunk starting at byte "
+                            + chunks[i].start + ")", ex);
+                    }
+                    maps[i] = null;
+                    if (progress != null) progress.parsed(parsed.addAndGet(chunks[i].end - chunks[i].start), size);
+                }
+            }
+        });
+    }
+
+    private static void merge(final Chunk[] chunks, final Mesh mesh) {
+        int numVerts = 0, numTriangles = 0;
+        for (Chunk chunk : chunks) {
+            chunk.vertexBase = numVerts;
+            chunk.triangleBase = numTriangles;
+            numVerts += chunk.numVerts;
+            numTriangles += chunk.numTriangles;
+        }
+
+        mesh.ensureVertexCapacity(numVerts);
+        mesh.ensureTriangleCapacity(numTriangles);
+        mesh.markAllNormalsDirty();
+        final float[] G = mesh.G;
+        final int[] vertexTable = mesh.vertexTable;
+        final int totalVerts = numVerts;
+        Workers.forRange(chunks.length, 1, new Workers.RangeTask() {
+            @Override
+            public void run(final int start, final int end) {
+                for (int i = start; i < end; i++) {
+                    final Chunk chunk = chunks[i];
+                    System.arraycopy(chunk.vertices, 0, G, 3 * chunk.vertexBase, 3 * chunk.numVerts);
+                    final int[] corners = chunk.corners;
+                    final int offset = 3 * chunk.triangleBase;
+                    for (int c = 0; c < 3 * chunk.numTriangles; c++) {
+                        final int stored = corners[c];
+                        final int v = (stored >= 0) ? stored : chunk.vertexBase + (~stored - RELATIVE_BIAS);
+                        if (v < 0 || v >= totalVerts) {
+                            throw new IllegalArgumentException("Face refers to vertex " + (v + 1) + " of "
+                                + totalVerts + " (in the chunk starting at byte " + chunk.start + ").");
+                        }
+                        vertexTable[offset + c] = v;
+                    }
+                    chunk.vertices = null;
+                    chunk.corners = null;
+                }
+            }
+        });
+
+        mesh.numVerts = numVerts;
+        mesh.numTriangles = numTriangles;
+        mesh.numCorners = 3 * numTriangles;
+        Arrays.fill(mesh.visible, 0, numTriangles, true);
+        mesh.constructOppositesTable();
+    }
+
+    /**
+     * One line-aligned slice of the file and the positions and triangles parsed from it.
+     */
+    private static final class Chunk {
+        final long start, end;
+        float[] vertices = new float[3 * 1024];
+        int[] corners = new int[3 * 2048];
+        int numVerts = 0, numTriangles = 0;
+        int vertexBase, triangleBase;
+
+        Chunk(final long start, final long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        void parse(final MeshScanner scanner) throws IOException {
+            int c;
+            while ((c = scanner.peekInLine()) >= 0) {
+                if (c == 'v') {
+                    scanner.nextByte();
+                    if (isBlank(scanner.peekByte())) parseVertex(scanner);
+                } else if (c == 'f') {
+                    scanner.nextByte();
+                    if (isBlank(scanner.peekByte())) parseFace(scanner);
+                }
+                scanner.skipLine();
+            }
+        }
+
+        private void parseVertex(final MeshScanner scanner) throws IOException {
+            if (3 * numVerts + 3 > vertices.length) vertices = Arrays.copyOf(vertices, 2 * vertices.length);
+            for (int k = 0; k < 3; k++) {
+                if (isLineEnd(scanner.peekInLine())) {
+                    throw new IllegalArgumentException("Vertex with fewer than 3 coordinates on line " + scanner.line() + ".");
+                }
+                vertices[3 * numVerts + k] = scanner.nextFloat();
+            }
+            numVerts++;
+            // an optional w or per-vertex color may follow; skipLine drops it
+        }
+
+        private void parseFace(final MeshScanner scanner) throws IOException {
+            int first = -1, previous = -1, count = 0;
+            while (!isLineEnd(scanner.peekInLine())) {
+                final int v = nextCorner(scanner);
+                if (count == 0) {
+                    first = v;
+                } else if (count >= 2) {
+                    if (3 * numTriangles + 3 > corners.length) corners = Arrays.copyOf(corners, 2 * corners.length);
+                    final int c = 3 * numTriangles++;
+                    corners[c] = first;
+                    corners[c + 1] = previous;
+                    corners[c + 2] = v;
+                }
+                previous = v;
+                count++;
+            }
+            if (count < 3) {
+                throw new IllegalArgumentException("Face with fewer than 3 corners on line " + scanner.line() + ".");
+            }
+        }
+
+        /** Reads one "v", "v/vt", "v//vn" or "v/vt/vn" corner and returns its encoded vertex index. */
+        private int nextCorner(final MeshScanner scanner) throws IOException {
+            final int index = scanner.nextIndex();
+            while (scanner.peekByte() == '/') {
+                scanner.nextByte();
+                final int c = scanner.peekByte();
+                if (c == '-' || c == '+' || (c >= '0' && c <= '9')) scanner.nextIndex();
+            }
+            if (index > 0) return index - 1;
+            if (index < 0) return ~(RELATIVE_BIAS + numVerts + index);
+            throw new IllegalArgumentException("Face corner with vertex index 0 on line " + scanner.line() + ".");
+        }
+
+        private static boolean isBlank(final int c) {
+            return c == ' ' || c == '\t';
+        }
+
+        private static boolean isLineEnd(final int c) {
+            return c < 0 || c == '\n' || c == '#';
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package pcanvas.mesh;
+
+import java.util.Arrays;
+
+import pcanvas.Point;
+import pcanvas.geom.Frustum;
+
+/**
+ * A bounding volume hierarchy over the visible triangles of a {@link Mesh}, for culling them in clusters before they
+ * are drawn. The triangles are split in half along the longest extent of their centers until at most
+ * {@link #leafSize} remain; every node keeps a bounding sphere and a cone bounding its triangles' normals.
+ * <br />
+ * <br />
+ * {@link #collect(Frustum, boolean, int[])} walks the tree from the root and drops whole subtrees whose sphere is
+ * outside the view frustum, or whose normal cone shows that every triangle in them faces away from the eye. The
+ * surviving leaves are contiguous ranges of {@link #order}, so each can be drawn from its own cached buffer.
+ */
+final class TriangleClusters {
+
+    /** The most triangles in one leaf. */
+    final int leafSize;
+
+    /** The visible triangles, ordered so that every node covers a contiguous range. */
+    int[] order = new int[0];
+    int numTriangles = 0;
+
+    /** Per node: the range of {@link #order} it covers, its first child (the second follows it), or -1 for a leaf. */
+    private int[] start = new int[0], end = new int[0], child = new int[0];
+
+    /** Per node: bounding sphere (x, y, z, radius) and normal cone (unit axis x, y, z, cosine of half-angle). */
+    private float[] sphere = new float[0], cone = new float[0];
+
+    /** Per node, the number of the leaf it is, or -1; and per leaf, its node. */
+    private int[] leaf = new int[0], leafNodes = new int[0];
+
+    private int numNodes = 0, numLeaves = 0;
+
+    /** Scratch tables, indexed by triangle: centers of the triangles and their unit normals. */
+    private float[] centers = new float[0], normals = new float[0];
+
+    private int[] stack = new int[64];
+    private final Point eye = new Point(0F, 0F, 0F);
+
+    /**
+     * Creates an empty hierarchy.
+     * @param leafSize the most triangles in one leaf.
+     */
+    TriangleClusters(final int leafSize) {
+        if (leafSize < 1) throw new IllegalArgumentException("A cluster needs room for at least one triangle.");
+        this.leafSize = leafSize;
+    }
+
+    /** @return the number of leaves; they are numbered from 0 in the order of their ranges. */
+    int leafCount() {return numLeaves;}
+
+    /** @return the first index into {@link #order} of a leaf's triangles. */
+    int leafStart(final int leafNumber) {return start[leafNode(leafNumber)];}
+
+    /** @return one past the last index into {@link #order} of a leaf's triangles. */
+    int leafEnd(final int leafNumber) {return end[leafNode(leafNumber)];}
+
+    private int leafNode(final int leafNumber) {return leafNodes[leafNumber];}
+
+    /**
+     * Rebuilds the hierarchy over the mesh's visible triangles.
+     * @param mesh the mesh.
+     */
+    void build(final Mesh mesh) {
+        final int nt = mesh.numTriangles;
+        if (order.length < nt) order = new int[nt];
+        if (centers.length < 3 * nt) {
+            centers = new float[3 * nt];
+            normals = new float[3 * nt];
+        }
+        final float[] g = mesh.G;
+        final int[] table = mesh.vertexTable;
+        numTriangles = 0;
+        for (int t = 0; t < nt; t++) {
+            if (!mesh.visible[t]) continue;
+            order[numTriangles++] = t;
+            final int a = 3 * table[3*t], b = 3 * table[3*t+1], c = 3 * table[3*t+2];
+            centers[3*t] = (g[a] + g[b] + g[c]) / 3;
+            centers[3*t+1] = (g[a+1] + g[b+1] + g[c+1]) / 3;
+            centers[3*t+2] = (g[a+2] + g[b+2] + g[c+2]) / 3;
+            final float ux = g[b] - g[a], uy = g[b+1] - g[a+1], uz = g[b+2] - g[a+2];
+            final float vx = g[c] - g[a], vy = g[c+1] - g[a+1], vz = g[c+2] - g[a+2];
+            final float nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+            final float n = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (n < 0.000001) {
+                // a sliver has no facing; it is never drawn as an area, so it should not widen the cone
+                normals[3*t] = 0F;
+                normals[3*t+1] = 0F;
+                normals[3*t+2] = 0F;
+            } else {
+                normals[3*t] = nx / n;
+                normals[3*t+1] = ny / n;
+                normals[3*t+2] = nz / n;
+            }
+        }
+
+        // halving leaves every leaf over half full, so there are at most 2 * n / leafSize + 1 leaves and twice as many nodes
+        final int maxNodes = 2 * (2 * numTriangles / leafSize + 1);
+        if (start.length < maxNodes) {
+            start = new int[maxNodes];
+            end = new int[maxNodes];
+            child = new int[maxNodes];
+            leaf = new int[maxNodes];
+            leafNodes = new int[maxNodes];
+            sphere = new float[4 * maxNodes];
+            cone = new float[4 * maxNodes];
+        }
+        numNodes = 0;
+        numLeaves = 0;
+        if (numTriangles > 0) split(mesh, newNode(0, numTriangles));
+    }
+
+    private int newNode(final int from, final int to) {
+        final int node = numNodes++;
+        start[node] = from;
+        end[node] = to;
+        child[node] = -1;
+        leaf[node] = -1;
+        return node;
+    }
+
+    private void split(final Mesh mesh, final int node) {
+        final int from = start[node], to = end[node];
+        if (to - from <= leafSize) {
+            bound(mesh, node);
+            leaf[node] = numLeaves;
+            leafNodes[numLeaves++] = node;
+            return;
+        }
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            final int t = 3 * order[i];
+            minX = Math.min(minX, centers[t]);     maxX = Math.max(maxX, centers[t]);
+            minY = Math.min(minY, centers[t+1]);   maxY = Math.max(maxY, centers[t+1]);
+            minZ = Math.min(minZ, centers[t+2]);   maxZ = Math.max(maxZ, centers[t+2]);
+        }
+        final float dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+        final int axis = (dx >= dy && dx >= dz) ? 0 : (dy >= dz) ? 1 : 2;
+        final int middle = (from + to) >>> 1;
+        select(from, to, middle, axis);
+
+        // both children are created before either is split, so a node's children sit next to each other
+        final int first = newNode(from, middle);
+        newNode(middle, to);
+        child[node] = first;
+        split(mesh, first);
+        split(mesh, first + 1);
+        merge(node, first, first + 1);
+    }
+
+    /** Reorders order[from, to) so the triangle with the k-th smallest center on the axis sits at k. */
+    private void select(int from, int to, final int k, final int axis) {
+        final int[] o = order;
+        final float[] c = centers;
+        while (to - from > 1) {
+            final float pivot = c[3 * o[(from + to) >>> 1] + axis];
+            int i = from, j = to - 1;
+            while (i <= j) {
+                while (c[3 * o[i] + axis] < pivot) i++;
+                while (c[3 * o[j] + axis] > pivot) j--;
+                if (i <= j) {
+                    final int swap = o[i];
+                    o[i++] = o[j];
+                    o[j--] = swap;
+                }
+            }
+            if (k <= j) {
+                to = j + 1;
+            } else if (k >= i) {
+                from = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /** Computes a leaf's bounding sphere around its triangles' vertices, and the cone around their normals. */
+    private void bound(final Mesh mesh, final int node) {
+        final float[] g = mesh.G;
+        final int[] table = mesh.vertexTable;
+        final int from = start[node], to = end[node];
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        float ax = 0F, ay = 0F, az = 0F;
+        for (int i = from; i < to; i++) {
+            final int t = order[i];
+            for (int k = 0; k < 3; k++) {
+                final int v = 3 * table[3*t+k];
+                minX = Math.min(minX, g[v]);     maxX = Math.max(maxX, g[v]);
+                minY = Math.min(minY, g[v+1]);   maxY = Math.max(maxY, g[v+1]);
+                minZ = Math.min(minZ, g[v+2]);   maxZ = Math.max(maxZ, g[v+2]);
+            }
+            ax += normals[3*t];
+            ay += normals[3*t+1];
+            az += normals[3*t+2];
+        }
+        final float cx = (minX + maxX) / 2, cy = (minY + maxY) / 2, cz = (minZ + maxZ) / 2;
+        float radius = 0F;
+        for (int i = from; i < to; i++) {
+            final int t = order[i];
+            for (int k = 0; k < 3; k++) {
+                final int v = 3 * table[3*t+k];
+                final float x = g[v] - cx, y = g[v+1] - cy, z = g[v+2] - cz;
+                radius = Math.max(radius, x * x + y * y + z * z);
+            }
+        }
+        sphere[4*node] = cx;
+        sphere[4*node+1] = cy;
+        sphere[4*node+2] = cz;
+        sphere[4*node+3] = (float) Math.sqrt(radius) * 1.0001F;
+
+        // the cone's axis is the mean normal, its half-angle reaches the normal furthest from it
+        final float n = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        float cos = -1F;
+        if (n >= 0.000001) {
+            ax /= n; ay /= n; az /= n;
+            cos = 1F;
+            for (int i = from; i < to; i++) {
+                final int t = 3 * order[i];
+                final float x = normals[t], y = normals[t+1], z = normals[t+2];
+                if (x != 0F || y != 0F || z != 0F) cos = Math.min(cos, ax * x + ay * y + az * z);
+            }
+        }
+        cone[4*node] = ax;
+        cone[4*node+1] = ay;
+        cone[4*node+2] = az;
+        cone[4*node+3] = cos;
+    }
+
+    /**
+     * Bounds an inner node by its children's spheres and cones rather than by its triangles, so each level of the tree
+     * costs as much as its node count instead of the whole mesh.
+     */
+    private void merge(final int node, final int a, final int b) {
+        final float[] s = sphere;
+        final float dx = s[4*b] - s[4*a], dy = s[4*b+1] - s[4*a+1], dz = s[4*b+2] - s[4*a+2];
+        final float d = (float) Math.sqrt(dx * dx + dy * dy + dz * dz), ra = s[4*a+3], rb = s[4*b+3];
+        if (d + rb <= ra) {
+            System.arraycopy(s, 4 * a, s, 4 * node, 4);
+        } else if (d + ra <= rb) {
+            System.arraycopy(s, 4 * b, s, 4 * node, 4);
+        } else {
+            final float radius = (d + ra + rb) / 2, along = (radius - ra) / d;
+            s[4*node] = s[4*a] + dx * along;
+            s[4*node+1] = s[4*a+1] + dy * along;
+            s[4*node+2] = s[4*a+2] + dz * along;
+            s[4*node+3] = radius * 1.0001F;
+        }
+
+        // a cone of a hemisphere or more can cull nothing, and neither can any cone holding it
+        final float[] c = cone;
+        c[4*node] = 0F;
+        c[4*node+1] = 0F;
+        c[4*node+2] = 0F;
+        c[4*node+3] = -1F;
+        if (c[4*a+3] <= 0F || c[4*b+3] <= 0F) return;
+        float ax = c[4*a] + c[4*b], ay = c[4*a+1] + c[4*b+1], az = c[4*a+2] + c[4*b+2];
+        final float n = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        if (n < 0.000001) return;
+        ax /= n; ay /= n; az /= n;
+        final double angle = Math.max(
+                Math.acos(Math.min(1F, ax * c[4*a] + ay * c[4*a+1] + az * c[4*a+2])) + Math.acos(c[4*a+3]),
+                Math.acos(Math.min(1F, ax * c[4*b] + ay * c[4*b+1] + az * c[4*b+2])) + Math.acos(c[4*b+3]));
+        if (angle >= Math.PI / 2) return;
+        c[4*node] = ax;
+        c[4*node+1] = ay;
+        c[4*node+2] = az;
+        c[4*node+3] = (float) Math.cos(angle);
+    }
+
+    /**
+     * Finds the leaves that may be visible.
+     * @param frustum the view frustum, in the mesh's coordinates.
+     * @param cullBackFaces whether to also drop clusters whose triangles all face away from the frustum's eye.
+     * @param leaves filled with the numbers of the surviving leaves; at least {@link #leafCount()} long.
+     * @return the number of surviving leaves.
+     */
+    int collect(final Frustum frustum, final boolean cullBackFaces, final int[] leaves) {
+        if (numNodes == 0) return 0;
+        frustum.eye(eye);
+        int count = 0, top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            final int s = 4 * node;
+            if (!frustum.intersectsSphere(sphere[s], sphere[s+1], sphere[s+2], sphere[s+3])) continue;
+            if (cullBackFaces && facesAway(node)) continue;
+            if (child[node] < 0) {
+                leaves[count++] = leaf[node];
+            } else {
+                if (top + 2 > stack.length) stack = Arrays.copyOf(stack, 2 * stack.length);
+                stack[top++] = child[node] + 1;
+                stack[top++] = child[node];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Tells whether every triangle of a node faces away from the eye: for every point p in the bounding sphere and
+     * every normal n in the cone, n &middot; (p - eye) > 0. With the eye at distance L from the sphere's center, at
+     * angle &theta; between the cone axis and the direction from the eye, and cone half-angle &alpha;, this holds when
+     * cos(&theta; + &alpha;) > r / L and &theta; + &alpha; < &pi;.
+     */
+    private boolean facesAway(final int node) {
+        final float cosAlpha = cone[4*node+3];
+        if (cosAlpha <= 0F) return false;       // the normals spread over a hemisphere or more: some face every way
+        final float vx = sphere[4*node] - eye.x, vy = sphere[4*node+1] - eye.y, vz = sphere[4*node+2] - eye.z;
+        final float length = (float) Math.sqrt(vx * vx + vy * vy + vz * vz), radius = sphere[4*node+3];
+        if (length <= radius) return false;     // the eye is inside the cluster's sphere
+        final float cosTheta = (cone[4*node] * vx + cone[4*node+1] * vy + cone[4*node+2] * vz) / length;
+        if (cosTheta <= -cosAlpha) return false;
+        final float sinTheta = (float) Math.sqrt(Math.max(0F, 1F - cosTheta * cosTheta));
+        final float sinAlpha = (float) Math.sqrt(Math.max(0F, 1F - cosAlpha * cosAlpha));
+        return cosTheta * cosAlpha - sinTheta * sinAlpha > radius / length;
+    }
+}
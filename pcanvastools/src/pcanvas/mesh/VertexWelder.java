@@ -0,0 +1,160 @@
+package pcanvas.mesh;
+
+import java.util.Arrays;
+
+/**
+ * Merges vertices that share a position, for formats such as STL that store every triangle with its own three
+ * corners. Points are added one at a time and each gets the index of an earlier point within the tolerance (not
+ * necessarily the nearest or the earliest one), so the unshared corners never have to be held in memory together.
+ * <br />
+ * <br />
+ * Lookups go through an open-addressing hash table keyed by primitives only. With a tolerance of 0 the keys are the
+ * coordinates' bits and points must match exactly (0 and -0 are the same). Otherwise the keys are the cells of a
+ * grid twice as fine as the tolerance: any point within the tolerance of p lies in one of the 8 cells nearest to p,
+ * so only those are searched.
+ */
+final class VertexWelder {
+
+    private final float tolerance, cellSize;
+    private float[] positions;          // welded points, packed x, y, z
+    private int size = 0;
+
+    private int[] table;                // per slot: 1 + a welded point, or 0 when empty; in grid mode the head of a cell
+    private int[] cellX, cellY, cellZ;  // grid mode: the cell each slot is for
+    private int[] nextInCell;           // grid mode: next welded point in the same cell, or -1
+    private int used = 0, mask;
+
+    /**
+     * @param tolerance the largest distance between points that are merged; 0 merges exact duplicates only.
+     * @param expected roughly how many distinct points will be added, to size the tables.
+     */
+    VertexWelder(final float tolerance, final int expected) {
+        if (!(tolerance >= 0)) throw new IllegalArgumentException("The weld tolerance must not be negative.");
+        this.tolerance = tolerance;
+        this.cellSize = 2 * tolerance;
+        final int capacity = Math.max(16, expected);
+        this.positions = new float[3 * capacity];
+        if (tolerance > 0) this.nextInCell = new int[capacity];
+        allocateTable(Integer.highestOneBit(2 * capacity - 1) << 1);
+    }
+
+    int size() {return size;}
+
+    /** The welded points, packed x, y, z; only the first 3 * {@link #size()} entries are meaningful. */
+    float[] positions() {return positions;}
+
+    /**
+     * Returns the index of a point within the tolerance of (x, y, z), adding it as a new point if there is none.
+     * @return the welded index.
+     */
+    int add(float x, float y, float z) {
+        // fold -0 into 0 so both hash and compare alike
+        x += 0F;
+        y += 0F;
+        z += 0F;
+        return (tolerance > 0) ? addToGrid(x, y, z) : addExact(x, y, z);
+    }
+
+    private int addExact(final float x, final float y, final float z) {
+        for (int slot = hash(Float.floatToIntBits(x), Float.floatToIntBits(y), Float.floatToIntBits(z)) & mask; ;
+             slot = (slot + 1) & mask) {
+            final int entry = table[slot] - 1;
+            if (entry < 0) {
+                final int v = append(x, y, z);
+                table[slot] = v + 1;
+                if (++used > table.length / 2) rehash();
+                return v;
+            }
+            if (positions[3*entry] == x && positions[3*entry+1] == y && positions[3*entry+2] == z) return entry;
+        }
+    }
+
+    private int addToGrid(final float x, final float y, final float z) {
+        final float gx = x / cellSize, gy = y / cellSize, gz = z / cellSize;
+        final int ix = (int) Math.floor(gx), iy = (int) Math.floor(gy), iz = (int) Math.floor(gz);
+        // the neighbouring cell on the side of each axis the point is closer to
+        final int jx = (gx - ix < 0.5F) ? ix - 1 : ix + 1;
+        final int jy = (gy - iy < 0.5F) ? iy - 1 : iy + 1;
+        final int jz = (gz - iz < 0.5F) ? iz - 1 : iz + 1;
+        final float limit = tolerance * tolerance;
+        for (int k = 0; k < 8; k++) {
+            final int cx = ((k & 1) == 0) ? ix : jx, cy = ((k & 2) == 0) ? iy : jy, cz = ((k & 4) == 0) ? iz : jz;
+            final int slot = findCell(cx, cy, cz);
+            for (int v = table[slot] - 1; v >= 0; v = nextInCell[v]) {
+                final float dx = positions[3*v] - x, dy = positions[3*v+1] - y, dz = positions[3*v+2] - z;
+                if (dx*dx + dy*dy + dz*dz <= limit) return v;
+            }
+        }
+
+        final int v = append(x, y, z);
+        final int slot = findCell(ix, iy, iz);
+        if (table[slot] == 0) {
+            cellX[slot] = ix;
+            cellY[slot] = iy;
+            cellZ[slot] = iz;
+            used++;
+        }
+        nextInCell[v] = table[slot] - 1;
+        table[slot] = v + 1;
+        if (used > table.length / 2) rehash();
+        return v;
+    }
+
+    /** Returns the slot of the cell, or the empty slot where it would go. */
+    private int findCell(final int cx, final int cy, final int cz) {
+        for (int slot = hash(cx, cy, cz) & mask; ; slot = (slot + 1) & mask) {
+            if (table[slot] == 0 || (cellX[slot] == cx && cellY[slot] == cy && cellZ[slot] == cz)) return slot;
+        }
+    }
+
+    private int append(final float x, final float y, final float z) {
+        if (3 * size + 3 > positions.length) {
+            positions = Arrays.copyOf(positions, 2 * positions.length);
+            if (nextInCell != null) nextInCell = Arrays.copyOf(nextInCell, positions.length / 3);
+        }
+        positions[3*size] = x;
+        positions[3*size+1] = y;
+        positions[3*size+2] = z;
+        return size++;
+    }
+
+    private void rehash() {
+        final int[] oldTable = table, oldX = cellX, oldY = cellY, oldZ = cellZ;
+        allocateTable(2 * oldTable.length);
+        for (int slot = 0; slot < oldTable.length; slot++) {
+            final int entry = oldTable[slot];
+            if (entry == 0) continue;
+            final int to;
+            if (oldX != null) {
+                to = findCell(oldX[slot], oldY[slot], oldZ[slot]);
+                cellX[to] = oldX[slot];
+                cellY[to] = oldY[slot];
+                cellZ[to] = oldZ[slot];
+            } else {
+                final int v = entry - 1;
+                int s = hash(Float.floatToIntBits(positions[3*v]), Float.floatToIntBits(positions[3*v+1]),
+                    Float.floatToIntBits(positions[3*v+2])) & mask;
+                while (table[s] != 0) s = (s + 1) & mask;
+                to = s;
+            }
+            table[to] = entry;
+            used++;
+        }
+    }
+
+    private void allocateTable(final int capacity) {
+        table = new int[capacity];
+        mask = capacity - 1;
+        used = 0;
+        if (tolerance > 0) {
+            cellX = new int[capacity];
+            cellY = new int[capacity];
+            cellZ = new int[capacity];
+        }
+    }
+
+    private static int hash(final int x, final int y, final int z) {
+        int h = x * 0x9E3779B1 ^ y * 0x85EBCA77 ^ z * 0xC2B2AE3D;
+        return h ^ (h >>> 15);
+    }
+}